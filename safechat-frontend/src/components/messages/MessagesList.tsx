@@ -3,6 +3,7 @@ import { useSelector, useDispatch } from 'react-redux';
 import axios from 'api/axios';
 import { format, addMinutes } from 'date-fns';
 import { RootState } from 'store';
+import webSocketService from 'services/WebSocketService';
 
 interface MessageType {
   id: string;
@@ -51,6 +52,8 @@ const MessagesList: React.FC = () => {
   const textareaRef = useRef<HTMLTextAreaElement>(null);
   const messagesEndRef = useRef<HTMLDivElement>(null);
   const currentUser = useSelector((state: RootState) => state.auth.user as AuthUser | null);
+  const authToken = useSelector((state: RootState) => state.auth.token);
+  const typingUsers = useSelector((state: RootState) => state.messages.typingUsers);
   const dispatch = useDispatch();
 
   const isValidUUID = (uuid: string): boolean => {
@@ -90,12 +93,27 @@ const MessagesList: React.FC = () => {
     return () => clearInterval(intervalId);
   }, [currentUser, selectedUser]);
 
+  // Typing events are pushed over the WebSocket; polling is only a fallback when it is down
+  useEffect(() => {
+    if (!authToken) return;
+    webSocketService.connect(authToken);
+    return () => webSocketService.disconnect();
+  }, [authToken]);
+
+  useEffect(() => {
+    if (!selectedUser) return;
+    const typingUsername = typingUsers[selectedUser]
+      ? users.find(u => u.id === selectedUser)?.username
+      : undefined;
+    setTypingUser(typingUsername || null);
+  }, [typingUsers, selectedUser, users]);
+
   // Typing status effect
   useEffect(() => {
     if (!currentUser) return;
 
     const checkTypingStatus = async () => {
-      if (selectedUser) {
+      if (selectedUser && !webSocketService.isConnected()) {
         try {
           const response = await axios.get(`/api/messages/typing-status?userId=${currentUser.id}`);
           
@@ -186,26 +204,33 @@ const MessagesList: React.FC = () => {
     return () => clearInterval(intervalId);
   }, [selectedUser, currentUser]);
 
+  const notifyTyping = (receiverId: string, typing: boolean) => {
+    if (!currentUser) return;
+    if (webSocketService.isConnected()) {
+      webSocketService.sendTypingIndicator(receiverId, typing);
+      return;
+    }
+    axios.post(typing ? '/api/messages/typing' : '/api/messages/typing-stopped', {
+      senderId: currentUser.id,
+      receiverId
+    });
+  };
+
   // Handle typing indicator
   const handleTyping = () => {
     if (!currentUser || !selectedUser) return;
 
-    if (!isTyping) {
+    // The server coalesces keystrokes on the socket; the REST fallback only reports the first one
+    if (!isTyping || webSocketService.isConnected()) {
       setIsTyping(true);
-      axios.post('/api/messages/typing', { 
-        senderId: currentUser.id, 
-        receiverId: selectedUser 
-      });
+      notifyTyping(selectedUser, true);
     }
 
     if (typingTimeout) clearTimeout(typingTimeout);
 
     const timeout = setTimeout(() => {
       setIsTyping(false);
-      axios.post('/api/messages/typing-stopped', { 
-        senderId: currentUser.id, 
-        receiverId: selectedUser 
-      });
+      notifyTyping(selectedUser, false);
     }, 2000);
 
     setTypingTimeout(timeout);
@@ -248,10 +273,7 @@ const MessagesList: React.FC = () => {
 
       if (typingTimeout) clearTimeout(typingTimeout);
       setIsTyping(false);
-      axios.post('/api/messages/typing-stopped', { 
-        senderId: currentUser.id, 
-        receiverId: selectedUser 
-      });
+      notifyTyping(selectedUser, false);
     } catch (error) {
       console.error('Error sending message:', error);
     }
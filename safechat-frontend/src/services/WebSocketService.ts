@@ -13,8 +13,9 @@ class WebSocketService {
       this.socket.close();
     }
     
-    // Connect to WebSocket server with authentication token
-    this.socket = new WebSocket(`wss://your-domain.com/api/ws?token=${token}`);
+    // Connect to the same-origin WebSocket endpoint with the authentication token
+    const protocol = window.location.protocol === 'https:' ? 'wss' : 'ws';
+    this.socket = new WebSocket(`${protocol}://${window.location.host}/api/ws?token=${encodeURIComponent(token)}`);
     
     this.socket.onopen = this.onOpen.bind(this);
     this.socket.onmessage = this.onMessage.bind(this);
@@ -22,6 +23,10 @@ class WebSocketService {
     this.socket.onerror = this.onError.bind(this);
   }
   
+  isConnected(): boolean {
+    return this.socket !== null && this.socket.readyState === WebSocket.OPEN;
+  }
+
   disconnect(): void {
     if (this.socket) {
       this.socket.close();
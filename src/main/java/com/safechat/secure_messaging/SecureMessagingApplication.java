@@ -3,8 +3,12 @@ package com.safechat.secure_messaging;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
+@EnableAsync
 @ComponentScan(basePackages = {
     "com.safechat.secure_messaging",
     "com.safechat.secure_messaging.security",
@@ -0,0 +1,16 @@
+package com.safechat.secure_messaging.config;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Runs the annotated method (or every public method of the annotated bean) against the given
+// workload's connection pool. @Scheduled methods are JOBS without it.
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface DatabaseWorkload {
+    Workload value();
+}
@@ -0,0 +1,115 @@
+package com.safechat.secure_messaging.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Caps how many threads hold a connection from the wrapped pool at once, with a fair queue in front
+// of it. With virtual threads there's no request-thread cap left to protect the pool, so every
+// request that needs the database would otherwise pile onto Hikari and wait out its full
+// connection-timeout. Here at most maxWaiting callers queue (the rest fail at once) and each waits
+// at most acquireTimeoutMs. A permit is held until the connection is closed, i.e. returned to the pool.
+public class LimitedDataSource extends DelegatingDataSource {
+
+    private final Semaphore permits;
+    private final int maxWaiting;
+    private final long acquireTimeoutMs;
+    private final Timer acquireTimer;
+
+    public LimitedDataSource(DataSource target, String name, int permits, int maxWaiting, long acquireTimeoutMs,
+                             MeterRegistry meterRegistry) {
+        super(target);
+        this.permits = new Semaphore(permits, true);
+        this.maxWaiting = maxWaiting;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.acquireTimer = Timer.builder("safechat.datasource.limiter.acquire")
+                .description("Time spent waiting for a connection permit")
+                .tag("pool", name)
+                .register(meterRegistry);
+        Gauge.builder("safechat.datasource.limiter.waiting", this.permits, Semaphore::getQueueLength)
+                .description("Threads queued for a connection permit")
+                .tag("pool", name)
+                .register(meterRegistry);
+        Gauge.builder("safechat.datasource.limiter.available", this.permits, Semaphore::availablePermits)
+                .description("Connection permits not currently held")
+                .tag("pool", name)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquire();
+        return limited(super::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquire();
+        return limited(() -> super.getConnection(username, password));
+    }
+
+    private void acquire() throws SQLException {
+        if (permits.availablePermits() == 0 && permits.getQueueLength() >= maxWaiting) {
+            throw new SQLTransientConnectionException("Too many threads waiting for a database connection");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException(
+                        "Timed out after " + acquireTimeoutMs + " ms waiting for a database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted waiting for a database connection", e);
+        } finally {
+            acquireTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // Hands out the pooled connection behind a proxy whose close() also gives the permit back, once.
+    // equals and hashCode are the proxy's own identity: forwarded, a proxy wouldn't equal itself, and
+    // two handles on the same pooled connection would collide in the maps that track them.
+    private Connection limited(ConnectionSupplier supplier) throws SQLException {
+        Connection connection;
+        try {
+            connection = supplier.get();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("equals")) {
+                        return proxy == args[0];
+                    } else if (method.getName().equals("hashCode")) {
+                        return System.identityHashCode(proxy);
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    } finally {
+                        if (method.getName().equals("close") && released.compareAndSet(false, true)) {
+                            permits.release();
+                        }
+                    }
+                });
+    }
+
+    @FunctionalInterface
+    private interface ConnectionSupplier {
+        Connection get() throws SQLException;
+    }
+}
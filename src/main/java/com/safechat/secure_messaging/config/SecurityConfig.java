@@ -2,6 +2,8 @@ package com.safechat.secure_messaging.config;
 
 import com.safechat.secure_messaging.security.JwtAuthenticationEntryPoint;
 import com.safechat.secure_messaging.security.JwtAuthorizationFilter;
+import com.safechat.secure_messaging.security.TimedPasswordEncoder;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -154,8 +156,8 @@ public class SecurityConfig {
     }
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder(12);
+    public PasswordEncoder passwordEncoder(MeterRegistry meterRegistry) {
+        return new TimedPasswordEncoder(new BCryptPasswordEncoder(12), meterRegistry);
     }
 
     @Bean
@@ -31,6 +31,8 @@ public class WebConfig implements WebMvcConfigurer {
                 .setViewName("forward:/index.html");
         registry.addViewController("/**/{path:[^\\.]*}")
                 .setViewName("forward:/index.html");
+        // Run after the WebSocket handler mapping (order 1) so "/ws" is not forwarded to the SPA
+        registry.setOrder(2);
     }
 
     // Custom resource resolver for SPA routing
@@ -0,0 +1,33 @@
+package com.safechat.secure_messaging.config;
+
+import com.safechat.secure_messaging.controller.ChatWebSocketHandler;
+import com.safechat.secure_messaging.security.JwtHandshakeInterceptor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    private final ChatWebSocketHandler chatWebSocketHandler;
+    private final JwtHandshakeInterceptor jwtHandshakeInterceptor;
+
+    public WebSocketConfig(ChatWebSocketHandler chatWebSocketHandler,
+                           JwtHandshakeInterceptor jwtHandshakeInterceptor) {
+        this.chatWebSocketHandler = chatWebSocketHandler;
+        this.jwtHandshakeInterceptor = jwtHandshakeInterceptor;
+    }
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(chatWebSocketHandler, "/ws", "/api/ws")
+                .addInterceptors(jwtHandshakeInterceptor)
+                .setAllowedOriginPatterns(
+                    "https://safechat-production.up.railway.app",
+                    "http://safechat-production.up.railway.app",
+                    "http://localhost:*"
+                );
+    }
+}
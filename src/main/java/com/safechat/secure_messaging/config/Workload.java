@@ -0,0 +1,55 @@
+package com.safechat.secure_messaging.config;
+
+import java.util.function.Supplier;
+
+// Which connection pool a thread's database work draws from (see WorkloadDataSourceConfig). The
+// choice is made when a connection is taken, so it has to be set before the transaction begins;
+// a transaction that already holds a connection keeps it. Unmarked work is INTERACTIVE.
+public enum Workload {
+    INTERACTIVE,
+    JOBS,
+    AUDIT;
+
+    private static final ThreadLocal<Workload> CURRENT = new ThreadLocal<>();
+
+    public static Workload current() {
+        Workload workload = CURRENT.get();
+        return workload != null ? workload : INTERACTIVE;
+    }
+
+    public void run(Runnable action) {
+        call(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public <T> T call(Supplier<T> action) {
+        Workload previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return action.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    // For callers that can't wrap their work in a Supplier (e.g. advice that rethrows Throwable)
+    static Workload enter(Workload workload) {
+        Workload previous = CURRENT.get();
+        CURRENT.set(workload);
+        return previous;
+    }
+
+    static void restore(Workload previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    public String poolName() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,55 @@
+package com.safechat.secure_messaging.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+// One Hikari pool per Workload behind a routing DataSource, so a long expiry run or an audit export
+// can only exhaust its own pool and chat requests keep theirs. Each pool takes the shared
+// spring.datasource.hikari.* settings, then its own app.datasource.pools.<workload>.* overrides, and
+// reports hikaricp.* metrics under pool=safechat-<workload>.
+// With app.datasource.limiter.enabled (on by default with virtual threads) each pool also gets a
+// LimitedDataSource in front of it, sized to that pool. The pools aren't beans, so the routing
+// DataSource closes them when the context shuts down.
+@Configuration
+public class WorkloadDataSourceConfig {
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties properties, Environment environment,
+                                 MeterRegistry meterRegistry) {
+        Binder binder = Binder.get(environment);
+        boolean limiterEnabled = environment.getProperty("app.datasource.limiter.enabled", Boolean.class,
+                environment.getProperty("spring.threads.virtual.enabled", Boolean.class, false));
+        int maxWaiting = environment.getProperty("app.datasource.limiter.max-waiting", Integer.class, 200);
+
+        Map<Object, Object> pools = new HashMap<>();
+        for (Workload workload : Workload.values()) {
+            HikariDataSource pool = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+            binder.bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+            binder.bind("app.datasource.pools." + workload.poolName(), Bindable.ofInstance(pool));
+            pool.setPoolName("safechat-" + workload.poolName());
+            pool.setMetricRegistry(meterRegistry);
+
+            pools.put(workload, limiterEnabled
+                    ? new LimitedDataSource(pool, workload.poolName(), pool.getMaximumPoolSize(), maxWaiting,
+                            pool.getConnectionTimeout(), meterRegistry)
+                    : pool);
+        }
+
+        WorkloadRoutingDataSource dataSource = new WorkloadRoutingDataSource();
+        dataSource.setTargetDataSources(pools);
+        dataSource.setDefaultTargetDataSource(pools.get(Workload.INTERACTIVE));
+        return dataSource;
+    }
+}
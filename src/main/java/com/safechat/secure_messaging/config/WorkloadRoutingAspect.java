@@ -0,0 +1,40 @@
+package com.safechat.secure_messaging.config;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+// Marks @Scheduled and @DatabaseWorkload methods with their workload. Ordered ahead of the
+// transaction advice, so the transaction's connection already comes from the right pool.
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class WorkloadRoutingAspect {
+
+    @Around("@annotation(org.springframework.scheduling.annotation.Scheduled)"
+            + " || @annotation(com.safechat.secure_messaging.config.DatabaseWorkload)"
+            + " || @within(com.safechat.secure_messaging.config.DatabaseWorkload)")
+    public Object route(ProceedingJoinPoint joinPoint) throws Throwable {
+        Workload previous = Workload.enter(workloadOf(joinPoint));
+        try {
+            return joinPoint.proceed();
+        } finally {
+            Workload.restore(previous);
+        }
+    }
+
+    private static Workload workloadOf(ProceedingJoinPoint joinPoint) {
+        DatabaseWorkload annotation = AnnotatedElementUtils.findMergedAnnotation(
+                ((MethodSignature) joinPoint.getSignature()).getMethod(), DatabaseWorkload.class);
+        if (annotation == null) {
+            annotation = AnnotatedElementUtils.findMergedAnnotation(
+                    joinPoint.getTarget().getClass(), DatabaseWorkload.class);
+        }
+        return annotation != null ? annotation.value() : Workload.JOBS;
+    }
+}
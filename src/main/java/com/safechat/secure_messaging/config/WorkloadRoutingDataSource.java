@@ -0,0 +1,42 @@
+package com.safechat.secure_messaging.config;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+
+// Hands out connections from the pool of the calling thread's Workload. The pools aren't beans of
+// their own, so this closes them (through any LimitedDataSource in front) when the context shuts down.
+public class WorkloadRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return Workload.current();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        Exception failure = null;
+        for (DataSource dataSource : getResolvedDataSources().values()) {
+            DataSource pool = dataSource instanceof DelegatingDataSource delegating
+                    ? delegating.getTargetDataSource()
+                    : dataSource;
+            if (pool instanceof AutoCloseable closeable) {
+                // Keep closing the others if one fails
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -1,6 +1,9 @@
 // AdminController.java
 package com.safechat.secure_messaging.controller;
 
+import com.safechat.secure_messaging.config.DatabaseWorkload;
+import com.safechat.secure_messaging.config.Workload;
+import com.safechat.secure_messaging.dto.AdminMessageSummary;
 import com.safechat.secure_messaging.model.AuditLog;
 import com.safechat.secure_messaging.model.Message;
 import com.safechat.secure_messaging.model.User;
@@ -8,13 +11,21 @@ import com.safechat.secure_messaging.model.UserRoles;
 import com.safechat.secure_messaging.repository.AuditLogRepository;
 import com.safechat.secure_messaging.repository.MessageRepository;
 import com.safechat.secure_messaging.repository.UserRepository;
+import com.safechat.secure_messaging.service.AttachmentService;
+import com.safechat.secure_messaging.service.ConversationService;
+import com.safechat.secure_messaging.service.FlightRecorderService;
+import com.safechat.secure_messaging.service.KeyGarbageCollectionService;
+import com.safechat.secure_messaging.service.KeyRotationService;
 import com.safechat.secure_messaging.service.MessageExpirationService;
+import com.safechat.secure_messaging.service.MetricsTimeSeriesService;
+import com.safechat.secure_messaging.service.SystemStatsService;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -24,6 +35,8 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.text.ParseException;
 import java.time.LocalDateTime;
 import java.util.*;
 
@@ -47,9 +60,34 @@ public class AdminController {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private SystemStatsService systemStatsService;
+
+    @Autowired
+    private MetricsTimeSeriesService metricsTimeSeriesService;
+
+    @Autowired
+    private FlightRecorderService flightRecorderService;
+
+    @Autowired
+    private ConversationService conversationService;
+
+    @Autowired
+    private AttachmentService attachmentService;
+
+    @Autowired
+    private KeyRotationService keyRotationService;
+
+    @Autowired
+    private KeyGarbageCollectionService keyGarbageCollectionService;
+
     @PersistenceContext
     private EntityManager entityManager;
 
+    private static final int MAX_MESSAGE_PAGE_SIZE = 100;
+    private static final LocalDateTime MIN_MESSAGE_TIMESTAMP = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime MAX_MESSAGE_TIMESTAMP = LocalDateTime.of(9999, 12, 31, 23, 59);
+
     // User management DTOs
     public static class UserCreationRequest {
         private String username;
@@ -369,13 +407,17 @@ public class AdminController {
             String username = user.getUsername();
            
             // Handle all dependencies in order
-            // 1. Delete messages related to this user
+            // 1. Delete messages related to this user, their attachments first (no FK, so not cascaded)
+            attachmentService.deleteForUser(userId);
             messageRepository.deleteByReceiverIdOrSenderIdOrRevokedBy(userId, userId, user);
+
+            // 2. Drop conversation summaries on both sides (no FK, so not cascaded)
+            conversationService.onUserDeleted(userId);
            
-            // 2. Update audit logs to remove user reference before deletion
+            // 3. Update audit logs to remove user reference before deletion
             auditLogRepository.removeUserReferences(userId);
            
-            // 3. Delete user
+            // 4. Delete user
             userRepository.deleteById(userId);
            
             // Create a new audit log entry for the deletion
@@ -415,26 +457,27 @@ public class AdminController {
     @GetMapping("/messages")
     public ResponseEntity<?> getAllMessages(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String sender,
+            @RequestParam(required = false) String receiver,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
         try {
-            // In a real app, you'd implement proper pagination with PageRequest
-            List<Message> messages = messageRepository.findAll();
-            
-            // Simple pagination
-            int startIndex = page * size;
-            int endIndex = Math.min(startIndex + size, messages.size());
-            
-            if (startIndex >= messages.size()) {
-                return ResponseEntity.ok(new ArrayList<>());
-            }
-            
-            List<Message> pagedMessages = messages.subList(startIndex, endIndex);
-            
+            int pageSize = Math.max(1, Math.min(size, MAX_MESSAGE_PAGE_SIZE));
+            Page<AdminMessageSummary> messages = messageRepository.findAdminMessageSummaries(
+                    sender == null || sender.isBlank() ? null : sender,
+                    receiver == null || receiver.isBlank() ? null : receiver,
+                    // Open-ended ranges use sentinels so the query never binds a null timestamp
+                    startDate != null ? startDate : MIN_MESSAGE_TIMESTAMP,
+                    endDate != null ? endDate : MAX_MESSAGE_TIMESTAMP,
+                    PageRequest.of(Math.max(page, 0), pageSize));
+
             return ResponseEntity.ok(Map.of(
-                    "messages", pagedMessages,
-                    "totalCount", messages.size(),
-                    "page", page,
-                    "size", size
+                    "messages", messages.getContent(),
+                    "totalCount", messages.getTotalElements(),
+                    "totalPages", messages.getTotalPages(),
+                    "page", messages.getNumber(),
+                    "size", pageSize
             ));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -467,8 +510,9 @@ public class AdminController {
         }
     }
 
-    // Get audit logs (with filtering)
+    // Get audit logs (with filtering); unbounded reads, so they go to the audit pool
     @GetMapping("/audit-logs")
+    @DatabaseWorkload(Workload.AUDIT)
     public ResponseEntity<?> getAuditLogs(
             @RequestParam(required = false) String action,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
@@ -501,31 +545,91 @@ public class AdminController {
         }
     }
 
-    // System stats
+    // System stats (served from memory; see SystemStatsService)
     @GetMapping("/stats")
     public ResponseEntity<?> getSystemStats() {
         try {
-            long totalUsers = userRepository.count();
-            long totalMessages = messageRepository.count();
-            long totalLogs = auditLogRepository.count();
-            
-            // Get active users in last 24 hours (placeholder - you'd implement this with a custom query)
-            long activeUsers = 0;
-            
-            Map<String, Object> stats = new HashMap<>();
-            stats.put("totalUsers", totalUsers);
-            stats.put("totalMessages", totalMessages);
-            stats.put("totalAuditLogs", totalLogs);
-            stats.put("activeUsers24h", activeUsers);
-            stats.put("serverTime", LocalDateTime.now());
-            
-            return ResponseEntity.ok(stats);
+            return ResponseEntity.ok(systemStatsService.getStats());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("error", "Failed to retrieve system stats: " + e.getMessage()));
         }
     }
 
+    // Per-minute throughput for the last N minutes (up to 24h), from in-memory ring buffers
+    @GetMapping("/metrics/timeseries")
+    public ResponseEntity<?> getThroughputSeries(@RequestParam(defaultValue = "60") int minutes) {
+        try {
+            return ResponseEntity.ok(metricsTimeSeriesService.getSeries(minutes));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to retrieve metrics: " + e.getMessage()));
+        }
+    }
+
+    // JFR recordings can contain request URIs and stack traces, so only super admins may take them
+    @PostMapping("/profiling/recording/start")
+    @PreAuthorize("hasRole('SUPER_ADMIN')")
+    public ResponseEntity<?> startRecording(@RequestParam(defaultValue = "default") String settings) {
+        try {
+            return ResponseEntity.ok(flightRecorderService.start(settings));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (ParseException | IOException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Failed to start recording: " + e.getMessage()));
+        }
+    }
+
+    @PostMapping("/profiling/recording/stop")
+    @PreAuthorize("hasRole('SUPER_ADMIN')")
+    public ResponseEntity<?> stopRecording() {
+        try {
+            return ResponseEntity.ok(flightRecorderService.stop());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to stop recording: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/profiling/recording")
+    @PreAuthorize("hasRole('SUPER_ADMIN')")
+    public ResponseEntity<?> getRecordingStatus() {
+        return ResponseEntity.ok(flightRecorderService.getStatus());
+    }
+
+    // Master key rotation (see KeyRotationService); progress survives pauses and restarts
+    @GetMapping("/key-rotation")
+    @PreAuthorize("hasRole('SUPER_ADMIN')")
+    public ResponseEntity<?> getKeyRotationStatus() {
+        return ResponseEntity.ok(keyRotationService.getStatus());
+    }
+
+    @PostMapping("/key-rotation/start")
+    @PreAuthorize("hasRole('SUPER_ADMIN')")
+    public ResponseEntity<?> startKeyRotation() {
+        return ResponseEntity.ok(keyRotationService.start());
+    }
+
+    @PostMapping("/key-rotation/pause")
+    @PreAuthorize("hasRole('SUPER_ADMIN')")
+    public ResponseEntity<?> pauseKeyRotation() {
+        return ResponseEntity.ok(keyRotationService.pause());
+    }
+
+    // Runs one bounded key GC pass now instead of waiting for the schedule
+    @PostMapping("/key-gc")
+    @PreAuthorize("hasRole('SUPER_ADMIN')")
+    public ResponseEntity<?> collectKeys() {
+        try {
+            return ResponseEntity.ok(keyGarbageCollectionService.collect());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Key GC failed: " + e.getMessage()));
+        }
+    }
+
     @PostMapping("/toggle-admin/{userId}")
     public ResponseEntity<?> toggleAdminRole(@PathVariable UUID userId) {
         try {
@@ -0,0 +1,262 @@
+package com.safechat.secure_messaging.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safechat.secure_messaging.model.Attachment;
+import com.safechat.secure_messaging.model.Message;
+import com.safechat.secure_messaging.repository.MessageRepository;
+import com.safechat.secure_messaging.repository.UserRepository;
+import com.safechat.secure_messaging.service.AttachmentService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+// File attachments on a message. Uploads are the raw request body (Content-Type is kept as the file's
+// type), encrypted as they stream in; downloads support a single HTTP byte range.
+@RestController
+@RequestMapping("/api/messages/{messageId}/attachments")
+public class AttachmentController {
+
+    private static final int MAX_FILE_NAME_LENGTH = 255;
+
+    @Autowired
+    private AttachmentService attachmentService;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Only the sender can attach files, and only to a message that is still live and unopened
+    @PostMapping
+    public ResponseEntity<?> upload(@PathVariable UUID messageId,
+                                    @RequestParam String fileName,
+                                    HttpServletRequest request) {
+        try {
+            UUID currentUserId = getCurrentUserId();
+            Message message = messageRepository.findById(messageId)
+                    .orElseThrow(() -> new RuntimeException("Message not found"));
+
+            if (!message.getSender().getId().equals(currentUserId)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                        .body(Map.of("error", "Only the sender can attach files to this message"));
+            }
+            if (!acceptsUploads(message)) {
+                return ResponseEntity.status(HttpStatus.GONE)
+                        .body(Map.of("error", "Message is no longer available"));
+            }
+            if (request.getContentLengthLong() > attachmentService.getMaxBytes()) {
+                return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                        .body(Map.of("error", "Attachment exceeds the " + attachmentService.getMaxBytes() + " byte limit"));
+            }
+
+            Attachment attachment = attachmentService.upload(messageId, currentUserId, sanitize(fileName),
+                    contentTypeOf(request), request.getInputStream());
+            return ResponseEntity.status(HttpStatus.CREATED).body(describe(attachment));
+        } catch (AttachmentService.TooLargeException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to upload attachment: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping
+    public ResponseEntity<?> list(@PathVariable UUID messageId) {
+        try {
+            UUID currentUserId = getCurrentUserId();
+            Message message = messageRepository.findById(messageId)
+                    .orElseThrow(() -> new RuntimeException("Message not found"));
+
+            if (!isParticipant(message, currentUserId)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                        .body(Map.of("error", "You are not authorized to view this message"));
+            }
+            if (!isAvailable(message)) {
+                return ResponseEntity.ok(List.of());
+            }
+            return ResponseEntity.ok(attachmentService.getForMessage(messageId).stream()
+                    .filter(attachment -> !attachment.isConsumed())
+                    .map(this::describe)
+                    .toList());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to retrieve attachments: " + e.getMessage()));
+        }
+    }
+
+    // Streams the decrypted file (or one byte range of it). Read-once attachments are served whole,
+    // once, to the receiver: the download is claimed before streaming and the file deleted after.
+    @GetMapping("/{attachmentId}")
+    public ResponseEntity<StreamingResponseBody> download(
+            @PathVariable UUID messageId,
+            @PathVariable UUID attachmentId,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String rangeHeader) {
+        try {
+            UUID currentUserId = getCurrentUserId();
+            Optional<Message> found = messageRepository.findById(messageId);
+            if (found.isEmpty()) {
+                return error(HttpStatus.NOT_FOUND, "Message not found");
+            }
+            Message message = found.get();
+            if (!isParticipant(message, currentUserId)) {
+                return error(HttpStatus.FORBIDDEN, "You are not authorized to view this message");
+            }
+            if (!isAvailable(message)) {
+                return error(HttpStatus.GONE, "Message is no longer available");
+            }
+            Attachment attachment = attachmentService.getForMessage(messageId).stream()
+                    .filter(candidate -> candidate.getId().equals(attachmentId))
+                    .findFirst()
+                    .orElse(null);
+            if (attachment == null) {
+                return error(HttpStatus.NOT_FOUND, "Attachment not found");
+            }
+
+            boolean consumeAfterDownload = message.isReadOnce() && message.getReceiver().getId().equals(currentUserId);
+            // Claimed up front, so two concurrent downloads can't both stream the file
+            if (attachment.isConsumed() || (consumeAfterDownload && !attachmentService.claim(attachment))) {
+                return error(HttpStatus.GONE, "Attachment is no longer available");
+            }
+            long size = attachment.getSize();
+            long start = 0;
+            long end = size - 1;
+            HttpStatus status = HttpStatus.OK;
+
+            if (rangeHeader != null && !consumeAfterDownload && size > 0) {
+                List<HttpRange> ranges;
+                try {
+                    ranges = HttpRange.parseRanges(rangeHeader);
+                } catch (IllegalArgumentException e) {
+                    ranges = List.of();
+                }
+                // Multi-range requests get the whole file, which RFC 9110 allows
+                if (ranges.size() == 1) {
+                    HttpRange range = ranges.get(0);
+                    try {
+                        start = range.getRangeStart(size);
+                        end = range.getRangeEnd(size);
+                    } catch (IllegalArgumentException e) {
+                        return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                                .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                                .build();
+                    }
+                    status = HttpStatus.PARTIAL_CONTENT;
+                }
+            }
+
+            long rangeStart = start;
+            long rangeEnd = end;
+            StreamingResponseBody body = out -> {
+                try {
+                    attachmentService.writeRange(attachment, rangeStart, rangeEnd, out);
+                } finally {
+                    // Claimed is spent, whether or not the stream got through
+                    if (consumeAfterDownload) {
+                        attachmentService.consume(attachment);
+                    }
+                }
+            };
+
+            ResponseEntity.BodyBuilder response = ResponseEntity.status(status)
+                    .contentType(MediaType.parseMediaType(attachment.getContentType()))
+                    .contentLength(size == 0 ? 0 : rangeEnd - rangeStart + 1)
+                    .header(HttpHeaders.ACCEPT_RANGES, consumeAfterDownload ? "none" : "bytes")
+                    .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                    .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                            .filename(attachment.getFileName(), StandardCharsets.UTF_8)
+                            .build()
+                            .toString());
+            if (status == HttpStatus.PARTIAL_CONTENT) {
+                response.header(HttpHeaders.CONTENT_RANGE, "bytes " + rangeStart + "-" + rangeEnd + "/" + size);
+            }
+            return response.body(body);
+        } catch (Exception e) {
+            return error(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to download attachment: " + e.getMessage());
+        }
+    }
+
+    private UUID getCurrentUserId() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return userRepository.findIdByUsername(auth.getName())
+                .orElseThrow(() -> new RuntimeException("User not found"));
+    }
+
+    private static boolean isParticipant(Message message, UUID userId) {
+        return message.getSender().getId().equals(userId) || message.getReceiver().getId().equals(userId);
+    }
+
+    // Revoked or expired messages take their attachments with them. An opened read-once message is
+    // set to expire immediately; its attachments stay downloadable until the purge job removes them.
+    private static boolean isAvailable(Message message) {
+        if (message.isRevoked()) {
+            return false;
+        }
+        boolean expired = message.getExpiresAt() != null && message.getExpiresAt().isBefore(LocalDateTime.now());
+        return !expired || (message.isReadOnce() && message.isRead());
+    }
+
+    // Stricter than isAvailable: nothing may be added once a read-once message has been opened
+    private static boolean acceptsUploads(Message message) {
+        return !message.isRevoked()
+                && !(message.isReadOnce() && message.isRead())
+                && (message.getExpiresAt() == null || message.getExpiresAt().isAfter(LocalDateTime.now()));
+    }
+
+    private static String sanitize(String fileName) {
+        String name = fileName.replaceAll("[\\\\/\\p{Cntrl}]", "_").strip();
+        if (name.isEmpty()) {
+            name = "attachment";
+        }
+        return name.length() > MAX_FILE_NAME_LENGTH ? name.substring(0, MAX_FILE_NAME_LENGTH) : name;
+    }
+
+    // Served back verbatim on download, so only well-formed types are kept
+    private static String contentTypeOf(HttpServletRequest request) {
+        try {
+            if (request.getContentType() != null) {
+                return MediaType.parseMediaType(request.getContentType()).toString();
+            }
+        } catch (IllegalArgumentException ignored) {
+            // Fall through to the generic type
+        }
+        return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+    }
+
+    private Map<String, Object> describe(Attachment attachment) {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("id", attachment.getId());
+        description.put("messageId", attachment.getMessageId());
+        description.put("fileName", attachment.getFileName());
+        description.put("contentType", attachment.getContentType());
+        description.put("size", attachment.getSize());
+        description.put("createdAt", attachment.getCreatedAt());
+        return description;
+    }
+
+    private ResponseEntity<StreamingResponseBody> error(HttpStatus status, String message) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> objectMapper.writeValue(out, Map.of("error", message)));
+    }
+}
@@ -7,6 +7,7 @@ import com.safechat.secure_messaging.model.User;
 import com.safechat.secure_messaging.repository.UserRepository;
 import com.safechat.secure_messaging.security.JwtUtils;
 import com.safechat.secure_messaging.service.AuditLogService;
+import com.safechat.secure_messaging.service.SystemStatsService;
 import com.safechat.secure_messaging.service.TwoFactorAuthService;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -51,6 +52,9 @@ public class AuthController {
     @Autowired
     private UserDetailsService userDetailsService;
 
+    @Autowired
+    private SystemStatsService systemStatsService;
+
     public AuthController(AuthenticationManager authenticationManager, UserRepository userRepository, PasswordEncoder passwordEncoder, JwtUtils jwtUtils) {
         
         this.authenticationManager = authenticationManager;
@@ -161,6 +165,7 @@ public class AuthController {
             userRepository.save(user);
 
             auditLogService.logEvent(user.getUsername(), "LOGIN_SUCCESS", "User logged in successfully");
+            systemStatsService.recordActivity(user.getUsername());
             logger.debug("User {} logged in successfully. Token generated.", user.getUsername());
 
             return ResponseEntity.ok(new AuthResponse(jwt, user.getUsername(), user.getRoles()));
@@ -231,6 +236,7 @@ public class AuthController {
             userRepository.save(user);
     
             auditLogService.logEvent(username, "2FA_VERIFIED", "Two-factor authentication verified");
+            systemStatsService.recordActivity(username);
             logger.info("2FA verification successful for user: {}", username);
     
             return ResponseEntity.ok(new AuthResponse(jwt, user.getUsername(), user.getRoles()));
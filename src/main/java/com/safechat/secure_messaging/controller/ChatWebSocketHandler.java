@@ -0,0 +1,89 @@
+package com.safechat.secure_messaging.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safechat.secure_messaging.model.UserRoles;
+import com.safechat.secure_messaging.security.JwtHandshakeInterceptor;
+import com.safechat.secure_messaging.service.TypingStatusService;
+import com.safechat.secure_messaging.service.UnreadCountService;
+import com.safechat.secure_messaging.service.WebSocketSessionRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.util.Collection;
+import java.util.UUID;
+
+@Component
+public class ChatWebSocketHandler extends TextWebSocketHandler {
+    private static final Logger logger = LoggerFactory.getLogger(ChatWebSocketHandler.class);
+
+    private final WebSocketSessionRegistry sessionRegistry;
+    private final TypingStatusService typingStatusService;
+    private final UnreadCountService unreadCountService;
+    private final ObjectMapper objectMapper;
+
+    public ChatWebSocketHandler(WebSocketSessionRegistry sessionRegistry,
+                                TypingStatusService typingStatusService,
+                                UnreadCountService unreadCountService,
+                                ObjectMapper objectMapper) {
+        this.sessionRegistry = sessionRegistry;
+        this.typingStatusService = typingStatusService;
+        this.unreadCountService = unreadCountService;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        Collection<?> roles = (Collection<?>) session.getAttributes().get(JwtHandshakeInterceptor.ATTR_ROLES);
+        boolean admin = roles != null && (roles.contains(UserRoles.ROLE_SUPER_ADMIN)
+                || roles.contains(UserRoles.ROLE_SUPPORT_ADMIN));
+        String userId = getUserId(session);
+        sessionRegistry.register(userId, admin, session);
+        unreadCountService.pushCurrent(UUID.fromString(userId));
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        String userId = getUserId(session);
+        try {
+            JsonNode event = objectMapper.readTree(message.getPayload());
+            String type = event.path("type").asText();
+
+            switch (type) {
+                case "typing_indicator" -> {
+                    // The sender is always the authenticated socket owner, never a client-supplied id
+                    String receiverId = event.path("receiverId").asText(null);
+                    if (receiverId == null || receiverId.isEmpty()) {
+                        return;
+                    }
+                    if (event.path("isTyping").asBoolean(false)) {
+                        typingStatusService.setTyping(userId, receiverId);
+                    } else {
+                        typingStatusService.removeTyping(userId, receiverId);
+                    }
+                }
+                default -> logger.debug("Ignoring WebSocket event of type '{}' from user {}", type, userId);
+            }
+        } catch (Exception e) {
+            logger.warn("Invalid WebSocket event from user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        String userId = getUserId(session);
+        sessionRegistry.unregister(userId, session);
+        if (!sessionRegistry.isOnline(userId)) {
+            typingStatusService.removeTyping(userId);
+        }
+    }
+
+    private String getUserId(WebSocketSession session) {
+        return (String) session.getAttributes().get(JwtHandshakeInterceptor.ATTR_USER_ID);
+    }
+}
@@ -1,29 +1,53 @@
 package com.safechat.secure_messaging.controller;
 
+import com.safechat.secure_messaging.dto.BroadcastMessageRequest;
+import com.safechat.secure_messaging.dto.BroadcastRecipientStatus;
+import com.safechat.secure_messaging.dto.MessageCursor;
+import com.safechat.secure_messaging.dto.MessageView;
 import com.safechat.secure_messaging.model.Message;
 import com.safechat.secure_messaging.model.User;
+import com.safechat.secure_messaging.profiling.RepositoryCallEvent;
 import com.safechat.secure_messaging.repository.MessageRepository;
 import com.safechat.secure_messaging.repository.UserRepository;
+import com.safechat.secure_messaging.service.AttachmentService;
+import com.safechat.secure_messaging.service.BroadcastService;
+import com.safechat.secure_messaging.service.CiphertextStore;
+import com.safechat.secure_messaging.service.ConversationService;
 import com.safechat.secure_messaging.service.EncryptionService;
+import com.safechat.secure_messaging.service.IdempotencyService;
 import com.safechat.secure_messaging.service.MessageExpirationService;
+import com.safechat.secure_messaging.service.MetricsTimeSeriesService;
+import com.safechat.secure_messaging.service.MetricsTimeSeriesService.ThroughputMetric;
+import com.safechat.secure_messaging.service.PageDecryptor;
+import com.safechat.secure_messaging.service.TypingStatusService;
+import com.safechat.secure_messaging.service.UnreadCountService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/messages")
 public class MessageController {
 
-    // Typing users map at class level
-    private static Map<String, String> typingUsers = new ConcurrentHashMap<>();
+    private static final int MAX_INBOX_LIMIT = 500;
 
     @Autowired
     private MessageRepository messageRepository;
@@ -37,6 +61,45 @@ public class MessageController {
     @Autowired
     private MessageExpirationService messageExpirationService;
 
+    @Autowired
+    private AttachmentService attachmentService;
+
+    @Autowired
+    private CiphertextStore ciphertextStore;
+
+    @Autowired
+    private PageDecryptor pageDecryptor;
+
+    @Autowired
+    private TypingStatusService typingStatusService;
+
+    @Autowired
+    private MetricsTimeSeriesService metricsTimeSeriesService;
+
+    @Autowired
+    private ConversationService conversationService;
+
+    @Autowired
+    private UnreadCountService unreadCountService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private BroadcastService broadcastService;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Value("${app.broadcast.max-recipients:10000}")
+    private int maxBroadcastRecipients;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     // DTO for sending messages
     public static class MessageRequest {
         private UUID receiverId;
@@ -101,6 +164,18 @@ public class MessageController {
             this.isEncrypted = message.getKeyId() != null;
         }
 
+        public MessageResponse(MessageView message, String decryptedContent) {
+            this.id = message.getId();
+            this.senderUsername = message.getSenderUsername();
+            this.receiverUsername = message.getReceiverUsername();
+            this.content = decryptedContent;
+            this.timestamp = message.getTimestamp();
+            this.read = message.isRead();
+            this.readOnce = message.isReadOnce();
+            this.expiresAt = message.getExpiresAt();
+            this.isEncrypted = message.getKeyId() != null;
+        }
+
         // Getters and setters for all fields
         public UUID getId() {
             return id;
@@ -200,54 +275,190 @@ public class MessageController {
     // Get current authenticated user
     private User getCurrentUser() {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        return userRepository.findByUsername(auth.getName())
+        return RepositoryCallEvent.record("users.findByUsername", () -> userRepository.findByUsername(auth.getName()))
+                .orElseThrow(() -> new RuntimeException("User not found"));
+    }
+
+    private UUID getCurrentUserId() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return RepositoryCallEvent.record("users.findIdByUsername", () -> userRepository.findIdByUsername(auth.getName()))
                 .orElseThrow(() -> new RuntimeException("User not found"));
     }
 
     // Send a new message
     @PostMapping
-    public ResponseEntity<?> sendMessage(@RequestBody MessageRequest request) {
+    public ResponseEntity<?> sendMessage(@RequestBody MessageRequest request,
+                                         @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
         try {
+            if (idempotencyKey != null && !IdempotencyService.isValidKey(idempotencyKey)) {
+                outcome = "invalid";
+                return ResponseEntity.badRequest().body(Map.of("error",
+                        IdempotencyService.HEADER + " must be 1-" + IdempotencyService.MAX_KEY_LENGTH + " characters"));
+            }
+
             User sender = getCurrentUser();
-            User receiver = userRepository.findById(request.getReceiverId())
+            String requestHash = idempotencyKey == null ? null : IdempotencyService.requestHash(
+                    request.getReceiverId(), request.getContent(), request.isReadOnce(), request.getExpirationMinutes());
+
+            // A retry of an earlier send: answer with the original result, no new key, ciphertext or row
+            if (idempotencyKey != null) {
+                Optional<IdempotencyService.SentRequest> previous = findPreviousSend(sender.getId(), idempotencyKey);
+                if (previous.isPresent()) {
+                    outcome = previous.get().matches(requestHash) ? "replayed" : "key_reused";
+                    return replay(previous.get(), requestHash);
+                }
+            }
+
+            User receiver = RepositoryCallEvent.record("users.findById", () -> userRepository.findById(request.getReceiverId()))
                     .orElseThrow(() -> new RuntimeException("Recipient not found"));
     
-            // Encrypt the message content
             String keyId = encryptionService.generateKey();
-            Map<String, String> encryptedData = encryptionService.encrypt(request.getContent(), keyId);
-    
-            // Create and save the message
-            Message message = new Message();
-            message.setSender(sender);
-            message.setReceiver(receiver);
-            message.setContent(encryptedData.get("encryptedContent"));
-            message.setKeyId(keyId);
-            message.setTimestamp(LocalDateTime.now());
-            message.setRead(false);
-            message.setRevoked(false);
-            message.setReadOnce(request.isReadOnce());
-            message.setIv(encryptedData.get("iv"));
-    
-            // Set expiration if requested
-            if (request.getExpirationMinutes() != null && request.getExpirationMinutes() > 0) {
-                LocalDateTime expirationTime = LocalDateTime.now().plusMinutes(request.getExpirationMinutes());
-                message.setExpiresAt(expirationTime);
-            } else {
-                // Explicitly set to null if no expiration
-                message.setExpiresAt(null);
+            Message message;
+            try {
+                // Encrypt the message content
+                EncryptionService.EncryptedBytes encryptedData = encryptionService.encryptToBytes(request.getContent(), keyId);
+                CiphertextStore.Placement placement = ciphertextStore.place(encryptedData);
+
+                // Create and save the message
+                Message unsaved = new Message();
+                unsaved.setSender(sender);
+                unsaved.setReceiver(receiver);
+                placement.applyTo(unsaved);
+                unsaved.setKeyId(keyId);
+                unsaved.setTimestamp(LocalDateTime.now());
+                unsaved.setRead(false);
+                unsaved.setRevoked(false);
+                unsaved.setReadOnce(request.isReadOnce());
+                unsaved.setIdempotencyKey(idempotencyKey);
+                unsaved.setRequestHash(requestHash);
+
+                // Set expiration if requested
+                if (request.getExpirationMinutes() != null && request.getExpirationMinutes() > 0) {
+                    LocalDateTime expirationTime = LocalDateTime.now().plusMinutes(request.getExpirationMinutes());
+                    unsaved.setExpiresAt(expirationTime);
+                } else {
+                    // Explicitly set to null if no expiration
+                    unsaved.setExpiresAt(null);
+                }
+
+                // Message row and conversation summaries commit together, so the summaries can't drift.
+                // Flushed inside so a duplicate idempotency key fails here rather than at commit.
+                message = transactionTemplate.execute(status -> {
+                    Message saved = RepositoryCallEvent.record("messages.save",
+                            () -> messageRepository.saveAndFlush(unsaved));
+                    conversationService.onMessageSent(saved);
+                    return saved;
+                });
+            } catch (RuntimeException e) {
+                // Nothing committed refers to the new key. Retire it, or it stays active and key GC
+                // (which only collects inactive keys) never reclaims it.
+                discardKey(keyId, e);
+                // A concurrent send with the same key may have won the insert; answer with its result
+                Optional<IdempotencyService.SentRequest> winner =
+                        e instanceof DataIntegrityViolationException && idempotencyKey != null
+                                ? findPreviousSend(sender.getId(), idempotencyKey)
+                                : Optional.empty();
+                if (winner.isEmpty()) {
+                    throw e;
+                }
+                outcome = winner.get().matches(requestHash) ? "replayed" : "key_reused";
+                return replay(winner.get(), requestHash);
             }
-    
-            message = messageRepository.save(message);
-    
-            return ResponseEntity.status(HttpStatus.CREATED).body(Map.of(
-                    "messageId", message.getId(),
-                    "sent", true,
-                    "timestamp", message.getTimestamp(),
-                    "expiresAt", message.getExpiresAt()
-            ));
+            metricsTimeSeriesService.record(ThroughputMetric.MESSAGES_SENT);
+            outcome = "success";
+
+            Map<String, Object> response = sendResponse(message.getId(), message.getTimestamp(), message.getExpiresAt());
+            if (idempotencyKey != null) {
+                idempotencyService.remember(sender.getId(), idempotencyKey, requestHash, response);
+            }
+            return ResponseEntity.status(HttpStatus.CREATED).body(response);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("error", "Failed to send message: " + e.getMessage()));
+        } finally {
+            sample.stop(Timer.builder("safechat.messages.send")
+                    .description("End-to-end message send")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+
+    // The earlier send's result if this is a retry of it; 422 if the key was used for a different message
+    private ResponseEntity<?> replay(IdempotencyService.SentRequest previous, String requestHash) {
+        if (!previous.matches(requestHash)) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(Map.of("error",
+                    IdempotencyService.HEADER + " was already used for a different message"));
+        }
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .header("Idempotent-Replayed", "true")
+                .body(previous.response());
+    }
+
+    private void discardKey(String keyId, RuntimeException cause) {
+        try {
+            encryptionService.deleteKey(keyId);
+        } catch (RuntimeException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    // Cached result first; after eviction (or a restart) the unique key on messages still finds it
+    private Optional<IdempotencyService.SentRequest> findPreviousSend(UUID senderId, String idempotencyKey) {
+        Optional<IdempotencyService.SentRequest> cached = idempotencyService.lookup(senderId, idempotencyKey);
+        if (cached.isPresent()) {
+            return cached;
+        }
+        Optional<IdempotencyService.SentRequest> stored = RepositoryCallEvent.record("messages.findIdempotentSend",
+                        () -> messageRepository.findIdempotentSend(senderId, idempotencyKey))
+                .map(send -> new IdempotencyService.SentRequest(send.requestHash(),
+                        sendResponse(send.id(), send.timestamp(), send.expiresAt())));
+        stored.ifPresent(previous -> idempotencyService.remember(senderId, idempotencyKey,
+                previous.requestHash(), previous.response()));
+        return stored;
+    }
+
+    // HashMap rather than Map.of: expiresAt is null for messages that don't expire
+    private Map<String, Object> sendResponse(UUID messageId, LocalDateTime timestamp, LocalDateTime expiresAt) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("messageId", messageId);
+        response.put("sent", true);
+        response.put("timestamp", timestamp);
+        response.put("expiresAt", expiresAt);
+        return response;
+    }
+
+    // Send the same message to many recipients: one key, one encryption, batched inserts.
+    // Responds with a status per (de-duplicated) recipient.
+    @PostMapping("/broadcast")
+    @PreAuthorize("hasRole('SUPPORT_ADMIN') or hasRole('SUPER_ADMIN')")
+    public ResponseEntity<?> broadcastMessage(@RequestBody BroadcastMessageRequest request) {
+        if (request.getReceiverIds() == null || request.getReceiverIds().isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "At least one recipient is required"));
+        }
+        if (request.getReceiverIds().size() > maxBroadcastRecipients) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "At most " + maxBroadcastRecipients + " recipients are allowed"));
+        }
+        if (request.getContent() == null || request.getContent().isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Message content is required"));
+        }
+        try {
+            UUID senderId = getCurrentUserId();
+            List<BroadcastRecipientStatus> results = broadcastService.broadcast(senderId, request.getReceiverIds(),
+                    request.getContent(), request.isReadOnce(), request.getExpirationMinutes());
+            long sent = results.stream()
+                    .filter(result -> BroadcastRecipientStatus.SENT.equals(result.getStatus()))
+                    .count();
+            return ResponseEntity.status(sent > 0 ? HttpStatus.CREATED : HttpStatus.UNPROCESSABLE_ENTITY).body(Map.of(
+                    "sent", sent,
+                    "failed", results.size() - sent,
+                    "results", results
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to broadcast message: " + e.getMessage()));
         }
     }
 
@@ -255,65 +466,149 @@ public class MessageController {
         @GetMapping
         public ResponseEntity<?> getMessages(
                 @RequestParam(required = false) UUID conversationWith,
-                @RequestParam(required = false, defaultValue = "false") boolean unreadOnly) {
+                @RequestParam(required = false, defaultValue = "false") boolean unreadOnly,
+                @RequestParam(required = false) Integer limit,
+                @RequestParam(required = false) String before) {
+            MessageCursor cursor;
             try {
-                User currentUser = getCurrentUser();
-                List<Message> messages;
-
-                if (conversationWith != null) {
+                cursor = before != null ? MessageCursor.parse(before) : null;
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+            }
+            try {
+                long phaseStart = System.nanoTime();
+                UUID currentUserId = getCurrentUserId();
+                // Without a limit the inbox comes back whole, as the frontend still builds its
+                // conversations from this one call; paging is opt-in through limit/before
+                Limit pageLimit = limit != null
+                        ? Limit.of(Math.max(1, Math.min(limit, MAX_INBOX_LIMIT)))
+                        : Limit.unlimited();
+                LocalDateTime fetchTime = LocalDateTime.now();
+                List<MessageView> messages;
+                // Keyset cursor for the next (older) page, sent back in X-Next-Cursor
+                MessageCursor nextCursor = null;
+
+                if (conversationWith != null && (cursor != null || pageLimit.isLimited())) {
+                    // A page of a conversation, fetched newest-first and returned oldest-first
+                    messages = new ArrayList<>(cursor != null
+                            ? RepositoryCallEvent.record("messages.findMessageViewsBetweenUsersBefore",
+                                    () -> messageRepository.findMessageViewsBetweenUsersBefore(currentUserId,
+                                            conversationWith, cursor.timestamp(), cursor.id(), fetchTime, pageLimit))
+                            : RepositoryCallEvent.record("messages.findMessageViewsBetweenUsersNewest",
+                                    () -> messageRepository.findMessageViewsBetweenUsersNewest(currentUserId,
+                                            conversationWith, fetchTime, pageLimit)));
+                    nextCursor = oldestIfFull(messages, pageLimit);
+                    Collections.reverse(messages);
+                } else if (conversationWith != null) {
                     // Get conversation with specific user
-                    messages = messageRepository.findMessagesBetweenUsers(currentUser.getId(), conversationWith);
+                    messages = RepositoryCallEvent.record("messages.findMessageViewsBetweenUsers",
+                            () -> messageRepository.findMessageViewsBetweenUsers(currentUserId, conversationWith));
                 } else if (unreadOnly) {
                     // Get only unread messages
-                    messages = messageRepository.findByReceiverIdAndReadFalse(currentUser.getId());
+                    messages = RepositoryCallEvent.record("messages.findUnreadMessageViewsByReceiverId",
+                            () -> messageRepository.findUnreadMessageViewsByReceiverId(currentUserId));
+                } else if (cursor != null) {
+                    messages = RepositoryCallEvent.record("messages.findInboxViewsBefore",
+                            () -> messageRepository.findInboxViewsBefore(currentUserId, cursor.timestamp(),
+                                    cursor.id(), fetchTime, pageLimit));
+                    nextCursor = oldestIfFull(messages, pageLimit);
                 } else {
-                    // Get all messages where user is sender or receiver
-                    List<Message> sent = messageRepository.findBySenderId(currentUser.getId());
-                    List<Message> received = messageRepository.findByReceiverId(currentUser.getId());
-                    
-                    messages = new ArrayList<>();
-                    messages.addAll(sent);
-                    messages.addAll(received);
-                    
-                    // Sort by timestamp
-                    messages.sort(Comparator.comparing(Message::getTimestamp).reversed());
+                    // Get the newest messages where user is sender or receiver; already
+                    // filtered for expiry/revocation and ordered by the database
+                    messages = RepositoryCallEvent.record("messages.findInboxViews",
+                            () -> messageRepository.findInboxViews(currentUserId, fetchTime, pageLimit));
+                    nextCursor = oldestIfFull(messages, pageLimit);
                 }
 
-                // Filter out expired messages
+                // Filter out expired messages (the inbox query already excludes them)
                 LocalDateTime now = LocalDateTime.now();
                 messages = messages.stream()
                     .filter(msg -> msg.getExpiresAt() == null || msg.getExpiresAt().isAfter(now))
                     .collect(Collectors.toList());
+                phaseStart = recordFetchPhase("db", phaseStart);
+
+                // Large pages are decrypted in parallel; see PageDecryptor
+                List<String> contents = pageDecryptor.decrypt(messages);
+                phaseStart = recordFetchPhase("decrypt", phaseStart);
 
-                List<MessageResponse> responses = new ArrayList<>();
-                for (Message message : messages) {
-                    // Decryption logic remains the same
-                    try {
-                        String decryptedContent;
-                        if (message.getKeyId() != null && message.getIv() != null) {
-                            decryptedContent = encryptionService.decrypt(message.getContent(), message.getIv(), message.getKeyId());
-                        } else {
-                            decryptedContent = "[Message no longer available]";
-                        }
-                        responses.add(new MessageResponse(message, decryptedContent));
-                    } catch (Exception e) {
-                        responses.add(new MessageResponse(message, "[Message Revoked by Admin]"));
-                    }
+                List<MessageResponse> responses = new ArrayList<>(messages.size());
+                for (int i = 0; i < messages.size(); i++) {
+                    responses.add(new MessageResponse(messages.get(i), contents.get(i)));
                 }
+                // Serialize here rather than in the message converter so the phase can be timed
+                byte[] body = objectMapper.writeValueAsBytes(responses);
+                recordFetchPhase("serialize", phaseStart);
 
-                return ResponseEntity.ok(responses);
+                ResponseEntity.BodyBuilder ok = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+                if (nextCursor != null) {
+                    ok.header("X-Next-Cursor", nextCursor.toString());
+                }
+                return ok.body(body);
             } catch (Exception e) {
                 return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                         .body(Map.of("error", "Failed to retrieve messages: " + e.getMessage()));
             }
         }
 
+    // A full newest-first page may have more behind it; its last (oldest) row is the next cursor
+    private MessageCursor oldestIfFull(List<MessageView> newestFirst, Limit pageLimit) {
+        return pageLimit.isLimited() && newestFirst.size() == pageLimit.max()
+                ? MessageCursor.of(newestFirst.get(newestFirst.size() - 1)) : null;
+    }
+
+    // Record one phase of getMessages and return the start of the next one
+    private long recordFetchPhase(String phase, long phaseStart) {
+        long phaseEnd = System.nanoTime();
+        Timer.builder("safechat.messages.fetch")
+                .description("Message list retrieval, split by phase")
+                .tag("phase", phase)
+                .register(meterRegistry)
+                .record(phaseEnd - phaseStart, TimeUnit.NANOSECONDS);
+        return phaseEnd;
+    }
+
+    // Chat sidebar: one row per peer with the last message metadata and unread count
+    @GetMapping("/conversations")
+    public ResponseEntity<?> getConversations() {
+        try {
+            UUID currentUserId = getCurrentUserId();
+            return ResponseEntity.ok(RepositoryCallEvent.record("conversations.findSummariesByOwnerId",
+                    () -> conversationService.getConversations(currentUserId)));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to retrieve conversations: " + e.getMessage()));
+        }
+    }
+
+    // Mark everything the peer sent up to a point (default: now; never later than now or the newest
+    // message) as read with a single watermark write.
+    // Read-once messages stay unread until opened through GET /{messageId}.
+    @PostMapping("/conversations/{peerId}/read")
+    public ResponseEntity<?> markConversationRead(
+            @PathVariable UUID peerId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime upTo) {
+        try {
+            UUID currentUserId = getCurrentUserId();
+            LocalDateTime watermark = upTo != null ? upTo : LocalDateTime.now();
+            return conversationService.markReadUpTo(currentUserId, peerId, watermark)
+                    .<ResponseEntity<?>>map(conversation -> ResponseEntity.ok(Map.of(
+                            "peerId", peerId,
+                            "readUpTo", conversation.getReadUpTo(),
+                            "unreadCount", conversation.getUnreadCount())))
+                    .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                            .body(Map.of("error", "Conversation not found")));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to mark conversation as read: " + e.getMessage()));
+        }
+    }
+
     // Get a specific message
     @GetMapping("/{messageId}")
     public ResponseEntity<?> getMessage(@PathVariable UUID messageId) {
         try {
             User currentUser = getCurrentUser();
-            Message message = messageRepository.findById(messageId)
+            Message message = RepositoryCallEvent.record("messages.findById", () -> messageRepository.findById(messageId))
                     .orElseThrow(() -> new RuntimeException("Message not found"));
     
             // Check if user is authorized to view this message
@@ -323,21 +618,21 @@ public class MessageController {
                         .body(Map.of("error", "You are not authorized to view this message"));
             }
     
+            // Decrypt before marking as read: reading a read-once message may release its key
+            LocalDateTime now = LocalDateTime.now();
+            String decryptedContent = contentOf(message, now);
+
             // If user is the receiver and message is unread, mark as read
             if (message.getReceiver().getId().equals(currentUser.getId()) && !message.isRead()) {
-                messageExpirationService.markMessageAsRead(messageId, currentUser.getUsername());
+                boolean firstRead = messageExpirationService.markMessageAsRead(messageId, currentUser.getUsername());
+                if (firstRead) {
+                    metricsTimeSeriesService.record(ThroughputMetric.MESSAGE_READS);
+                } else if (message.isReadOnce()) {
+                    // A concurrent request consumed it first
+                    decryptedContent = PageDecryptor.UNAVAILABLE;
+                }
                 // Reload the message after marking as read
-                message = messageRepository.findById(messageId).orElseThrow();
-            }
-    
-            // Decrypt message properly
-            String decryptedContent;
-            if (!message.isRevoked() && message.getKeyId() != null && message.getIv() != null) {
-                decryptedContent = encryptionService.decrypt(message.getContent(), message.getIv(), message.getKeyId());
-            } else if (message.isRevoked()) {
-                decryptedContent = "[Message has been revoked by an Admin]";
-            } else {
-                decryptedContent = "[Message no longer available]";
+                message = RepositoryCallEvent.record("messages.findById", () -> messageRepository.findById(messageId)).orElseThrow();
             }
     
             return ResponseEntity.ok(new MessageResponse(message, decryptedContent));
@@ -347,12 +642,27 @@ public class MessageController {
         }
     }
 
+    // Expired covers consumed read-once messages: broadcast copies share a key, which stays until the
+    // last copy is gone, so the key still being there doesn't make a consumed copy readable
+    private String contentOf(Message message, LocalDateTime now) {
+        if (message.isRevoked()) {
+            return "[Message has been revoked by an Admin]";
+        } else if (message.getExpiresAt() != null && !message.getExpiresAt().isAfter(now)) {
+            return PageDecryptor.UNAVAILABLE;
+        } else if (message.getKeyId() != null && message.getCiphertextIv() != null) {
+            return encryptionService.decrypt(ciphertextStore.ciphertextOf(message),
+                    message.getCiphertextIv(), message.getKeyId(), message.isCompressed());
+        } else {
+            return PageDecryptor.UNAVAILABLE;
+        }
+    }
+
     // Delete a message (only sender can delete)
     @DeleteMapping("/{messageId}")
     public ResponseEntity<?> deleteMessage(@PathVariable UUID messageId) {
         try {
             User currentUser = getCurrentUser();
-            Message message = messageRepository.findById(messageId)
+            Message message = RepositoryCallEvent.record("messages.findById", () -> messageRepository.findById(messageId))
                     .orElseThrow(() -> new RuntimeException("Message not found"));
     
             // Verify the sender is the current user
@@ -361,13 +671,15 @@ public class MessageController {
                         .body(Map.of("error", "Only the sender can delete this message"));
             }
     
+            // Attachments first: their foreign key holds the message row until they're gone
+            attachmentService.deleteForMessages(List.of(messageId));
+
             // Hard delete the message
-            messageRepository.delete(message);
+            RepositoryCallEvent.run("messages.delete", () -> messageRepository.delete(message));
+            conversationService.refreshPair(message.getSender().getId(), message.getReceiver().getId());
     
-            // Delete the encryption key if it exists
-            if (message.getKeyId() != null) {
-                encryptionService.deleteKey(message.getKeyId());
-            }
+            // Delete the encryption key if it exists (and no broadcast copy still needs it)
+            messageExpirationService.releaseKey(message, LocalDateTime.now());
     
             return ResponseEntity.ok(Map.of(
                     "deleted", true,
@@ -383,8 +695,9 @@ public class MessageController {
     @GetMapping("/unread/count")
     public ResponseEntity<?> getUnreadCount() {
         try {
-            User currentUser = getCurrentUser();
-            Long unreadCount = messageRepository.countUnreadMessagesByReceiverId(currentUser.getId());
+            UUID currentUserId = getCurrentUserId();
+            // Served from memory; the database is only read the first time for this user
+            long unreadCount = unreadCountService.getUnreadCount(currentUserId);
             
             return ResponseEntity.ok(Map.of("unreadCount", unreadCount));
         } catch (Exception e) {
@@ -393,18 +706,20 @@ public class MessageController {
         }
     }
 
-    // Typing indicator
+    // Typing indicator (REST fallback for clients without a WebSocket; see ChatWebSocketHandler)
     @PostMapping("/typing")
     public ResponseEntity<?> handleTyping(@RequestBody TypingNotification typingNotification) {
-        System.out.println("User " + typingNotification.getSenderId() + " is typing to " + typingNotification.getReceiverId());
-        typingUsers.put(typingNotification.getSenderId(), typingNotification.getReceiverId());
+        typingStatusService.setTyping(typingNotification.getSenderId(), typingNotification.getReceiverId());
         return ResponseEntity.ok(Map.of("status", "typing"));
     }
 
     @PostMapping("/typing-stopped")
     public ResponseEntity<?> handleTypingStopped(@RequestBody TypingNotification typingNotification) {
-        System.out.println("User " + typingNotification.getSenderId() + " stopped typing.");
-        typingUsers.remove(typingNotification.getSenderId());
+        if (typingNotification.getReceiverId() != null) {
+            typingStatusService.removeTyping(typingNotification.getSenderId(), typingNotification.getReceiverId());
+        } else {
+            typingStatusService.removeTyping(typingNotification.getSenderId());
+        }
         return ResponseEntity.ok(Map.of("status", "not typing"));
     }
 
@@ -413,9 +728,6 @@ public class MessageController {
     @GetMapping("/typing-status")
     public ResponseEntity<?> getTypingStatus(@RequestParam String userId) {
         try {
-            // Log the incoming userId for debugging
-            System.out.println("Checking typing status for userId: " + userId);
-    
             // Ensure userId is not null or empty
             if (userId == null || userId.trim().isEmpty()) {
                 return ResponseEntity.badRequest().body(Map.of(
@@ -425,14 +737,7 @@ public class MessageController {
             }
     
             // Find who is typing to this user
-            String typingUser = typingUsers.entrySet().stream()
-                .filter(entry -> entry.getValue().equals(userId))
-                .map(Map.Entry::getKey)
-                .findFirst()
-                .orElse(null);
-    
-            // Log the result for debugging
-            System.out.println("Typing user found: " + (typingUser != null ? typingUser : "None"));
+            String typingUser = typingStatusService.getTypingUser(userId);
     
             return ResponseEntity.ok(Map.of(
                 "isTyping", typingUser != null, 
@@ -0,0 +1,25 @@
+package com.safechat.secure_messaging.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// Metadata-only view of a message for moderation; never carries ciphertext or full user entities
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AdminMessageSummary {
+    private UUID id;
+    private String senderUsername;
+    private String receiverUsername;
+    private LocalDateTime timestamp;
+    private LocalDateTime readAt;
+    private LocalDateTime expiresAt;
+    private LocalDateTime revokedAt;
+    private boolean read;
+    private boolean readOnce;
+    private boolean revoked;
+}
@@ -0,0 +1,14 @@
+package com.safechat.secure_messaging.dto;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.UUID;
+
+@Data
+public class BroadcastMessageRequest {
+    private List<UUID> receiverIds;
+    private String content;
+    private boolean readOnce;
+    private Integer expirationMinutes; // null or 0 means no expiration
+}
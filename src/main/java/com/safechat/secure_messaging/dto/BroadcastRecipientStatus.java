@@ -0,0 +1,21 @@
+package com.safechat.secure_messaging.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BroadcastRecipientStatus {
+    public static final String SENT = "SENT";
+    public static final String NOT_FOUND = "NOT_FOUND";
+    public static final String FAILED = "FAILED";
+
+    private UUID receiverId;
+    private String status;
+    private UUID messageId;
+    private String error;
+}
@@ -0,0 +1,21 @@
+package com.safechat.secure_messaging.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// One sidebar entry: the peer, the last message metadata and how many messages from them are unread
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ConversationSummary {
+    private UUID peerId;
+    private String peerUsername;
+    private UUID lastMessageId;
+    private LocalDateTime lastMessageAt;
+    private boolean lastMessageOutgoing;
+    private long unreadCount;
+}
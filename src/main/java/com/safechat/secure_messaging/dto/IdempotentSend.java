@@ -0,0 +1,9 @@
+package com.safechat.secure_messaging.dto;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// A stored message looked up by its sender's idempotency key: what the send answered, and the hash
+// of the request it was made for (null on rows sent before request hashes were recorded)
+public record IdempotentSend(UUID id, LocalDateTime timestamp, LocalDateTime expiresAt, String requestHash) {
+}
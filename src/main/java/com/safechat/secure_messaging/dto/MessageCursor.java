@@ -0,0 +1,33 @@
+package com.safechat.secure_messaging.dto;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.UUID;
+
+// Keyset position in a newest-first message list: the (timestamp, id) of the last row returned.
+// The id breaks ties between messages sent in the same instant, and keeps rows with legacy
+// random ids in time order. Sent to clients as "<ISO timestamp>_<id>".
+public record MessageCursor(LocalDateTime timestamp, UUID id) {
+
+    public static MessageCursor of(MessageView message) {
+        return new MessageCursor(message.getTimestamp(), message.getId());
+    }
+
+    public static MessageCursor parse(String value) {
+        int separator = value.indexOf('_');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Invalid cursor: " + value);
+        }
+        try {
+            return new MessageCursor(LocalDateTime.parse(value.substring(0, separator)),
+                    UUID.fromString(value.substring(separator + 1)));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + value, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return timestamp + "_" + id;
+    }
+}
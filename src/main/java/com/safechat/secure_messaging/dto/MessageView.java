@@ -0,0 +1,46 @@
+package com.safechat.secure_messaging.dto;
+
+import com.safechat.secure_messaging.model.StorageFormat;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// Read model for message lists: one row per message with usernames only, so neither
+// the User entities nor their roles are loaded. Content is still ciphertext.
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class MessageView {
+    private UUID id;
+    private UUID senderId;
+    private String senderUsername;
+    private String receiverUsername;
+    private LocalDateTime timestamp;
+    private LocalDateTime readAt;
+    private LocalDateTime expiresAt;
+    private boolean read;
+    private boolean readOnce;
+    private boolean revoked;
+    private String content;
+    private String iv;
+    private String keyId;
+    private int storageFormat;
+    private byte[] contentBin;
+    private byte[] ivBin;
+    private boolean compressed;
+    private Integer overflowSegment;
+    private Long overflowOffset;
+    private Integer overflowLength;
+
+    // Inline ciphertext and IV as bytes (see CiphertextStore for overflow rows)
+    public byte[] getCiphertext() {
+        return StorageFormat.resolve(storageFormat, contentBin, content);
+    }
+
+    public byte[] getCiphertextIv() {
+        return StorageFormat.resolve(storageFormat, ivBin, iv);
+    }
+}
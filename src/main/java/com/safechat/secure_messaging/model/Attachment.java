@@ -0,0 +1,69 @@
+package com.safechat.secure_messaging.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.ColumnDefault;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// A file attached to a message. The ciphertext lives in the attachment store as a sequence of
+// independently sealed AES-GCM chunks (see ChunkedAead); this row holds what's needed to open them.
+@Entity
+@Table(name = "attachments",
+    indexes = @Index(name = "idx_attachments_message", columnList = "message_id"))
+@Data
+@NoArgsConstructor
+public class Attachment {
+
+    // Assigned before upload (UuidV7Generator.generate()) because it's bound into every chunk
+    @Id
+    private UUID id;
+
+    // Set as a plain id; lifecycle follows the message through AttachmentService
+    @Column(name = "message_id", nullable = false)
+    private UUID messageId;
+
+    // Only here for the foreign key: an upload can't commit against a message deleted meanwhile,
+    // and a message can't be deleted while an attachment still points at it
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "message_id", insertable = false, updatable = false,
+            foreignKey = @ForeignKey(name = "fk_attachments_message"))
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Message message;
+
+    @Column(name = "uploader_id", nullable = false)
+    private UUID uploaderId;
+
+    @Column(name = "file_name", nullable = false)
+    private String fileName;
+
+    @Column(name = "content_type", nullable = false)
+    private String contentType;
+
+    // Plaintext size in bytes
+    @Column(nullable = false)
+    private long size;
+
+    // Plaintext bytes per chunk; every chunk but the last is full
+    @Column(name = "chunk_size", nullable = false)
+    private int chunkSize;
+
+    @Column(name = "key_id", nullable = false)
+    private String keyId;
+
+    @Column(name = "nonce_prefix", nullable = false, columnDefinition = "bytea")
+    private byte[] noncePrefix;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // Read-once: set when the receiver's single download is claimed, before any byte is sent
+    @Column(nullable = false)
+    @ColumnDefault("false")
+    private boolean consumed;
+}
@@ -5,9 +5,10 @@ import java.util.UUID;
 
 @Entity
 @Table(name = "audit_logs")
+@EntityListeners(StatsEntityListener.class)
 public class AuditLog {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @UuidV7
     private UUID id;
     
     @ManyToOne
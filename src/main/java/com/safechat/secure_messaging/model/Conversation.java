@@ -0,0 +1,47 @@
+package com.safechat.secure_messaging.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// Per-user summary of a chat with one peer, maintained on write so the sidebar
+// doesn't need the message history. Each pair of users has two rows, one per side.
+@Entity
+@Table(name = "conversations",
+    uniqueConstraints = @UniqueConstraint(name = "uk_conversations_owner_peer", columnNames = {"owner_id", "peer_id"}),
+    indexes = @Index(name = "idx_conversations_owner_last_message", columnList = "owner_id, last_message_at"))
+@Data
+@NoArgsConstructor
+public class Conversation {
+
+    @Id
+    private UUID id;
+
+    // Plain ids rather than associations: nothing on the read path needs the User entities
+    @Column(name = "owner_id", nullable = false)
+    private UUID ownerId;
+
+    @Column(name = "peer_id", nullable = false)
+    private UUID peerId;
+
+    @Column(name = "last_message_id")
+    private UUID lastMessageId;
+
+    @Column(name = "last_message_at")
+    private LocalDateTime lastMessageAt;
+
+    // True when the owner sent the last message
+    @Column(name = "last_message_outgoing", nullable = false)
+    private boolean lastMessageOutgoing;
+
+    @Column(name = "unread_count", nullable = false)
+    private long unreadCount;
+
+    // Everything the peer sent at or before this instant counts as read by the owner,
+    // except read-once messages, which are only read when opened individually
+    @Column(name = "read_up_to")
+    private LocalDateTime readUpTo;
+}
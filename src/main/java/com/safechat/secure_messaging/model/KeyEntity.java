@@ -4,9 +4,14 @@ import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.DynamicUpdate;
 
+// Updates write only the changed columns, so saving a row loaded before KeyRotationService
+// re-wrapped it doesn't put the old wrapping back
 @Entity
 @Table(name = "encryption_keys")
+@DynamicUpdate
 public class KeyEntity {
     @Id
     private String keyId;
@@ -16,6 +21,18 @@ public class KeyEntity {
     
     @Column(nullable = false)
     private boolean active = true;
+
+    // BINARY rows keep the key in key_bin (wrapped when masterKeyVersion is set) and leave keyMaterial empty
+    @Column(name = "storage_format", nullable = false)
+    @ColumnDefault("1")
+    private int storageFormat = StorageFormat.BASE64;
+
+    @Column(name = "key_bin", columnDefinition = "bytea")
+    private byte[] keyBin;
+
+    // Master key version key_bin is wrapped under; null for legacy rows holding the raw key
+    @Column(name = "master_key_version")
+    private Integer masterKeyVersion;
     
     public KeyEntity() {
     }
@@ -24,6 +41,18 @@ public class KeyEntity {
         this.keyId = keyId;
         this.keyMaterial = keyMaterial;
     }
+
+    public KeyEntity(String keyId, byte[] keyBin) {
+        this.keyId = keyId;
+        this.keyMaterial = "";
+        this.keyBin = keyBin;
+        this.storageFormat = StorageFormat.BINARY;
+    }
+
+    public KeyEntity(String keyId, byte[] wrappedKey, int masterKeyVersion) {
+        this(keyId, wrappedKey);
+        this.masterKeyVersion = masterKeyVersion;
+    }
     
     public String getKeyId() {
         return keyId;
@@ -41,6 +70,39 @@ public class KeyEntity {
         this.keyMaterial = keyMaterial;
     }
     
+    public int getStorageFormat() {
+        return storageFormat;
+    }
+
+    public void setStorageFormat(int storageFormat) {
+        this.storageFormat = storageFormat;
+    }
+
+    public byte[] getKeyBin() {
+        return keyBin;
+    }
+
+    public void setKeyBin(byte[] keyBin) {
+        this.keyBin = keyBin;
+    }
+
+    public Integer getMasterKeyVersion() {
+        return masterKeyVersion;
+    }
+
+    public void setMasterKeyVersion(Integer masterKeyVersion) {
+        this.masterKeyVersion = masterKeyVersion;
+    }
+
+    public boolean isWrapped() {
+        return masterKeyVersion != null;
+    }
+
+    // Stored key bytes, for either storage format: the wrapped key if isWrapped(), else the raw key
+    public byte[] getKeyBytes() {
+        return StorageFormat.resolve(storageFormat, keyBin, keyMaterial);
+    }
+
     public boolean isActive() {
         return active;
     }
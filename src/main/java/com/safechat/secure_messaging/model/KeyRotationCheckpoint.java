@@ -0,0 +1,48 @@
+package com.safechat.secure_messaging.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Progress of one phase of a master key rotation, committed with each batch so the job resumes
+// where it stopped after a pause, crash or redeploy. A new target version starts the phase over.
+@Entity
+@Table(name = "key_rotation_checkpoints")
+@Data
+@NoArgsConstructor
+public class KeyRotationCheckpoint {
+
+    @Id
+    private String phase;
+
+    @Column(name = "target_version", nullable = false)
+    private int targetVersion;
+
+    // Keyset cursor: the last row id handled, as text
+    @Column(name = "last_id")
+    private String lastId;
+
+    @Column(nullable = false)
+    private long processed;
+
+    // Rows that could not be decrypted and were skipped
+    @Column(nullable = false)
+    private long failed;
+
+    @Column(name = "started_at", nullable = false)
+    private LocalDateTime startedAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+
+    public KeyRotationCheckpoint(String phase, int targetVersion) {
+        this.phase = phase;
+        this.targetVersion = targetVersion;
+        this.startedAt = LocalDateTime.now();
+    }
+}
@@ -1,15 +1,29 @@
 package com.safechat.secure_messaging.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.DynamicUpdate;
 import java.time.LocalDateTime;
 import java.util.UUID;
 
+// Updates write only the changed columns: the ciphertext columns are rewritten in place by key
+// rotation and the storage migration, and a save of a copy loaded before that must not revert them
 @Entity
-@Table(name = "messages")
+@DynamicUpdate
+@Table(name = "messages",
+    uniqueConstraints = @UniqueConstraint(name = "uk_messages_sender_idempotency_key",
+        columnNames = {"sender_id", "idempotency_key"}),
+    indexes = {
+    @Index(name = "idx_messages_sender_timestamp", columnList = "sender_id, timestamp"),
+    @Index(name = "idx_messages_receiver_timestamp", columnList = "receiver_id, timestamp"),
+    @Index(name = "idx_messages_overflow_segment", columnList = "overflow_segment"),
+    @Index(name = "idx_messages_key_id", columnList = "key_id")
+})
+@EntityListeners(StatsEntityListener.class)
 public class Message {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
-    private UUID id;  // Using UUID for ID with AUTO generation strategy
+    @UuidV7
+    private UUID id;  // Time-ordered UUIDv7, see UuidV7Generator
     
     @ManyToOne
     @JoinColumn(name = "sender_id", nullable = false)
@@ -55,6 +69,38 @@ public class Message {
 
     @Column
     private String iv; // Initialization Vector (IV) for encryption
+
+    // v2 (StorageFormat.BINARY) rows keep raw bytes here and leave content empty and iv null
+    @Column(name = "storage_format", nullable = false)
+    @ColumnDefault("1")
+    private int storageFormat = StorageFormat.BASE64;
+
+    @Column(name = "content_bin", columnDefinition = "bytea")
+    private byte[] contentBin;
+
+    @Column(name = "iv_bin", columnDefinition = "bytea")
+    private byte[] ivBin;
+
+    // StorageFormat.OVERFLOW rows: where the ciphertext lives in the segment store
+    @Column(name = "overflow_segment")
+    private Integer overflowSegment;
+
+    @Column(name = "overflow_offset")
+    private Long overflowOffset;
+
+    @Column(name = "overflow_length")
+    private Integer overflowLength;
+
+    // Plaintext was deflated before encryption (long messages only)
+    @Column(nullable = false)
+    @ColumnDefault("false")
+    private boolean compressed;
+
+    @Column(name = "idempotency_key", length = 64)
+    private String idempotencyKey; // Client-supplied retry key, unique per sender
+
+    @Column(name = "request_hash", length = 64)
+    private String requestHash; // SHA-256 of the send request the idempotency key was first used for
     
     // Getters and Setters
     public UUID getId() {
@@ -176,6 +222,93 @@ public class Message {
     public void setIv(String iv) {
         this.iv = iv;
     }
+
+    public int getStorageFormat() {
+        return storageFormat;
+    }
+
+    public void setStorageFormat(int storageFormat) {
+        this.storageFormat = storageFormat;
+    }
+
+    public byte[] getContentBin() {
+        return contentBin;
+    }
+
+    public void setContentBin(byte[] contentBin) {
+        this.contentBin = contentBin;
+    }
+
+    public byte[] getIvBin() {
+        return ivBin;
+    }
+
+    public void setIvBin(byte[] ivBin) {
+        this.ivBin = ivBin;
+    }
+
+    public Integer getOverflowSegment() {
+        return overflowSegment;
+    }
+
+    public Long getOverflowOffset() {
+        return overflowOffset;
+    }
+
+    public Integer getOverflowLength() {
+        return overflowLength;
+    }
+
+    // Point the row at ciphertext held in the segment store; the IV stays inline
+    public void setOverflowCiphertext(int segment, long offset, int length, byte[] iv) {
+        setCiphertext(null, iv);
+        this.storageFormat = StorageFormat.OVERFLOW;
+        this.overflowSegment = segment;
+        this.overflowOffset = offset;
+        this.overflowLength = length;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    // Store ciphertext in the binary (v2) format. The legacy content column is NOT NULL, so it's left empty.
+    public void setCiphertext(byte[] ciphertext, byte[] iv) {
+        this.storageFormat = StorageFormat.BINARY;
+        this.contentBin = ciphertext;
+        this.ivBin = iv;
+        this.content = "";
+        this.iv = null;
+    }
+
+    // Inline ciphertext and IV as bytes (see CiphertextStore for overflow rows)
+    public byte[] getCiphertext() {
+        return StorageFormat.resolve(storageFormat, contentBin, content);
+    }
+
+    public byte[] getCiphertextIv() {
+        return StorageFormat.resolve(storageFormat, ivBin, iv);
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public String getRequestHash() {
+        return requestHash;
+    }
+
+    public void setRequestHash(String requestHash) {
+        this.requestHash = requestHash;
+    }
     
     // Custom methods for revocation and other features
     public void setAdminRevoked(boolean revoked) {
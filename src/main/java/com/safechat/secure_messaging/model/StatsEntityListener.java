@@ -0,0 +1,47 @@
+package com.safechat.secure_messaging.model;
+
+import com.safechat.secure_messaging.service.SystemStatsService;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+// Keeps SystemStatsService counters in step with inserts/deletes from any code path
+@Component
+public class StatsEntityListener {
+
+    // Resolved lazily: listeners are built with the EntityManagerFactory, before the repositories exist
+    private final ObjectProvider<SystemStatsService> statsService;
+
+    public StatsEntityListener(ObjectProvider<SystemStatsService> statsService) {
+        this.statsService = statsService;
+    }
+
+    @PostPersist
+    public void afterInsert(Object entity) {
+        SystemStatsService stats = statsService.getIfAvailable();
+        if (stats == null) {
+            return;
+        }
+        if (entity instanceof User) {
+            stats.userCreated();
+        } else if (entity instanceof Message) {
+            stats.messageCreated();
+        } else if (entity instanceof AuditLog) {
+            stats.auditLogCreated();
+        }
+    }
+
+    @PostRemove
+    public void afterDelete(Object entity) {
+        SystemStatsService stats = statsService.getIfAvailable();
+        if (stats == null) {
+            return;
+        }
+        if (entity instanceof User) {
+            stats.userDeleted();
+        } else if (entity instanceof Message) {
+            stats.messageDeleted();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.safechat.secure_messaging.model;
+
+import java.util.Base64;
+
+// Per-row marker for how ciphertext, IVs and key material are stored.
+// BASE64 rows keep Base64 text in the original columns; BINARY rows use the *_bin bytea columns.
+// OVERFLOW (messages only) is BINARY with the ciphertext moved out to the segment store.
+public final class StorageFormat {
+    public static final int BASE64 = 1;
+    public static final int BINARY = 2;
+    public static final int OVERFLOW = 3;
+
+    private StorageFormat() {
+    }
+
+    // Raw bytes of an inline value whichever format the row is in.
+    // Overflow ciphertext isn't inline; it's read through CiphertextStore.
+    public static byte[] resolve(int format, byte[] binary, String base64) {
+        if (format == BINARY || format == OVERFLOW) {
+            return binary;
+        }
+        return base64 == null ? null : Base64.getDecoder().decode(base64);
+    }
+}
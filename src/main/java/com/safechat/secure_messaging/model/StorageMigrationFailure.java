@@ -0,0 +1,42 @@
+package com.safechat.secure_messaging.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+// A legacy row the storage format migration could not convert. Recorded so the job skips it on
+// later runs instead of retrying it forever; the row itself stays readable in the Base64 format.
+@Entity
+@Table(name = "storage_migration_failures")
+@IdClass(StorageMigrationFailure.Key.class)
+@Data
+@NoArgsConstructor
+public class StorageMigrationFailure {
+
+    @Id
+    @Column(name = "table_name")
+    private String tableName;
+
+    // Primary key of the failed row, as text
+    @Id
+    @Column(name = "row_id")
+    private String rowId;
+
+    @Column(nullable = false)
+    private String reason;
+
+    @Column(name = "failed_at", nullable = false)
+    private LocalDateTime failedAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String tableName;
+        private String rowId;
+    }
+}
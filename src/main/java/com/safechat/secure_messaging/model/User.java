@@ -11,6 +11,7 @@ import jakarta.persistence.*;
 
 @Entity
 @Table(name = "APP_USER")
+@EntityListeners(StatsEntityListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
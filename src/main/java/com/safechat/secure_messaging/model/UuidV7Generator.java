@@ -0,0 +1,51 @@
+package com.safechat.secure_messaging.model;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.hibernate.generator.EventTypeSets;
+
+import java.security.SecureRandom;
+import java.util.EnumSet;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * UUIDv7: 48-bit Unix milliseconds, then a 12-bit sequence, then 62 random bits.
+ * Ids created later compare greater in PostgreSQL's byte-wise uuid ordering, so inserts append
+ * to the right edge of the primary key index and the id can serve as a keyset cursor.
+ * The sequence keeps ids strictly increasing within this JVM even when many are created in
+ * the same millisecond or the clock steps back.
+ */
+public class UuidV7Generator implements BeforeExecutionGenerator {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // (unix millis << 12) | sequence of the last id handed out
+    private static final AtomicLong LAST_TIMESTAMP_AND_SEQUENCE = new AtomicLong();
+
+    public static UUID generate() {
+        long timestampAndSequence = LAST_TIMESTAMP_AND_SEQUENCE.updateAndGet(last -> {
+            long now = System.currentTimeMillis() << 12;
+            // Same millisecond (or clock went backwards): bump the sequence, overflowing into the timestamp
+            return now > last ? now : last + 1;
+        });
+        long millis = timestampAndSequence >>> 12;
+        long sequence = timestampAndSequence & 0xFFF;
+
+        long mostSigBits = (millis << 16) | 0x7000L | sequence;
+        long leastSigBits = (RANDOM.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object owner, Object currentValue,
+                           EventType eventType) {
+        return generate();
+    }
+
+    @Override
+    public EnumSet<EventType> getEventTypes() {
+        return EventTypeSets.INSERT_ONLY;
+    }
+}
@@ -0,0 +1,28 @@
+package com.safechat.secure_messaging.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// One AES-GCM encrypt or decrypt call in EncryptionService
+@Name("safechat.Crypto")
+@Label("Crypto Operation")
+@Category({"SafeChat", "Crypto"})
+@StackTrace(false)
+public class CryptoEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Payload Size")
+    @Description("Plaintext size for encrypt, ciphertext size for decrypt")
+    @DataAmount
+    public long size;
+
+    @Label("Key Cache Hit")
+    @Description("True when the data key came from the in-memory cache; false on a database load or the master key")
+    public boolean keyCacheHit;
+}
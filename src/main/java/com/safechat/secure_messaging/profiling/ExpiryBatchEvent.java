@@ -0,0 +1,20 @@
+package com.safechat.secure_messaging.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// One run of the expired-message purge
+@Name("safechat.ExpiryBatch")
+@Label("Message Expiry Batch")
+@Category({"SafeChat", "Jobs"})
+@StackTrace(false)
+public class ExpiryBatchEvent extends jdk.jfr.Event {
+
+    @Label("Expired Messages")
+    public int messages;
+
+    @Label("Keys Deleted")
+    public int keysDeleted;
+}
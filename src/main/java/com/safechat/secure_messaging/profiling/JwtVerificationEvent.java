@@ -0,0 +1,20 @@
+package com.safechat.secure_messaging.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Token parsing, signature check and user lookup in JwtAuthorizationFilter
+@Name("safechat.JwtVerification")
+@Label("JWT Verification")
+@Category({"SafeChat", "Security"})
+@StackTrace(false)
+public class JwtVerificationEvent extends jdk.jfr.Event {
+
+    @Label("Outcome")
+    public String outcome;
+
+    @Label("Request URI")
+    public String requestUri;
+}
@@ -0,0 +1,58 @@
+package com.safechat.secure_messaging.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+// A single repository call made from a request handler
+@Name("safechat.RepositoryCall")
+@Label("Repository Call")
+@Category({"SafeChat", "Persistence"})
+public class RepositoryCallEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Rows")
+    public int rows;
+
+    public static <T> T record(String operation, Supplier<T> call) {
+        RepositoryCallEvent event = new RepositoryCallEvent();
+        event.begin();
+        try {
+            T result = call.get();
+            if (result instanceof Collection<?> collection) {
+                event.rows = collection.size();
+            } else if (result instanceof Optional<?> optional) {
+                event.rows = optional.isPresent() ? 1 : 0;
+            } else if (result != null) {
+                event.rows = 1;
+            }
+            return result;
+        } finally {
+            event.finish(operation);
+        }
+    }
+
+    public static void run(String operation, Runnable call) {
+        RepositoryCallEvent event = new RepositoryCallEvent();
+        event.begin();
+        try {
+            call.run();
+        } finally {
+            event.finish(operation);
+        }
+    }
+
+    private void finish(String operation) {
+        end();
+        if (shouldCommit()) {
+            this.operation = operation;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.safechat.secure_messaging.repository;
+
+import com.safechat.secure_messaging.model.Attachment;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface AttachmentRepository extends JpaRepository<Attachment, UUID> {
+
+    List<Attachment> findByMessageIdOrderByCreatedAtAsc(UUID messageId);
+
+    List<Attachment> findByMessageIdIn(Collection<UUID> messageIds);
+
+    // Attachments on any message the user sent or received, for account deletion
+    @Query("SELECT a FROM Attachment a WHERE a.messageId IN " +
+           "(SELECT m.id FROM Message m WHERE m.sender.id = :userId OR m.receiver.id = :userId)")
+    List<Attachment> findByParticipant(@Param("userId") UUID userId);
+
+    // Read-once claim: only one download can flip it
+    @Modifying
+    @Query("UPDATE Attachment a SET a.consumed = true WHERE a.id = :id AND a.consumed = false")
+    int claim(@Param("id") UUID id);
+}
@@ -0,0 +1,84 @@
+package com.safechat.secure_messaging.repository;
+
+import com.safechat.secure_messaging.dto.ConversationSummary;
+import com.safechat.secure_messaging.model.Conversation;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface ConversationRepository extends JpaRepository<Conversation, UUID> {
+
+    @Query("SELECT new com.safechat.secure_messaging.dto.ConversationSummary(" +
+           "c.peerId, u.username, c.lastMessageId, c.lastMessageAt, c.lastMessageOutgoing, c.unreadCount) " +
+           "FROM Conversation c JOIN User u ON u.id = c.peerId " +
+           "WHERE c.ownerId = :ownerId " +
+           "ORDER BY c.lastMessageAt DESC")
+    List<ConversationSummary> findSummariesByOwnerId(@Param("ownerId") UUID ownerId);
+
+    // Portable "insert if missing" (PostgreSQL, and H2 in PostgreSQL mode); callers then apply an UPDATE
+    @Modifying
+    @Query(value = "INSERT INTO conversations (id, owner_id, peer_id, last_message_outgoing, unread_count) " +
+           "VALUES (:id, :ownerId, :peerId, false, 0) ON CONFLICT DO NOTHING",
+           nativeQuery = true)
+    int insertIfAbsent(@Param("id") UUID id, @Param("ownerId") UUID ownerId, @Param("peerId") UUID peerId);
+
+    @Modifying
+    @Query("UPDATE Conversation c SET c.lastMessageId = :messageId, c.lastMessageAt = :sentAt, " +
+           "c.lastMessageOutgoing = :outgoing, c.unreadCount = c.unreadCount + :unreadDelta " +
+           "WHERE c.ownerId = :ownerId AND c.peerId = :peerId")
+    int recordMessage(@Param("ownerId") UUID ownerId,
+                      @Param("peerId") UUID peerId,
+                      @Param("messageId") UUID messageId,
+                      @Param("sentAt") LocalDateTime sentAt,
+                      @Param("outgoing") boolean outgoing,
+                      @Param("unreadDelta") long unreadDelta);
+
+    // Row lock so a concurrent send can't increment the counter between our count and our write
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<Conversation> findByOwnerIdAndPeerId(UUID ownerId, UUID peerId);
+
+    @Query("SELECT COALESCE(SUM(c.unreadCount), 0) FROM Conversation c WHERE c.ownerId = :ownerId")
+    long sumUnreadByOwnerId(@Param("ownerId") UUID ownerId);
+
+    // Skipped when the message was already counted as read through the watermark
+    @Modifying
+    @Query("UPDATE Conversation c SET c.unreadCount = CASE WHEN c.unreadCount > 0 THEN c.unreadCount - 1 ELSE 0 END " +
+           "WHERE c.ownerId = :ownerId AND c.peerId = :peerId " +
+           "AND (:readOnce = true OR c.readUpTo IS NULL OR c.readUpTo < :sentAt)")
+    int decrementUnread(@Param("ownerId") UUID ownerId,
+                        @Param("peerId") UUID peerId,
+                        @Param("sentAt") LocalDateTime sentAt,
+                        @Param("readOnce") boolean readOnce);
+
+    @Modifying
+    @Query("UPDATE Conversation c SET c.lastMessageId = :messageId, c.lastMessageAt = :sentAt, " +
+           "c.lastMessageOutgoing = :outgoing, c.unreadCount = :unreadCount " +
+           "WHERE c.ownerId = :ownerId AND c.peerId = :peerId")
+    int overwrite(@Param("ownerId") UUID ownerId,
+                  @Param("peerId") UUID peerId,
+                  @Param("messageId") UUID messageId,
+                  @Param("sentAt") LocalDateTime sentAt,
+                  @Param("outgoing") boolean outgoing,
+                  @Param("unreadCount") long unreadCount);
+
+    @Modifying
+    @Query("DELETE FROM Conversation c WHERE c.ownerId = :ownerId AND c.peerId = :peerId")
+    int deleteByOwnerIdAndPeerId(@Param("ownerId") UUID ownerId, @Param("peerId") UUID peerId);
+
+    @Query("SELECT c.ownerId FROM Conversation c WHERE c.peerId = :peerId")
+    List<UUID> findOwnerIdsByPeerId(@Param("peerId") UUID peerId);
+
+    @Modifying
+    @Query("DELETE FROM Conversation c WHERE c.ownerId = :userId OR c.peerId = :userId")
+    int deleteByUser(@Param("userId") UUID userId);
+}
@@ -0,0 +1,9 @@
+package com.safechat.secure_messaging.repository;
+
+import com.safechat.secure_messaging.model.KeyRotationCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface KeyRotationCheckpointRepository extends JpaRepository<KeyRotationCheckpoint, String> {
+}
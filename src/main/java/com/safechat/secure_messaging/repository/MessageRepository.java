@@ -1,14 +1,21 @@
 // MessageRepository.java - Fix method naming
 package com.safechat.secure_messaging.repository;
+import com.safechat.secure_messaging.dto.AdminMessageSummary;
+import com.safechat.secure_messaging.dto.IdempotentSend;
+import com.safechat.secure_messaging.dto.MessageView;
 import com.safechat.secure_messaging.model.Message;
 import com.safechat.secure_messaging.model.User;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 public interface MessageRepository extends JpaRepository<Message, UUID> {
@@ -30,6 +37,162 @@ public interface MessageRepository extends JpaRepository<Message, UUID> {
     @Query("SELECT COUNT(m) FROM Message m WHERE m.receiver.id = :userId AND m.read = false")
     Long countUnreadMessagesByReceiverId(@Param("userId") UUID userId);
 
+    // True when the receiver's read-up-to watermark (conversation alias rc) covers message m
+    String WATERMARK_COVERS = "m.readOnce = false AND rc.readUpTo IS NOT NULL AND m.timestamp <= rc.readUpTo";
+
+    // Message list read model: a single SELECT with the usernames joined in, no entity hydration.
+    // The receiver's conversation row is joined so "read" also honours the read-up-to watermark.
+    String MESSAGE_VIEW_SELECT = "SELECT new com.safechat.secure_messaging.dto.MessageView(" +
+           "m.id, s.id, s.username, r.username, m.timestamp, m.readAt, m.expiresAt, " +
+           "CASE WHEN m.read = true OR (" + WATERMARK_COVERS + ") THEN true ELSE false END, " +
+           "m.readOnce, m.revoked, m.content, m.iv, m.keyId, m.storageFormat, m.contentBin, m.ivBin, m.compressed, " +
+           "m.overflowSegment, m.overflowOffset, m.overflowLength) " +
+           "FROM Message m JOIN m.sender s JOIN m.receiver r " +
+           "LEFT JOIN Conversation rc ON rc.ownerId = r.id AND rc.peerId = s.id ";
+
+    @Query(MESSAGE_VIEW_SELECT +
+           "WHERE (s.id = :userId1 AND r.id = :userId2) OR (s.id = :userId2 AND r.id = :userId1) " +
+           "ORDER BY m.timestamp ASC")
+    List<MessageView> findMessageViewsBetweenUsers(@Param("userId1") UUID userId1, @Param("userId2") UUID userId2);
+
+    // Newest-first inbox (sent and received), filtered, ordered and limited by the database.
+    // Served by the (sender_id, timestamp) and (receiver_id, timestamp) indexes on Message; the id
+    // only orders messages that share a timestamp.
+    @Query(MESSAGE_VIEW_SELECT +
+           "WHERE (s.id = :userId OR r.id = :userId) " +
+           "AND (m.expiresAt IS NULL OR m.expiresAt > :now) " +
+           "AND m.revoked = false " +
+           "ORDER BY m.timestamp DESC, m.id DESC")
+    List<MessageView> findInboxViews(@Param("userId") UUID userId, @Param("now") LocalDateTime now, Limit limit);
+
+    // Keyset pages in the same (timestamp, id) order: strictly older than the cursor, newest first
+    String OLDER_THAN_CURSOR = "(m.timestamp < :beforeTimestamp " +
+           "OR (m.timestamp = :beforeTimestamp AND m.id < :beforeId)) ";
+
+    @Query(MESSAGE_VIEW_SELECT +
+           "WHERE (s.id = :userId OR r.id = :userId) AND " + OLDER_THAN_CURSOR +
+           "AND (m.expiresAt IS NULL OR m.expiresAt > :now) " +
+           "AND m.revoked = false " +
+           "ORDER BY m.timestamp DESC, m.id DESC")
+    List<MessageView> findInboxViewsBefore(@Param("userId") UUID userId,
+                                           @Param("beforeTimestamp") LocalDateTime beforeTimestamp,
+                                           @Param("beforeId") UUID beforeId,
+                                           @Param("now") LocalDateTime now,
+                                           Limit limit);
+
+    // Newest page of a conversation, newest first
+    @Query(MESSAGE_VIEW_SELECT +
+           "WHERE ((s.id = :userId1 AND r.id = :userId2) OR (s.id = :userId2 AND r.id = :userId1)) " +
+           "AND (m.expiresAt IS NULL OR m.expiresAt > :now) " +
+           "AND m.revoked = false " +
+           "ORDER BY m.timestamp DESC, m.id DESC")
+    List<MessageView> findMessageViewsBetweenUsersNewest(@Param("userId1") UUID userId1,
+                                                         @Param("userId2") UUID userId2,
+                                                         @Param("now") LocalDateTime now,
+                                                         Limit limit);
+
+    @Query(MESSAGE_VIEW_SELECT +
+           "WHERE ((s.id = :userId1 AND r.id = :userId2) OR (s.id = :userId2 AND r.id = :userId1)) " +
+           "AND " + OLDER_THAN_CURSOR +
+           "AND (m.expiresAt IS NULL OR m.expiresAt > :now) " +
+           "AND m.revoked = false " +
+           "ORDER BY m.timestamp DESC, m.id DESC")
+    List<MessageView> findMessageViewsBetweenUsersBefore(@Param("userId1") UUID userId1,
+                                                         @Param("userId2") UUID userId2,
+                                                         @Param("beforeTimestamp") LocalDateTime beforeTimestamp,
+                                                         @Param("beforeId") UUID beforeId,
+                                                         @Param("now") LocalDateTime now,
+                                                         Limit limit);
+
+    // Latest live message between two users, newest first (used to rebuild conversation summaries)
+    @Query(MESSAGE_VIEW_SELECT +
+           "WHERE ((s.id = :userId1 AND r.id = :userId2) OR (s.id = :userId2 AND r.id = :userId1)) " +
+           "AND (m.expiresAt IS NULL OR m.expiresAt > :now) " +
+           "ORDER BY m.timestamp DESC")
+    List<MessageView> findLatestMessageViewsBetweenUsers(@Param("userId1") UUID userId1,
+                                                         @Param("userId2") UUID userId2,
+                                                         @Param("now") LocalDateTime now,
+                                                         Limit limit);
+
+    @Query("SELECT COUNT(m) FROM Message m " +
+           "LEFT JOIN Conversation rc ON rc.ownerId = m.receiver.id AND rc.peerId = m.sender.id " +
+           "WHERE m.receiver.id = :receiverId AND m.sender.id = :senderId " +
+           "AND m.read = false AND m.revoked = false AND NOT (" + WATERMARK_COVERS + ") " +
+           "AND (m.expiresAt IS NULL OR m.expiresAt > :now)")
+    long countUnreadFromSender(@Param("receiverId") UUID receiverId,
+                               @Param("senderId") UUID senderId,
+                               @Param("now") LocalDateTime now);
+
+    // What would still be unread from one sender if the watermark moved to :upTo
+    @Query("SELECT COUNT(m) FROM Message m " +
+           "LEFT JOIN Conversation rc ON rc.ownerId = m.receiver.id AND rc.peerId = m.sender.id " +
+           "WHERE m.receiver.id = :receiverId AND m.sender.id = :senderId " +
+           "AND m.read = false AND m.revoked = false AND NOT (" + WATERMARK_COVERS + ") " +
+           "AND (m.readOnce = true OR m.timestamp > :upTo) " +
+           "AND (m.expiresAt IS NULL OR m.expiresAt > :now)")
+    long countUnreadFromSenderAfter(@Param("receiverId") UUID receiverId,
+                                    @Param("senderId") UUID senderId,
+                                    @Param("upTo") LocalDateTime upTo,
+                                    @Param("now") LocalDateTime now);
+
+    @Query("SELECT new com.safechat.secure_messaging.dto.IdempotentSend(m.id, m.timestamp, m.expiresAt, m.requestHash) " +
+           "FROM Message m WHERE m.sender.id = :senderId AND m.idempotencyKey = :idempotencyKey")
+    Optional<IdempotentSend> findIdempotentSend(@Param("senderId") UUID senderId,
+                                                @Param("idempotencyKey") String idempotencyKey);
+
+    // Broadcast copies share one data key, so a key may only be destroyed once no other live copy needs it
+    @Query("SELECT COUNT(m) > 0 FROM Message m WHERE m.keyId = :keyId AND m.id <> :messageId " +
+           "AND m.revoked = false AND (m.expiresAt IS NULL OR m.expiresAt > :now)")
+    boolean isKeyUsedByOtherLiveMessages(@Param("keyId") String keyId,
+                                         @Param("messageId") UUID messageId,
+                                         @Param("now") LocalDateTime now);
+
+    @Query("SELECT DISTINCT m.sender.id, m.receiver.id FROM Message m")
+    List<Object[]> findSenderReceiverPairs();
+
+    @Query(MESSAGE_VIEW_SELECT + "WHERE r.id = :receiverId AND m.read = false AND NOT (" + WATERMARK_COVERS + ")")
+    List<MessageView> findUnreadMessageViewsByReceiverId(@Param("receiverId") UUID receiverId);
+
+    // Admin moderation listing: paged in the database, projected without content or user entities
+    @Query(value = "SELECT new com.safechat.secure_messaging.dto.AdminMessageSummary(" +
+           "m.id, s.username, r.username, m.timestamp, m.readAt, m.expiresAt, m.revokedAt, " +
+           "m.read, m.readOnce, m.revoked) " +
+           "FROM Message m JOIN m.sender s JOIN m.receiver r " +
+           "WHERE (:sender IS NULL OR s.username = :sender) " +
+           "AND (:receiver IS NULL OR r.username = :receiver) " +
+           "AND m.timestamp >= :from AND m.timestamp < :to " +
+           "ORDER BY m.timestamp DESC",
+           countQuery = "SELECT COUNT(m) FROM Message m JOIN m.sender s JOIN m.receiver r " +
+           "WHERE (:sender IS NULL OR s.username = :sender) " +
+           "AND (:receiver IS NULL OR r.username = :receiver) " +
+           "AND m.timestamp >= :from AND m.timestamp < :to")
+    Page<AdminMessageSummary> findAdminMessageSummaries(@Param("sender") String senderUsername,
+                                                        @Param("receiver") String receiverUsername,
+                                                        @Param("from") LocalDateTime from,
+                                                        @Param("to") LocalDateTime to,
+                                                        Pageable pageable);
+
+    // Key ids of the newest messages still readable, for warming the data key cache at startup
+    @Query("SELECT m.keyId FROM Message m WHERE m.timestamp >= :since AND m.revoked = false AND m.keyId IS NOT NULL " +
+           "ORDER BY m.timestamp DESC")
+    List<String> findRecentKeyIds(@Param("since") LocalDateTime since, Limit limit);
+
+    // Master-key rotation: rows under any master key version but the current one, in id order after a cursor
+    @Query(MESSAGE_VIEW_SELECT +
+           "WHERE (m.keyId = 'master' OR m.keyId LIKE 'master:%') AND m.keyId <> :currentKeyId AND m.id > :after " +
+           "ORDER BY m.id")
+    List<MessageView> findMasterKeyedViewsAfter(@Param("currentKeyId") String currentKeyId,
+                                                @Param("after") UUID after,
+                                                Limit limit);
+
+    // First read wins: only one caller flips read from false to true. A read-once message is consumed
+    // in the same statement (expiresAt = now), so later reads, of this copy or a retry, find it gone.
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Message m SET m.read = true, m.readAt = :now, " +
+           "m.expiresAt = CASE WHEN m.readOnce = true THEN :now ELSE m.expiresAt END " +
+           "WHERE m.id = :id AND m.read = false")
+    int markReadIfUnread(@Param("id") UUID id, @Param("now") LocalDateTime now);
+
     @Modifying
     @Transactional
     void deleteByReceiverIdOrSenderIdOrRevokedBy(UUID receiverId, UUID senderId, User revokedBy);
@@ -3,8 +3,11 @@ package com.safechat.secure_messaging.repository;
 
 import com.safechat.secure_messaging.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -12,6 +15,13 @@ import java.util.UUID;
 @Repository
 public interface UserRepository extends JpaRepository<User, UUID> {
     Optional<User> findByUsername(String username);
+
+    // Id only, for read paths that don't need the entity (and its EAGER roles)
+    @Query("SELECT u.id FROM User u WHERE u.username = :username")
+    Optional<UUID> findIdByUsername(@Param("username") String username);
+
+    @Query("SELECT u.id FROM User u WHERE u.id IN :ids")
+    List<UUID> findExistingIds(@Param("ids") Collection<UUID> ids);
     
     Optional<User> findByEmail(String email);
     
@@ -1,5 +1,9 @@
 package com.safechat.secure_messaging.security;
 
+import com.safechat.secure_messaging.profiling.JwtVerificationEvent;
+import com.safechat.secure_messaging.service.SystemStatsService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -18,10 +22,15 @@ public class JwtAuthorizationFilter extends OncePerRequestFilter {
 
     private final JwtUtils jwtUtils;
     private final UserDetailsServiceImpl userDetailsService;
+    private final SystemStatsService systemStatsService;
+    private final MeterRegistry meterRegistry;
 
-    public JwtAuthorizationFilter(JwtUtils jwtUtils, UserDetailsServiceImpl userDetailsService) {
+    public JwtAuthorizationFilter(JwtUtils jwtUtils, UserDetailsServiceImpl userDetailsService,
+                                  SystemStatsService systemStatsService, MeterRegistry meterRegistry) {
         this.jwtUtils = jwtUtils;
         this.userDetailsService = userDetailsService;
+        this.systemStatsService = systemStatsService;
+        this.meterRegistry = meterRegistry;
     }
 
     @Override
@@ -30,28 +39,49 @@ public class JwtAuthorizationFilter extends OncePerRequestFilter {
         
         final String authorizationHeader = request.getHeader("Authorization");
 
-        String username = null;
-        String jwt = null;
-
-        if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
-            jwt = authorizationHeader.substring(7);
+        if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")
+                && SecurityContextHolder.getContext().getAuthentication() == null) {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            JwtVerificationEvent event = new JwtVerificationEvent();
+            event.begin();
+            String outcome = "error";
             try {
-                username = jwtUtils.extractUsername(jwt);
-            } catch (Exception e) {
-                logger.error("Unable to extract username: " + e.getMessage());
+                outcome = authenticate(request, authorizationHeader.substring(7)) ? "valid" : "invalid";
+            } finally {
+                sample.stop(Timer.builder("safechat.jwt.verify")
+                        .description("JWT parsing, signature check and user lookup")
+                        .tag("outcome", outcome)
+                        .register(meterRegistry));
+                event.end();
+                if (event.shouldCommit()) {
+                    event.outcome = outcome;
+                    event.requestUri = request.getRequestURI();
+                    event.commit();
+                }
             }
         }
+        chain.doFilter(request, response);
+    }
 
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
-            
-            if (Boolean.TRUE.equals(jwtUtils.validateToken(jwt, userDetails))) {
-                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                        userDetails, null, userDetails.getAuthorities());
-                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                SecurityContextHolder.getContext().setAuthentication(authToken);
-            }
+    private boolean authenticate(HttpServletRequest request, String jwt) {
+        String username;
+        try {
+            username = jwtUtils.extractUsername(jwt);
+        } catch (Exception e) {
+            logger.error("Unable to extract username: " + e.getMessage());
+            return false;
         }
-        chain.doFilter(request, response);
+
+        UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
+        if (!Boolean.TRUE.equals(jwtUtils.validateToken(jwt, userDetails))) {
+            return false;
+        }
+
+        UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                userDetails, null, userDetails.getAuthorities());
+        authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+        SecurityContextHolder.getContext().setAuthentication(authToken);
+        systemStatsService.recordActivity(username);
+        return true;
     }
 }
@@ -0,0 +1,83 @@
+package com.safechat.secure_messaging.security;
+
+import com.safechat.secure_messaging.model.User;
+import com.safechat.secure_messaging.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+import java.util.Set;
+
+@Component
+public class JwtHandshakeInterceptor implements HandshakeInterceptor {
+    private static final Logger logger = LoggerFactory.getLogger(JwtHandshakeInterceptor.class);
+
+    // Session attribute keys shared with the WebSocket handler
+    public static final String ATTR_USER_ID = "userId";
+    public static final String ATTR_USERNAME = "username";
+    public static final String ATTR_ROLES = "roles";
+
+    private final JwtUtils jwtUtils;
+    private final UserDetailsServiceImpl userDetailsService;
+    private final UserRepository userRepository;
+
+    public JwtHandshakeInterceptor(JwtUtils jwtUtils, UserDetailsServiceImpl userDetailsService,
+                                   UserRepository userRepository) {
+        this.jwtUtils = jwtUtils;
+        this.userDetailsService = userDetailsService;
+        this.userRepository = userRepository;
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        // Browsers cannot set headers on a WebSocket upgrade, so the token comes in the query string
+        String token = UriComponentsBuilder.fromUri(request.getURI()).build()
+                .getQueryParams().getFirst("token");
+        if (token == null) {
+            String authorizationHeader = request.getHeaders().getFirst("Authorization");
+            if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
+                token = authorizationHeader.substring(7);
+            }
+        }
+
+        if (token == null || token.isEmpty()) {
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+
+        try {
+            String username = jwtUtils.extractUsername(token);
+            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+            if (!Boolean.TRUE.equals(jwtUtils.validateToken(token, userDetails)) || !userDetails.isEnabled()) {
+                response.setStatusCode(HttpStatus.UNAUTHORIZED);
+                return false;
+            }
+
+            User user = userRepository.findByUsername(username)
+                    .orElseThrow(() -> new RuntimeException("User not found"));
+
+            attributes.put(ATTR_USER_ID, user.getId().toString());
+            attributes.put(ATTR_USERNAME, user.getUsername());
+            attributes.put(ATTR_ROLES, Set.copyOf(user.getRoles()));
+            return true;
+        } catch (Exception e) {
+            logger.warn("Rejected WebSocket handshake: {}", e.getMessage());
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+}
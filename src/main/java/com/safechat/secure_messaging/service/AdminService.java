@@ -28,6 +28,9 @@ public class AdminService {
 
     @Autowired
     private MessageRepository messageRepository;
+
+    @Autowired
+    private AttachmentService attachmentService;
     
     @Autowired
     private PasswordEncoder passwordEncoder;
@@ -72,7 +75,7 @@ public class AdminService {
                     invitationUrl + "\n\n" +
                     "This invitation will expire in 7 days.";
                     
-        emailService.sendEmail(email, subject, body);
+        emailService.sendEmailAsync(email, subject, body);
     }
     
     // Validate invitation token and complete admin registration
@@ -133,7 +136,8 @@ public class AdminService {
         User user = userRepository.findById(userId)
             .orElseThrow(() -> new RuntimeException("User not found"));
 
-        // Delete all messages where the user is involved
+        // Delete all messages where the user is involved, attachments first
+        attachmentService.deleteForUser(userId);
         messageRepository.deleteByReceiverIdOrSenderIdOrRevokedBy(userId, userId, user);
 
         // Delete the user
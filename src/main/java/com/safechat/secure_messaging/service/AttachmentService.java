@@ -0,0 +1,264 @@
+package com.safechat.secure_messaging.service;
+
+import com.safechat.secure_messaging.model.Attachment;
+import com.safechat.secure_messaging.model.UuidV7Generator;
+import com.safechat.secure_messaging.repository.AttachmentRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+// Message attachments, encrypted as they stream in and decrypted as they stream out, one chunk at a
+// time: neither direction holds more than two chunks of a file in memory. Each attachment has its own
+// data key from EncryptionService, destroyed together with the file when the message goes away.
+@Service
+public class AttachmentService {
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentService.class);
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    // IN-list size for bulk cleanups
+    private static final int DELETE_BATCH = 500;
+
+    private final AttachmentRepository attachmentRepository;
+    private final AttachmentStore attachmentStore;
+    private final EncryptionService encryptionService;
+    private final int chunkSize;
+    private final long maxBytes;
+    private final Counter uploadedBytes;
+    private final Counter downloadedBytes;
+
+    public AttachmentService(AttachmentRepository attachmentRepository,
+                             AttachmentStore attachmentStore,
+                             EncryptionService encryptionService,
+                             MeterRegistry meterRegistry,
+                             @Value("${app.attachments.chunk-size:65536}") int chunkSize,
+                             @Value("${app.attachments.max-bytes:104857600}") long maxBytes) {
+        this.attachmentRepository = attachmentRepository;
+        this.attachmentStore = attachmentStore;
+        this.encryptionService = encryptionService;
+        this.chunkSize = chunkSize;
+        this.maxBytes = maxBytes;
+        this.uploadedBytes = Counter.builder("safechat.attachments.bytes")
+                .description("Attachment plaintext bytes streamed")
+                .baseUnit("bytes")
+                .tag("direction", "upload")
+                .register(meterRegistry);
+        this.downloadedBytes = Counter.builder("safechat.attachments.bytes")
+                .description("Attachment plaintext bytes streamed")
+                .baseUnit("bytes")
+                .tag("direction", "download")
+                .register(meterRegistry);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    // Encrypts the stream into the store and records the attachment. Nothing is kept if it fails.
+    public Attachment upload(UUID messageId, UUID uploaderId, String fileName, String contentType, InputStream in)
+            throws IOException {
+        UUID id = UuidV7Generator.generate();
+        byte[] noncePrefix = new byte[ChunkedAead.NONCE_PREFIX_BYTES];
+        RANDOM.nextBytes(noncePrefix);
+        String keyId = encryptionService.generateKey();
+
+        Path temp = attachmentStore.newTempFile();
+        long size;
+        try {
+            size = encryptTo(temp, in, encryptionService.chunkedAead(keyId, idBytes(id)), noncePrefix);
+            attachmentStore.commit(temp, id);
+        } catch (IOException | RuntimeException e) {
+            attachmentStore.deleteTemp(temp);
+            encryptionService.deleteKey(keyId);
+            throw e;
+        }
+
+        Attachment attachment = new Attachment();
+        attachment.setId(id);
+        attachment.setMessageId(messageId);
+        attachment.setUploaderId(uploaderId);
+        attachment.setFileName(fileName);
+        attachment.setContentType(contentType);
+        attachment.setSize(size);
+        attachment.setChunkSize(chunkSize);
+        attachment.setKeyId(keyId);
+        attachment.setNoncePrefix(noncePrefix);
+        attachment.setCreatedAt(LocalDateTime.now());
+        try {
+            attachment = attachmentRepository.save(attachment);
+        } catch (RuntimeException e) {
+            attachmentStore.delete(id);
+            encryptionService.deleteKey(keyId);
+            throw e;
+        }
+        uploadedBytes.increment(size);
+        return attachment;
+    }
+
+    // Reads a chunk ahead so the last chunk can be sealed with the final flag
+    private long encryptTo(Path target, InputStream in, ChunkedAead aead, byte[] noncePrefix) throws IOException {
+        byte[] current = new byte[chunkSize];
+        byte[] next = new byte[chunkSize];
+        byte[] sealed = new byte[chunkSize + ChunkedAead.TAG_BYTES];
+        long total = 0;
+        try (OutputStream out = Files.newOutputStream(target)) {
+            int length = in.readNBytes(current, 0, chunkSize);
+            for (long index = 0; ; index++) {
+                total += length;
+                if (total > maxBytes) {
+                    throw new TooLargeException(maxBytes);
+                }
+                int nextLength = length == chunkSize ? in.readNBytes(next, 0, chunkSize) : 0;
+                boolean last = nextLength == 0;
+                out.write(sealed, 0, aead.seal(noncePrefix, index, last, current, length, sealed));
+                if (last) {
+                    return total;
+                }
+                byte[] swap = current;
+                current = next;
+                next = swap;
+                length = nextLength;
+            }
+        }
+    }
+
+    // Decrypts plaintext bytes [start, end] (inclusive) to out, touching only the chunks that cover them.
+    // Chunks are read with positional reads straight from the file.
+    public void writeRange(Attachment attachment, long start, long end, OutputStream out) throws IOException {
+        if (attachment.getSize() == 0) {
+            return;
+        }
+        int plainChunk = attachment.getChunkSize();
+        int sealedChunk = plainChunk + ChunkedAead.TAG_BYTES;
+        long finalIndex = (attachment.getSize() - 1) / plainChunk;
+        long firstIndex = start / plainChunk;
+        long lastIndex = end / plainChunk;
+
+        ChunkedAead aead = encryptionService.chunkedAead(attachment.getKeyId(), idBytes(attachment.getId()));
+        byte[] sealed = new byte[sealedChunk];
+        byte[] plain = new byte[sealedChunk];
+        try (FileChannel channel = attachmentStore.openForRead(attachment.getId())) {
+            for (long index = firstIndex; index <= lastIndex; index++) {
+                long chunkStart = index * plainChunk;
+                int sealedLength = index == finalIndex
+                        ? (int) (attachment.getSize() - chunkStart) + ChunkedAead.TAG_BYTES
+                        : sealedChunk;
+                readFully(channel, ByteBuffer.wrap(sealed, 0, sealedLength), index * sealedChunk);
+                int plainLength = aead.open(attachment.getNoncePrefix(), index, index == finalIndex,
+                        sealed, sealedLength, plain);
+
+                int from = index == firstIndex ? (int) (start - chunkStart) : 0;
+                int to = index == lastIndex ? (int) (end - chunkStart) + 1 : plainLength;
+                out.write(plain, from, to - from);
+                downloadedBytes.increment(to - from);
+            }
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Attachment file is shorter than its recorded size");
+            }
+            position += read;
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public List<Attachment> getForMessage(UUID messageId) {
+        return attachmentRepository.findByMessageIdOrderByCreatedAtAsc(messageId);
+    }
+
+    // Claims a read-once attachment for its single download, before anything is streamed.
+    // False if another download got there first.
+    @Transactional
+    public boolean claim(Attachment attachment) {
+        return attachmentRepository.claim(attachment.getId()) == 1;
+    }
+
+    // A read-once attachment after its single download
+    @Transactional
+    public void consume(Attachment attachment) {
+        delete(List.of(attachment));
+    }
+
+    // Called wherever messages are deleted, purged or revoked
+    @Transactional
+    public void deleteForMessages(Collection<UUID> messageIds) {
+        List<UUID> ids = new ArrayList<>(messageIds);
+        for (int from = 0; from < ids.size(); from += DELETE_BATCH) {
+            delete(attachmentRepository.findByMessageIdIn(ids.subList(from, Math.min(from + DELETE_BATCH, ids.size()))));
+        }
+    }
+
+    // Must run before the user's messages are deleted
+    @Transactional
+    public void deleteForUser(UUID userId) {
+        delete(attachmentRepository.findByParticipant(userId));
+    }
+
+    private void delete(List<Attachment> attachments) {
+        if (attachments.isEmpty()) {
+            return;
+        }
+        for (Attachment attachment : attachments) {
+            encryptionService.deleteKey(attachment.getKeyId());
+        }
+        attachmentRepository.deleteAll(attachments);
+        // Files go once the rows are gone for good; a rollback leaves both in place
+        afterCommit(() -> {
+            for (Attachment attachment : attachments) {
+                if (!attachmentStore.delete(attachment.getId())) {
+                    logger.warn("Attachment file {} was already missing", attachment.getId());
+                }
+            }
+        });
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static byte[] idBytes(UUID id) {
+        return ByteBuffer.allocate(16)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .array();
+    }
+
+    public static class TooLargeException extends RuntimeException {
+        public TooLargeException(long maxBytes) {
+            super("Attachment exceeds the " + maxBytes + " byte limit");
+        }
+    }
+}
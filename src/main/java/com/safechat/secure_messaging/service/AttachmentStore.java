@@ -0,0 +1,69 @@
+package com.safechat.secure_messaging.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+// Local filesystem store for attachment ciphertext, one file per attachment under a two-level
+// directory fan-out. Uploads are written to a temp file inside the store and moved into place
+// atomically, so readers never see a partial file.
+@Component
+public class AttachmentStore {
+
+    private final Path root;
+
+    public AttachmentStore(@Value("${app.attachments.dir:./data/attachments}") String dir) {
+        this.root = Path.of(dir).toAbsolutePath().normalize();
+        try {
+            Files.createDirectories(root.resolve("tmp"));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create attachment store at " + root, e);
+        }
+    }
+
+    public Path newTempFile() throws IOException {
+        return Files.createTempFile(root.resolve("tmp"), "upload-", ".part");
+    }
+
+    public void commit(Path tempFile, UUID id) throws IOException {
+        Path target = pathOf(id);
+        Files.createDirectories(target.getParent());
+        Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Positional reads only, so one channel per download with no shared file pointer
+    public FileChannel openForRead(UUID id) throws IOException {
+        return FileChannel.open(pathOf(id), StandardOpenOption.READ);
+    }
+
+    public boolean delete(UUID id) {
+        try {
+            return Files.deleteIfExists(pathOf(id));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public void deleteTemp(Path tempFile) {
+        try {
+            Files.deleteIfExists(tempFile);
+        } catch (IOException ignored) {
+            // Left for the operator; temp files carry no key material
+        }
+    }
+
+    private Path pathOf(UUID id) {
+        String name = id.toString();
+        // UUIDv7 ids start with a timestamp, so fan out on the last (random) characters
+        int end = name.length();
+        return root.resolve(name.substring(end - 2)).resolve(name.substring(end - 4, end - 2)).resolve(name + ".bin");
+    }
+}
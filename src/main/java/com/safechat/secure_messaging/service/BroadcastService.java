@@ -0,0 +1,137 @@
+package com.safechat.secure_messaging.service;
+
+import com.safechat.secure_messaging.dto.BroadcastRecipientStatus;
+import com.safechat.secure_messaging.model.Message;
+import com.safechat.secure_messaging.model.User;
+import com.safechat.secure_messaging.repository.UserRepository;
+import com.safechat.secure_messaging.service.MetricsTimeSeriesService.ThroughputMetric;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+// Fan-out send: the content is encrypted once under a single data key that every copy shares,
+// and the copies are inserted in chunks, each in its own transaction with JDBC batching.
+// A failing chunk only fails its own recipients.
+@Service
+public class BroadcastService {
+    private static final Logger logger = LoggerFactory.getLogger(BroadcastService.class);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final UserRepository userRepository;
+    private final EncryptionService encryptionService;
+    private final CiphertextStore ciphertextStore;
+    private final ConversationService conversationService;
+    private final MetricsTimeSeriesService metricsTimeSeriesService;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    public BroadcastService(UserRepository userRepository,
+                            EncryptionService encryptionService,
+                            CiphertextStore ciphertextStore,
+                            ConversationService conversationService,
+                            MetricsTimeSeriesService metricsTimeSeriesService,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${app.broadcast.chunk-size:500}") int chunkSize) {
+        this.userRepository = userRepository;
+        this.encryptionService = encryptionService;
+        this.ciphertextStore = ciphertextStore;
+        this.conversationService = conversationService;
+        this.metricsTimeSeriesService = metricsTimeSeriesService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+    }
+
+    public List<BroadcastRecipientStatus> broadcast(UUID senderId, List<UUID> receiverIds, String content,
+                                                    boolean readOnce, Integer expirationMinutes) {
+        // Duplicates would get two copies of the same message
+        List<UUID> recipients = new ArrayList<>(new LinkedHashSet<>(receiverIds));
+
+        String keyId = encryptionService.generateKey();
+        // Large content goes to the overflow store once and every copy points at it
+        CiphertextStore.Placement placement = ciphertextStore.place(encryptionService.encryptToBytes(content, keyId));
+
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expiresAt = expirationMinutes != null && expirationMinutes > 0
+                ? now.plusMinutes(expirationMinutes) : null;
+
+        List<BroadcastRecipientStatus> results = new ArrayList<>(recipients.size());
+        int sent = 0;
+        for (int start = 0; start < recipients.size(); start += chunkSize) {
+            List<UUID> chunk = recipients.subList(start, Math.min(start + chunkSize, recipients.size()));
+            try {
+                List<BroadcastRecipientStatus> chunkResults = transactionTemplate.execute(status ->
+                        sendChunk(senderId, chunk, placement, keyId, now, expiresAt, readOnce));
+                for (BroadcastRecipientStatus result : chunkResults) {
+                    if (BroadcastRecipientStatus.SENT.equals(result.getStatus())) {
+                        sent++;
+                    }
+                }
+                results.addAll(chunkResults);
+            } catch (RuntimeException e) {
+                logger.warn("Broadcast chunk of {} recipients failed: {}", chunk.size(), e.getMessage());
+                for (UUID receiverId : chunk) {
+                    results.add(new BroadcastRecipientStatus(receiverId, BroadcastRecipientStatus.FAILED, null,
+                            "Failed to send message"));
+                }
+            }
+        }
+
+        if (sent == 0) {
+            // Nothing references the key
+            encryptionService.deleteKey(keyId);
+        }
+        metricsTimeSeriesService.record(ThroughputMetric.MESSAGES_SENT, sent);
+        return results;
+    }
+
+    private List<BroadcastRecipientStatus> sendChunk(UUID senderId, List<UUID> chunk,
+                                                     CiphertextStore.Placement placement,
+                                                     String keyId, LocalDateTime timestamp, LocalDateTime expiresAt,
+                                                     boolean readOnce) {
+        // Existence check on ids only, then proxies: no User rows (or their roles) are loaded
+        Set<UUID> existing = new HashSet<>(userRepository.findExistingIds(chunk));
+        User sender = entityManager.getReference(User.class, senderId);
+
+        List<BroadcastRecipientStatus> results = new ArrayList<>(chunk.size());
+        List<Message> messages = new ArrayList<>(existing.size());
+        for (UUID receiverId : chunk) {
+            if (!existing.contains(receiverId)) {
+                results.add(new BroadcastRecipientStatus(receiverId, BroadcastRecipientStatus.NOT_FOUND, null,
+                        "Recipient not found"));
+                continue;
+            }
+            Message message = new Message();
+            message.setSender(sender);
+            message.setReceiver(entityManager.getReference(User.class, receiverId));
+            placement.applyTo(message);
+            message.setKeyId(keyId);
+            message.setTimestamp(timestamp);
+            message.setExpiresAt(expiresAt);
+            message.setReadOnce(readOnce);
+            entityManager.persist(message);
+            messages.add(message);
+            results.add(new BroadcastRecipientStatus(receiverId, BroadcastRecipientStatus.SENT, message.getId(), null));
+        }
+
+        // Inserts go out in hibernate.jdbc.batch_size batches
+        entityManager.flush();
+        conversationService.onMessagesSent(senderId, messages);
+        entityManager.clear();
+        return results;
+    }
+}
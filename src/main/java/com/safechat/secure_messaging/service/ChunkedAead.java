@@ -0,0 +1,68 @@
+package com.safechat.secure_messaging.service;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+// Streaming AES-GCM over fixed-size chunks, each sealed on its own so a file never has to be in memory
+// at once and any chunk can be opened for a range read.
+//  - nonce = 8-byte random prefix (per file) || 4-byte chunk index, so nonces never repeat within a file
+//  - AAD = context (the attachment id) || chunk index || final flag, so chunks can't be reordered,
+//    moved between files, or dropped from the end without failing authentication
+// Instances hold a Cipher and are not thread-safe; use one per stream.
+public class ChunkedAead {
+    public static final int TAG_BYTES = 16;
+    public static final int NONCE_PREFIX_BYTES = 8;
+
+    private static final String ALGORITHM = "AES/GCM/NoPadding";
+
+    private final SecretKey key;
+    private final Cipher cipher;
+    private final byte[] context;
+
+    ChunkedAead(SecretKey key, byte[] context) {
+        this.key = key;
+        this.context = context.clone();
+        try {
+            this.cipher = Cipher.getInstance(ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM unavailable", e);
+        }
+    }
+
+    // Encrypts in[0, length) into out, returning the bytes written (length + TAG_BYTES)
+    public int seal(byte[] noncePrefix, long index, boolean last, byte[] in, int length, byte[] out) {
+        return run(Cipher.ENCRYPT_MODE, noncePrefix, index, last, in, length, out);
+    }
+
+    // Decrypts and authenticates in[0, length) into out, returning the plaintext length
+    public int open(byte[] noncePrefix, long index, boolean last, byte[] in, int length, byte[] out) {
+        return run(Cipher.DECRYPT_MODE, noncePrefix, index, last, in, length, out);
+    }
+
+    private int run(int mode, byte[] noncePrefix, long index, boolean last, byte[] in, int length, byte[] out) {
+        if (index < 0 || index > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("Chunk index out of range: " + index);
+        }
+        byte[] nonce = ByteBuffer.allocate(NONCE_PREFIX_BYTES + 4)
+                .put(noncePrefix, 0, NONCE_PREFIX_BYTES)
+                .putInt((int) index)
+                .array();
+        byte[] aad = ByteBuffer.allocate(context.length + Long.BYTES + 1)
+                .put(context)
+                .putLong(index)
+                .put((byte) (last ? 1 : 0))
+                .array();
+        try {
+            cipher.init(mode, key, new GCMParameterSpec(TAG_BYTES * 8, nonce));
+            cipher.updateAAD(aad);
+            return cipher.doFinal(in, 0, length, out, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(mode == Cipher.DECRYPT_MODE
+                    ? "Attachment chunk " + index + " failed authentication"
+                    : "Attachment chunk encryption failed", e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.safechat.secure_messaging.service;
+
+import com.safechat.secure_messaging.dto.MessageView;
+import com.safechat.secure_messaging.model.Message;
+import com.safechat.secure_messaging.model.StorageFormat;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+// Size-tiered placement of message ciphertext: inline in messages.content_bin up to
+// app.overflow.threshold-bytes, in the append-only SegmentStore above it.
+@Service
+public class CiphertextStore {
+
+    private final SegmentStore segmentStore;
+    private final int thresholdBytes;
+    private final Counter overflowBytes;
+
+    public CiphertextStore(SegmentStore segmentStore,
+                           MeterRegistry meterRegistry,
+                           @Value("${app.overflow.threshold-bytes:65536}") int thresholdBytes) {
+        this.segmentStore = segmentStore;
+        this.thresholdBytes = thresholdBytes;
+        this.overflowBytes = Counter.builder("safechat.overflow.appended")
+                .description("Ciphertext bytes written to the overflow segment store")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    // Where one ciphertext is stored. Broadcast copies share a single placement, so a large
+    // broadcast is appended to the segment store once.
+    public record Placement(EncryptionService.EncryptedBytes encrypted, SegmentStore.Pointer pointer) {
+        public void applyTo(Message message) {
+            if (pointer == null) {
+                message.setCiphertext(encrypted.content(), encrypted.iv());
+            } else {
+                message.setOverflowCiphertext(pointer.segment(), pointer.offset(), pointer.length(), encrypted.iv());
+            }
+            message.setCompressed(encrypted.compressed());
+        }
+    }
+
+    public Placement place(EncryptionService.EncryptedBytes encrypted) {
+        if (encrypted.content().length <= thresholdBytes) {
+            return new Placement(encrypted, null);
+        }
+        try {
+            SegmentStore.Pointer pointer = segmentStore.append(encrypted.content());
+            overflowBytes.increment(encrypted.content().length);
+            return new Placement(encrypted, pointer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write message to the overflow store", e);
+        }
+    }
+
+    public byte[] ciphertextOf(Message message) {
+        if (message.getStorageFormat() != StorageFormat.OVERFLOW) {
+            return message.getCiphertext();
+        }
+        return read(message.getOverflowSegment(), message.getOverflowOffset(), message.getOverflowLength());
+    }
+
+    public byte[] ciphertextOf(MessageView message) {
+        if (message.getStorageFormat() != StorageFormat.OVERFLOW) {
+            return message.getCiphertext();
+        }
+        return read(message.getOverflowSegment(), message.getOverflowOffset(), message.getOverflowLength());
+    }
+
+    private byte[] read(int segment, long offset, int length) {
+        try {
+            return segmentStore.read(new SegmentStore.Pointer(segment, offset, length));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read message from the overflow store", e);
+        }
+    }
+}
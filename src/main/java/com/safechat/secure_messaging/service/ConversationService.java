@@ -0,0 +1,211 @@
+package com.safechat.secure_messaging.service;
+
+import com.safechat.secure_messaging.config.DatabaseWorkload;
+import com.safechat.secure_messaging.config.Workload;
+import com.safechat.secure_messaging.dto.ConversationSummary;
+import com.safechat.secure_messaging.dto.MessageView;
+import com.safechat.secure_messaging.model.Conversation;
+import com.safechat.secure_messaging.model.Message;
+import com.safechat.secure_messaging.repository.ConversationRepository;
+import com.safechat.secure_messaging.repository.MessageRepository;
+import com.safechat.secure_messaging.service.MetricsTimeSeriesService.ThroughputMetric;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+// Keeps the conversations summary table in step with the messages table.
+// Send and read apply cheap deltas; deletes and purges recompute the affected pairs.
+@Service
+public class ConversationService {
+    private static final Logger logger = LoggerFactory.getLogger(ConversationService.class);
+
+    private static final String INSERT_IF_ABSENT_SQL =
+            "INSERT INTO conversations (id, owner_id, peer_id, last_message_outgoing, unread_count) " +
+            "VALUES (?, ?, ?, false, 0) ON CONFLICT DO NOTHING";
+    private static final String RECORD_OUTGOING_SQL =
+            "UPDATE conversations SET last_message_id = ?, last_message_at = ?, last_message_outgoing = true " +
+            "WHERE owner_id = ? AND peer_id = ?";
+    private static final String RECORD_INCOMING_SQL =
+            "UPDATE conversations SET last_message_id = ?, last_message_at = ?, last_message_outgoing = false, " +
+            "unread_count = unread_count + 1 WHERE owner_id = ? AND peer_id = ?";
+
+    private final ConversationRepository conversationRepository;
+    private final MessageRepository messageRepository;
+    private final UnreadCountService unreadCountService;
+    private final JdbcTemplate jdbcTemplate;
+    private final MetricsTimeSeriesService metricsTimeSeriesService;
+
+    public ConversationService(ConversationRepository conversationRepository, MessageRepository messageRepository,
+                               UnreadCountService unreadCountService, JdbcTemplate jdbcTemplate,
+                               MetricsTimeSeriesService metricsTimeSeriesService) {
+        this.conversationRepository = conversationRepository;
+        this.messageRepository = messageRepository;
+        this.unreadCountService = unreadCountService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.metricsTimeSeriesService = metricsTimeSeriesService;
+    }
+
+    @Transactional(readOnly = true)
+    public List<ConversationSummary> getConversations(UUID ownerId) {
+        return conversationRepository.findSummariesByOwnerId(ownerId);
+    }
+
+    @Transactional
+    public void onMessageSent(Message message) {
+        UUID senderId = message.getSender().getId();
+        UUID receiverId = message.getReceiver().getId();
+        recordMessage(senderId, receiverId, message, true, 0);
+        recordMessage(receiverId, senderId, message, false, 1);
+        unreadCountService.adjust(receiverId, 1);
+    }
+
+    // Fan-out variant of onMessageSent for one sender and many receivers: three JDBC batches
+    // (insert missing rows, sender side, receiver side) instead of two upserts per message
+    @Transactional
+    public void onMessagesSent(UUID senderId, List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        List<Object[]> inserts = new ArrayList<>(messages.size() * 2);
+        List<Object[]> outgoing = new ArrayList<>(messages.size());
+        List<Object[]> incoming = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            UUID receiverId = message.getReceiver().getId();
+            inserts.add(new Object[]{UUID.randomUUID(), senderId, receiverId});
+            inserts.add(new Object[]{UUID.randomUUID(), receiverId, senderId});
+            outgoing.add(new Object[]{message.getId(), message.getTimestamp(), senderId, receiverId});
+            incoming.add(new Object[]{message.getId(), message.getTimestamp(), receiverId, senderId});
+        }
+        jdbcTemplate.batchUpdate(INSERT_IF_ABSENT_SQL, inserts);
+        jdbcTemplate.batchUpdate(RECORD_OUTGOING_SQL, outgoing);
+        jdbcTemplate.batchUpdate(RECORD_INCOMING_SQL, incoming);
+
+        for (Message message : messages) {
+            unreadCountService.adjust(message.getReceiver().getId(), 1);
+        }
+    }
+
+    // Only for the first read of a message; re-reads must not decrement again
+    @Transactional
+    public void onMessageRead(Message message) {
+        UUID receiverId = message.getReceiver().getId();
+        if (conversationRepository.decrementUnread(receiverId, message.getSender().getId(),
+                message.getTimestamp(), message.isReadOnce()) > 0) {
+            unreadCountService.adjust(receiverId, -1);
+        }
+    }
+
+    // Bulk read: moves the owner's watermark forward to upTo in a single row update.
+    // Returns the unread count left over (newer messages and unopened read-once messages).
+    @Transactional
+    public Optional<Conversation> markReadUpTo(UUID ownerId, UUID peerId, LocalDateTime upTo) {
+        Optional<Conversation> locked = conversationRepository.findByOwnerIdAndPeerId(ownerId, peerId);
+        locked.ifPresent(conversation -> {
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime watermark = clampWatermark(upTo, now, conversation.getLastMessageAt());
+            long remaining = messageRepository.countUnreadFromSenderAfter(ownerId, peerId, watermark, now);
+            if (conversation.getReadUpTo() == null || conversation.getReadUpTo().isBefore(watermark)) {
+                conversation.setReadUpTo(watermark);
+            }
+            unreadCountService.adjust(ownerId, remaining - conversation.getUnreadCount());
+            // Messages the watermark newly covered count as reads, as a single-message GET does
+            long read = conversation.getUnreadCount() - remaining;
+            if (read > 0) {
+                metricsTimeSeriesService.record(ThroughputMetric.MESSAGE_READS, read);
+            }
+            conversation.setUnreadCount(remaining);
+        });
+        return locked;
+    }
+
+    // A watermark past the newest message (or in the future) would mark messages the peer hasn't sent
+    // yet as read, and the unread counter would never see them
+    static LocalDateTime clampWatermark(LocalDateTime upTo, LocalDateTime now, LocalDateTime lastMessageAt) {
+        LocalDateTime latest = lastMessageAt != null && lastMessageAt.isBefore(now) ? lastMessageAt : now;
+        return upTo.isAfter(latest) ? latest : upTo;
+    }
+
+    // Rebuild both sides of a pair from the messages table, e.g. after messages were deleted
+    @Transactional
+    public void refreshPair(UUID userId1, UUID userId2) {
+        unreadCountService.invalidate(userId1);
+        unreadCountService.invalidate(userId2);
+        LocalDateTime now = LocalDateTime.now();
+        List<MessageView> latest = messageRepository.findLatestMessageViewsBetweenUsers(userId1, userId2, now, Limit.of(1));
+        if (latest.isEmpty()) {
+            conversationRepository.deleteByOwnerIdAndPeerId(userId1, userId2);
+            conversationRepository.deleteByOwnerIdAndPeerId(userId2, userId1);
+            return;
+        }
+        MessageView last = latest.get(0);
+        overwrite(userId1, userId2, last, messageRepository.countUnreadFromSender(userId1, userId2, now));
+        overwrite(userId2, userId1, last, messageRepository.countUnreadFromSender(userId2, userId1, now));
+    }
+
+    @Transactional
+    public void onUserDeleted(UUID userId) {
+        for (UUID peerOwnerId : conversationRepository.findOwnerIdsByPeerId(userId)) {
+            unreadCountService.invalidate(peerOwnerId);
+        }
+        unreadCountService.invalidate(userId);
+        conversationRepository.deleteByUser(userId);
+    }
+
+    // One-off backfill for databases that predate the conversations table
+    @EventListener(ApplicationReadyEvent.class)
+    @DatabaseWorkload(Workload.JOBS)
+    @Transactional
+    public void backfillIfEmpty() {
+        if (conversationRepository.count() > 0) {
+            return;
+        }
+        // Ordered (lower, higher) so both directions collapse to one entry; a self-conversation is (id, id)
+        Set<List<UUID>> pairs = new HashSet<>();
+        for (Object[] pair : messageRepository.findSenderReceiverPairs()) {
+            UUID first = (UUID) pair[0];
+            UUID second = (UUID) pair[1];
+            pairs.add(first.compareTo(second) <= 0 ? List.of(first, second) : List.of(second, first));
+        }
+        for (List<UUID> pair : pairs) {
+            refreshPair(pair.get(0), pair.get(1));
+        }
+        if (!pairs.isEmpty()) {
+            logger.info("Backfilled conversation summaries for {} user pairs", pairs.size());
+        }
+    }
+
+    // Update first; only a brand-new pair pays for the insert
+    private void recordMessage(UUID ownerId, UUID peerId, Message message, boolean outgoing, long unreadDelta) {
+        if (conversationRepository.recordMessage(ownerId, peerId, message.getId(), message.getTimestamp(),
+                outgoing, unreadDelta) == 0) {
+            conversationRepository.insertIfAbsent(UUID.randomUUID(), ownerId, peerId);
+            conversationRepository.recordMessage(ownerId, peerId, message.getId(), message.getTimestamp(),
+                    outgoing, unreadDelta);
+        }
+    }
+
+    private void overwrite(UUID ownerId, UUID peerId, MessageView last, long unreadCount) {
+        boolean outgoing = isSentBy(last, ownerId);
+        if (conversationRepository.overwrite(ownerId, peerId, last.getId(), last.getTimestamp(), outgoing, unreadCount) == 0) {
+            conversationRepository.insertIfAbsent(UUID.randomUUID(), ownerId, peerId);
+            conversationRepository.overwrite(ownerId, peerId, last.getId(), last.getTimestamp(), outgoing, unreadCount);
+        }
+    }
+
+    private boolean isSentBy(MessageView message, UUID userId) {
+        return userId.equals(message.getSenderId());
+    }
+}
@@ -6,8 +6,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.mail.MailException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CompletableFuture;
+
 @Service
 public class EmailService {
     private static final Logger logger = LoggerFactory.getLogger(EmailService.class);
@@ -46,4 +49,10 @@ public class EmailService {
             return false;
         }
     }
+
+    // sendEmail on the task executor, so a slow SMTP server doesn't hold up the request
+    @Async
+    public CompletableFuture<Boolean> sendEmailAsync(String to, String subject, String body) {
+        return CompletableFuture.completedFuture(sendEmail(to, subject, body));
+    }
 }
\ No newline at end of file
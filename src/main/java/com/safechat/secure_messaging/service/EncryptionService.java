@@ -1,7 +1,12 @@
 package com.safechat.secure_messaging.service;
 
 import com.safechat.secure_messaging.model.KeyEntity;
+import com.safechat.secure_messaging.profiling.CryptoEvent;
 import com.safechat.secure_messaging.repository.KeyRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -9,45 +14,87 @@ import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
 import java.security.SecureRandom;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class EncryptionService {
     private final KeyRepository keyRepository;
     
-    // Cache to avoid frequent DB lookups
-    private final Map<String, SecretKey> keyCache = new HashMap<>();
+    // Unwrapped data keys, so a hit skips both the DB read and the unwrap. Bounded at
+    // app.crypto.key-cache-size, evicting the least recently used key.
+    private final Map<String, SecretKey> keyCache;
+
+    private static final int WARM_UP_BATCH_SIZE = 500;
     
     private static final String ALGORITHM = "AES/GCM/NoPadding";
     private static final int GCM_TAG_LENGTH = 128;
     
-    // Load the master encryption key from environment variables using Spring's @Value
-    private final SecretKey masterKey;
+    // Raw ciphertext and IV, stored as-is in the binary (v2) message format.
+    // compressed: the plaintext was deflated before encryption and must be inflated after decryption.
+    public record EncryptedBytes(byte[] content, byte[] iv, String keyId, boolean compressed) {
+    }
+    
+    // Versioned master keys; the current one encrypts, any configured version decrypts
+    private final MasterKeyRing masterKeys;
+
+    private final Timer encryptTimer;
+    private final Timer decryptTimer;
+    private final Timer keyCacheHitTimer;
+    private final Timer keyCacheMissTimer;
+    private final Counter compressionSavedBytes;
+
+    private final PayloadCompressor compressor;
     
     // Constructor with dependency injection
     public EncryptionService(
         KeyRepository keyRepository, 
-        @Value("${ENCRYPTION_KEY}") String masterKeyStr
+        MasterKeyRing masterKeys,
+        MeterRegistry meterRegistry,
+        @Value("${app.compression.threshold-bytes:1024}") int compressionThresholdBytes,
+        @Value("${app.compression.level:6}") int compressionLevel,
+        @Value("${app.compression.max-inflated-bytes:16777216}") int maxInflatedBytes,
+        @Value("${app.crypto.key-cache-size:10000}") int keyCacheSize
     ) {
         this.keyRepository = keyRepository;
-        
-        // Validate master key
-        if (masterKeyStr == null || masterKeyStr.trim().isEmpty()) {
-            throw new RuntimeException("ENCRYPTION_KEY must be provided in environment variables");
-        }
-        
-        try {
-            // Initialize the master key from environment variable
-            byte[] keyBytes = Base64.getDecoder().decode(masterKeyStr);
-            this.masterKey = new SecretKeySpec(keyBytes, "AES");
-        } catch (IllegalArgumentException e) {
-            throw new RuntimeException("Invalid ENCRYPTION_KEY format. Must be Base64 encoded", e);
-        }
+        this.masterKeys = masterKeys;
+        this.keyCache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SecretKey> eldest) {
+                return size() > keyCacheSize;
+            }
+        });
+        Gauge.builder("safechat.crypto.key.cache.size", keyCache, Map::size)
+                .description("Unwrapped data keys held in memory")
+                .register(meterRegistry);
+        // A negative threshold turns compression off
+        this.compressor = new PayloadCompressor(compressionThresholdBytes, compressionLevel, maxInflatedBytes);
+        this.compressionSavedBytes = Counter.builder("safechat.crypto.compression.saved")
+                .description("Plaintext bytes saved by compressing before encryption")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.encryptTimer = Timer.builder("safechat.crypto.encrypt")
+                .description("AES-GCM encryption including key lookup")
+                .register(meterRegistry);
+        this.decryptTimer = Timer.builder("safechat.crypto.decrypt")
+                .description("AES-GCM decryption including key lookup")
+                .register(meterRegistry);
+        this.keyCacheHitTimer = Timer.builder("safechat.crypto.key.lookup")
+                .description("Data key lookup")
+                .tag("cache", "hit")
+                .register(meterRegistry);
+        this.keyCacheMissTimer = Timer.builder("safechat.crypto.key.lookup")
+                .description("Data key lookup")
+                .tag("cache", "miss")
+                .register(meterRegistry);
     }
     
     // Generate a new AES-256 key
@@ -60,9 +107,8 @@ public class EncryptionService {
             // Store key with a unique ID
             String keyId = UUID.randomUUID().toString();
             
-            // Store encoded key in database
-            String encodedKey = Base64.getEncoder().encodeToString(key.getEncoded());
-            keyRepository.save(new KeyEntity(keyId, encodedKey));
+            // Store the key wrapped under the current master key
+            keyRepository.save(new KeyEntity(keyId, masterKeys.wrap(key), masterKeys.currentVersion()));
             
             // Also cache the key in memory
             keyCache.put(keyId, key);
@@ -74,20 +120,31 @@ public class EncryptionService {
     }
     
     // Get a key by ID, looking first in cache then in database
-    private SecretKey getKeyById(String keyId) {
+    private SecretKey getKeyById(String keyId, CryptoEvent event) {
+        long start = System.nanoTime();
+
         // Check cache first
         SecretKey cachedKey = keyCache.get(keyId);
         if (cachedKey != null) {
+            keyCacheHitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            event.keyCacheHit = true;
             return cachedKey;
         }
-        
+
+        try {
+            return loadKey(keyId);
+        } finally {
+            keyCacheMissTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private SecretKey loadKey(String keyId) {
         // If not in cache, look in database
         KeyEntity keyEntity = keyRepository.findByKeyIdAndActiveTrue(keyId)
                 .orElseThrow(() -> new RuntimeException("Key not found with ID: " + keyId));
         
-        // Convert stored key back to SecretKey
-        byte[] keyBytes = Base64.getDecoder().decode(keyEntity.getKeyMaterial());
-        SecretKey key = new SecretKeySpec(keyBytes, "AES");
+        // Unwrap the stored key (legacy rows hold it raw)
+        SecretKey key = masterKeys.dataKeyOf(keyEntity);
         
         // Add to cache for future use
         keyCache.put(keyId, key);
@@ -95,22 +152,62 @@ public class EncryptionService {
         return key;
     }
     
-    // Encrypt a message using a key from the keystore
+    // Pre-loads data keys into the cache in a few batched reads (see KeyCacheWarmer). A key that
+    // fails to unwrap is skipped. Returns how many keys were added.
+    public int warmUp(Collection<String> keyIds) {
+        List<String> missing = keyIds.stream()
+                .filter(keyId -> keyId != null && !MasterKeyRing.isMasterKeyId(keyId) && !keyCache.containsKey(keyId))
+                .distinct()
+                .toList();
+        int loaded = 0;
+        for (int from = 0; from < missing.size(); from += WARM_UP_BATCH_SIZE) {
+            List<String> batch = missing.subList(from, Math.min(from + WARM_UP_BATCH_SIZE, missing.size()));
+            for (KeyEntity keyEntity : keyRepository.findAllById(batch)) {
+                if (!keyEntity.isActive()) {
+                    continue;
+                }
+                try {
+                    keyCache.put(keyEntity.getKeyId(), masterKeys.dataKeyOf(keyEntity));
+                    loaded++;
+                } catch (RuntimeException e) {
+                    // Left uncached: decrypting with this key fails on its own rows, not the whole batch
+                }
+            }
+        }
+        return loaded;
+    }
+    
+    // Encrypt a message using a key from the keystore (Base64 form). Compressed like the binary
+    // form; "compressed" tells the reader whether to inflate after decrypting.
     public Map<String, String> encrypt(String plaintext, String keyId) {
+        EncryptedBytes encrypted = encryptToBytes(plaintext, keyId);
+        Map<String, String> result = new HashMap<>();
+        result.put("encryptedContent", Base64.getEncoder().encodeToString(encrypted.content()));
+        result.put("iv", Base64.getEncoder().encodeToString(encrypted.iv()));
+        result.put("keyId", encrypted.keyId());
+        result.put("compressed", String.valueOf(encrypted.compressed()));
+        return result;
+    }
+
+    // Encrypt a message using a key from the keystore
+    public EncryptedBytes encryptToBytes(String plaintext, String keyId) {
+        Timer.Sample sample = Timer.start();
+        CryptoEvent event = new CryptoEvent();
+        event.begin();
         try {
             // Get key from store or use master key if keyId is null
             SecretKey key;
             if (keyId != null) {
                 try {
-                    key = getKeyById(keyId);
+                    key = getKeyById(keyId, event);
                 } catch (RuntimeException e) {
                     // If key not found, use master key
-                    key = masterKey;
-                    keyId = "master";
+                    key = masterKeys.current();
+                    keyId = masterKeys.currentKeyId();
                 }
             } else {
-                key = masterKey;
-                keyId = "master";
+                key = masterKeys.current();
+                keyId = masterKeys.currentKeyId();
             }
             
             // Initialize cipher with GCM mode
@@ -121,17 +218,24 @@ public class EncryptionService {
             cipher.init(Cipher.ENCRYPT_MODE, key, parameterSpec);
             
             // Encrypt
-            byte[] encryptedData = cipher.doFinal(plaintext.getBytes());
+            byte[] plaintextBytes = plaintext.getBytes();
+            event.size = plaintextBytes.length;
+
+            // Long payloads are deflated first; the ciphertext length then reflects the compressed size
+            byte[] compressed = compressor.compress(plaintextBytes);
+            if (compressed != null) {
+                compressionSavedBytes.increment(plaintextBytes.length - compressed.length);
+                plaintextBytes = compressed;
+            }
+            byte[] encryptedData = cipher.doFinal(plaintextBytes);
             
             // Return encrypted data and IV
-            Map<String, String> result = new HashMap<>();
-            result.put("encryptedContent", Base64.getEncoder().encodeToString(encryptedData));
-            result.put("iv", Base64.getEncoder().encodeToString(iv));
-            result.put("keyId", keyId);
-            
-            return result;
+            return new EncryptedBytes(encryptedData, iv, keyId, compressed != null);
         } catch (Exception e) {
             throw new RuntimeException("Encryption error", e);
+        } finally {
+            sample.stop(encryptTimer);
+            commitEvent(event, "encrypt");
         }
     }
     
@@ -140,24 +244,40 @@ public class EncryptionService {
         return encrypt(plaintext, null);
     }
     
-    // Decrypt a message
+    // Decrypt a message stored in the Base64 form
     public String decrypt(String encryptedContent, String iv, String keyId) {
+        return decrypt(encryptedContent, iv, keyId, false);
+    }
+
+    public String decrypt(String encryptedContent, String iv, String keyId, boolean compressed) {
+        return decrypt(Base64.getDecoder().decode(encryptedContent), Base64.getDecoder().decode(iv), keyId,
+                compressed);
+    }
+
+    // Decrypt a message
+    public String decrypt(byte[] encryptedData, byte[] ivBytes, String keyId) {
+        return decrypt(encryptedData, ivBytes, keyId, false);
+    }
+
+    // Decrypt a message, inflating it if it was compressed before encryption
+    public String decrypt(byte[] encryptedData, byte[] ivBytes, String keyId, boolean compressed) {
+        Timer.Sample sample = Timer.start();
+        CryptoEvent event = new CryptoEvent();
+        event.begin();
         try {
             // Get key from store or use master key
             SecretKey key;
-            if ("master".equals(keyId)) {
-                key = masterKey;
+            if (MasterKeyRing.isMasterKeyId(keyId)) {
+                key = masterKeys.resolve(keyId);
             } else {
                 try {
-                    key = getKeyById(keyId);
+                    key = getKeyById(keyId, event);
                 } catch (RuntimeException e) {
                     throw new RuntimeException("Key not found with ID: " + keyId);
                 }
             }
             
-            // Decode from Base64
-            byte[] encryptedData = Base64.getDecoder().decode(encryptedContent);
-            byte[] ivBytes = Base64.getDecoder().decode(iv);
+            event.size = encryptedData.length;
             
             // Initialize cipher for decryption
             Cipher cipher = Cipher.getInstance(ALGORITHM);
@@ -166,15 +286,40 @@ public class EncryptionService {
             
             // Decrypt
             byte[] decryptedData = cipher.doFinal(encryptedData);
+            if (compressed) {
+                decryptedData = compressor.decompress(decryptedData);
+            }
             return new String(decryptedData);
         } catch (Exception e) {
             throw new RuntimeException("Decryption error", e);
+        } finally {
+            sample.stop(decryptTimer);
+            commitEvent(event, "decrypt");
+        }
+    }
+
+    // Chunked AES-GCM for attachments under a stored data key; context is bound into every chunk
+    public ChunkedAead chunkedAead(String keyId, byte[] context) {
+        CryptoEvent event = new CryptoEvent();
+        event.begin();
+        try {
+            return new ChunkedAead(getKeyById(keyId, event), context);
+        } finally {
+            commitEvent(event, "attachment-key");
+        }
+    }
+
+    private static void commitEvent(CryptoEvent event, String operation) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.commit();
         }
     }
     
     // Delete a key (for read-once messages)
     public void deleteKey(String keyId) {
-        if (!"master".equals(keyId)) {
+        if (!MasterKeyRing.isMasterKeyId(keyId)) {
             // Remove from cache
             keyCache.remove(keyId);
             
@@ -0,0 +1,138 @@
+package com.safechat.secure_messaging.service;
+
+import com.safechat.secure_messaging.profiling.CryptoEvent;
+import com.safechat.secure_messaging.profiling.ExpiryBatchEvent;
+import com.safechat.secure_messaging.profiling.JwtVerificationEvent;
+import com.safechat.secure_messaging.profiling.RepositoryCallEvent;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Starts and stops an on-demand JFR recording; at most one runs at a time
+@Service
+public class FlightRecorderService {
+    private static final Logger logger = LoggerFactory.getLogger(FlightRecorderService.class);
+
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Path dumpDirectory;
+    private final Duration maxAge;
+    private final long maxSizeBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private Recording recording;
+
+    public FlightRecorderService(
+            @Value("${app.jfr.dump-dir:${java.io.tmpdir}/safechat-jfr}") String dumpDirectory,
+            @Value("${app.jfr.max-age-minutes:30}") long maxAgeMinutes,
+            @Value("${app.jfr.max-size-mb:250}") long maxSizeMb) {
+        this.dumpDirectory = Paths.get(dumpDirectory);
+        this.maxAge = Duration.ofMinutes(maxAgeMinutes);
+        this.maxSizeBytes = maxSizeMb * 1024 * 1024;
+    }
+
+    // settings is a JFR configuration name: "default" (~1% overhead) or "profile" (more detail, more overhead)
+    public Map<String, Object> start(String settings) throws IOException, ParseException {
+        lock.lock();
+        try {
+            if (recording != null) {
+                throw new IllegalStateException("A recording is already running");
+            }
+
+            Files.createDirectories(dumpDirectory);
+            Path destination = dumpDirectory.resolve("safechat-" + LocalDateTime.now().format(FILE_TIMESTAMP) + ".jfr");
+
+            Recording newRecording = new Recording(Configuration.getConfiguration(settings));
+            newRecording.setName("safechat-admin");
+            newRecording.setToDisk(true);
+            newRecording.setMaxAge(maxAge);
+            newRecording.setMaxSize(maxSizeBytes);
+            newRecording.setDestination(destination);
+            newRecording.enable(CryptoEvent.class);
+            newRecording.enable(JwtVerificationEvent.class);
+            newRecording.enable(RepositoryCallEvent.class);
+            newRecording.enable(ExpiryBatchEvent.class);
+            newRecording.start();
+
+            recording = newRecording;
+            logger.info("Started JFR recording with '{}' settings, dumping to {}", settings, destination);
+            return describe(newRecording);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Stops the running recording and writes it to its destination file
+    public Map<String, Object> stop() throws IOException {
+        lock.lock();
+        try {
+            if (recording == null) {
+                throw new IllegalStateException("No recording is running");
+            }
+
+            Recording stopped = recording;
+            recording = null;
+            try {
+                stopped.stop();
+                Map<String, Object> result = describe(stopped);
+                Path destination = stopped.getDestination();
+                result.put("fileSizeBytes", Files.size(destination));
+                logger.info("Stopped JFR recording, written to {}", destination);
+                return result;
+            } finally {
+                stopped.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        lock.lock();
+        try {
+            if (recording == null) {
+                return Map.of("state", RecordingState.CLOSED.name());
+            }
+            return describe(recording);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        try {
+            if (recording != null) {
+                stop();
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to write JFR recording on shutdown: {}", e.getMessage());
+        }
+    }
+
+    private Map<String, Object> describe(Recording r) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("state", r.getState().name());
+        result.put("startedAt", r.getStartTime() != null ? r.getStartTime().toString() : null);
+        result.put("file", r.getDestination() != null ? r.getDestination().toString() : null);
+        result.put("maxAgeMinutes", maxAge.toMinutes());
+        return result;
+    }
+}
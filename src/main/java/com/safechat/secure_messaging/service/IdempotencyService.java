@@ -0,0 +1,76 @@
+package com.safechat.secure_messaging.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+// Remembers the response of recent idempotent sends so a retry is answered without touching
+// crypto or the database. Bounded LRU; an evicted entry falls back to the
+// (sender_id, idempotency_key) unique constraint on messages.
+// Each entry keeps a hash of the request it answered, so a key reused for a different message is
+// refused instead of being answered with the earlier message.
+@Service
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final int MAX_KEY_LENGTH = 64;
+
+    // An earlier send under a key: the hash of its request and the response it got
+    public record SentRequest(String requestHash, Map<String, Object> response) {
+        // Messages sent before request hashes were recorded have none and are taken on trust
+        public boolean matches(String requestHash) {
+            return this.requestHash == null || this.requestHash.equals(requestHash);
+        }
+    }
+
+    private final Map<String, SentRequest> responses;
+
+    public IdempotencyService(@Value("${app.idempotency.cache-size:10000}") int cacheSize) {
+        this.responses = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SentRequest> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    public Optional<SentRequest> lookup(UUID senderId, String idempotencyKey) {
+        return Optional.ofNullable(responses.get(cacheKey(senderId, idempotencyKey)));
+    }
+
+    public void remember(UUID senderId, String idempotencyKey, String requestHash, Map<String, Object> response) {
+        responses.put(cacheKey(senderId, idempotencyKey), new SentRequest(requestHash, response));
+    }
+
+    public static boolean isValidKey(String idempotencyKey) {
+        return !idempotencyKey.isBlank() && idempotencyKey.length() <= MAX_KEY_LENGTH;
+    }
+
+    // SHA-256 (hex) over everything that decides what a send stores. No expiration and a
+    // non-positive one both mean "never expires", so they hash alike.
+    public static String requestHash(UUID receiverId, String content, boolean readOnce, Integer expirationMinutes) {
+        int expiration = expirationMinutes != null && expirationMinutes > 0 ? expirationMinutes : 0;
+        // Content last, so no value can run into the next one
+        String canonical = receiverId + "\n" + readOnce + "\n" + expiration + "\n" + content;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(canonical.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // Keys are only unique per sender
+    private static String cacheKey(UUID senderId, String idempotencyKey) {
+        return senderId + ":" + idempotencyKey;
+    }
+}
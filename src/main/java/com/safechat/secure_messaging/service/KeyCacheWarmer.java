@@ -0,0 +1,57 @@
+package com.safechat.secure_messaging.service;
+
+import com.safechat.secure_messaging.config.DatabaseWorkload;
+import com.safechat.secure_messaging.config.Workload;
+import com.safechat.secure_messaging.repository.MessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Unwraps the data keys of recently active conversations once the application is up, so the first
+// inbox loads after a deploy hit the key cache instead of reading and unwrapping key by key.
+// app.crypto.key-cache.warm-up-hours=0 turns it off.
+@Component
+public class KeyCacheWarmer {
+    private static final Logger logger = LoggerFactory.getLogger(KeyCacheWarmer.class);
+
+    private final MessageRepository messageRepository;
+    private final EncryptionService encryptionService;
+    private final int warmUpHours;
+    private final int maxKeys;
+
+    public KeyCacheWarmer(MessageRepository messageRepository,
+                          EncryptionService encryptionService,
+                          @Value("${app.crypto.key-cache.warm-up-hours:24}") int warmUpHours,
+                          @Value("${app.crypto.key-cache-size:10000}") int maxKeys) {
+        this.messageRepository = messageRepository;
+        this.encryptionService = encryptionService;
+        this.warmUpHours = warmUpHours;
+        this.maxKeys = maxKeys;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @DatabaseWorkload(Workload.JOBS)
+    public void warmUp() {
+        if (warmUpHours <= 0 || maxKeys <= 0) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            // Newest first and capped at the cache size, so warming never evicts what it just loaded
+            List<String> keyIds = messageRepository.findRecentKeyIds(
+                    LocalDateTime.now().minusHours(warmUpHours), Limit.of(maxKeys));
+            int loaded = encryptionService.warmUp(keyIds);
+            logger.info("Warmed the data key cache with {} keys in {} ms", loaded, System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            // Only a cold cache; requests load keys on demand
+            logger.warn("Data key cache warm-up failed: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.safechat.secure_messaging.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Hard-deletes encryption_keys rows that EncryptionService.deleteKey deactivated once no message
+// that could still be shown (not revoked) and no attachment refers to them. deleteKey only flips
+// "active", so without this the table and its primary key index keep one row per message ever sent.
+// Works in keyset batches, each deleted in its own short transaction.
+@Service
+public class KeyGarbageCollectionService {
+    private static final Logger logger = LoggerFactory.getLogger(KeyGarbageCollectionService.class);
+
+    // Served by idx_messages_key_id; the size is what the row held in key material
+    private static final String SELECT_GARBAGE_SQL =
+            "SELECT k.key_id, OCTET_LENGTH(k.key_id) + OCTET_LENGTH(k.key_material) + " +
+            "COALESCE(OCTET_LENGTH(k.key_bin), 0) AS row_bytes FROM encryption_keys k " +
+            "WHERE k.active = FALSE AND k.key_id > ? " +
+            "AND NOT EXISTS (SELECT 1 FROM messages m WHERE m.key_id = k.key_id AND m.revoked = FALSE) " +
+            "AND NOT EXISTS (SELECT 1 FROM attachments a WHERE a.key_id = k.key_id) " +
+            "ORDER BY k.key_id LIMIT ?";
+    // The active guard keeps a key that was somehow reactivated since it was selected
+    private static final String DELETE_KEY_SQL =
+            "DELETE FROM encryption_keys WHERE key_id = ? AND active = FALSE";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+    private final Counter deletedKeys;
+    private final Counter reclaimedBytes;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public KeyGarbageCollectionService(JdbcTemplate jdbcTemplate,
+                                       PlatformTransactionManager transactionManager,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${app.key-gc.batch-size:500}") int batchSize,
+                                       @Value("${app.key-gc.max-batches-per-run:20}") int maxBatchesPerRun) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+        this.deletedKeys = Counter.builder("safechat.key-gc.deleted")
+                .description("Inactive encryption keys hard-deleted")
+                .register(meterRegistry);
+        this.reclaimedBytes = Counter.builder("safechat.key-gc.reclaimed")
+                .description("Key id and key material bytes removed with deleted keys")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.key-gc.interval-ms:3600000}",
+            initialDelayString = "${app.key-gc.interval-ms:3600000}")
+    public void scheduledCollect() {
+        Map<String, Object> report = collect();
+        if ((long) report.get("deletedKeys") > 0) {
+            logger.info("Key GC deleted {} inactive keys ({} bytes)", report.get("deletedKeys"), report.get("reclaimedBytes"));
+        }
+    }
+
+    // One bounded run; returns what it reclaimed. Anything left over is picked up by the next run.
+    public Map<String, Object> collect() {
+        lock.lock();
+        try {
+            long deleted = 0;
+            long bytes = 0;
+            int batches = 0;
+            String after = "";
+            while (batches < maxBatchesPerRun) {
+                List<GarbageKey> garbage = jdbcTemplate.query(SELECT_GARBAGE_SQL,
+                        (rs, i) -> new GarbageKey(rs.getString("key_id"), rs.getLong("row_bytes")), after, batchSize);
+                if (garbage.isEmpty()) {
+                    break;
+                }
+                batches++;
+                after = garbage.get(garbage.size() - 1).keyId();
+
+                int[] counts = transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(DELETE_KEY_SQL,
+                        garbage.stream().map(key -> new Object[]{key.keyId()}).toList()));
+                for (int i = 0; i < counts.length; i++) {
+                    // Drivers may report SUCCESS_NO_INFO (-2) for batched statements
+                    if (counts[i] != 0) {
+                        deleted++;
+                        bytes += garbage.get(i).rowBytes();
+                    }
+                }
+                if (garbage.size() < batchSize) {
+                    break;
+                }
+            }
+            deletedKeys.increment(deleted);
+            reclaimedBytes.increment(bytes);
+            return Map.of("deletedKeys", deleted, "reclaimedBytes", bytes, "batches", batches);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private record GarbageKey(String keyId, long rowBytes) {
+    }
+}
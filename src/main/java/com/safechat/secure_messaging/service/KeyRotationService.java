@@ -0,0 +1,319 @@
+package com.safechat.secure_messaging.service;
+
+import com.safechat.secure_messaging.config.Workload;
+import com.safechat.secure_messaging.dto.MessageView;
+import com.safechat.secure_messaging.model.KeyEntity;
+import com.safechat.secure_messaging.model.KeyRotationCheckpoint;
+import com.safechat.secure_messaging.model.StorageFormat;
+import com.safechat.secure_messaging.repository.KeyRotationCheckpointRepository;
+import com.safechat.secure_messaging.repository.MessageRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+// Moves everything under an older master key version onto the current one (see MasterKeyRing): first
+// re-wraps data keys (cheap, no message is touched), then re-encrypts messages encrypted directly
+// under a master key. Runs on its own thread, not the shared scheduler, in id-ordered batches: each
+// batch is re-encrypted in memory, written in one short transaction together with its checkpoint,
+// and followed by a pause that holds the job to app.key-rotation.max-rows-per-second. Rows are only
+// ever updated by primary key, so nothing is locked beyond the batch in flight. Each phase resumes
+// from its checkpoint on startup, and only completes after a pass from the start of the table finds
+// nothing left to rotate, so rows written behind the cursor meanwhile aren't missed.
+@Service
+public class KeyRotationService {
+    private static final Logger logger = LoggerFactory.getLogger(KeyRotationService.class);
+
+    static final String PHASE_KEYS = "keys";
+    static final String PHASE_MESSAGES = "messages";
+
+    // Active data keys not yet wrapped under the current version, legacy raw ones included.
+    // Inactive keys are skipped; nothing reads them.
+    private static final String SELECT_KEYS_SQL =
+            "SELECT key_id, key_material, key_bin, storage_format, master_key_version FROM encryption_keys " +
+            "WHERE active = TRUE AND (master_key_version IS NULL OR master_key_version <> ?) AND key_id > ? " +
+            "ORDER BY key_id LIMIT ?";
+    // The version guard skips a key that was re-wrapped since it was read (0 stands for a legacy raw key)
+    private static final String UPDATE_KEY_SQL =
+            "UPDATE encryption_keys SET key_bin = ?, key_material = '', storage_format = " + StorageFormat.BINARY +
+            ", master_key_version = ? WHERE key_id = ? AND active = TRUE AND COALESCE(master_key_version, 0) = ?";
+
+    // The key_id guard skips a row that was deleted, revoked or rotated since it was read
+    private static final String UPDATE_MESSAGE_SQL =
+            "UPDATE messages SET content_bin = ?, iv_bin = ?, content = '', iv = NULL, compressed = ?, key_id = ?, " +
+            "storage_format = ?, overflow_segment = ?, overflow_offset = ?, overflow_length = ? " +
+            "WHERE id = ? AND key_id = ?";
+    private static final UUID FIRST_ID = new UUID(0L, 0L);
+
+    private final MessageRepository messageRepository;
+    private final KeyRotationCheckpointRepository checkpointRepository;
+    private final EncryptionService encryptionService;
+    private final CiphertextStore ciphertextStore;
+    private final MasterKeyRing masterKeys;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean resumeOnStartup;
+    private final int batchSize;
+    private final int maxRowsPerSecond;
+    private final MeterRegistry meterRegistry;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "key-rotation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile boolean running;
+    private volatile boolean pauseRequested;
+
+    public KeyRotationService(MessageRepository messageRepository,
+                              KeyRotationCheckpointRepository checkpointRepository,
+                              EncryptionService encryptionService,
+                              CiphertextStore ciphertextStore,
+                              MasterKeyRing masterKeys,
+                              JdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.key-rotation.resume-on-startup:true}") boolean resumeOnStartup,
+                              @Value("${app.key-rotation.batch-size:100}") int batchSize,
+                              @Value("${app.key-rotation.max-rows-per-second:200}") int maxRowsPerSecond) {
+        this.messageRepository = messageRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.encryptionService = encryptionService;
+        this.ciphertextStore = ciphertextStore;
+        this.masterKeys = masterKeys;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.resumeOnStartup = resumeOnStartup;
+        this.batchSize = batchSize;
+        this.maxRowsPerSecond = maxRowsPerSecond;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeAfterStartup() {
+        if (resumeOnStartup) {
+            start();
+        }
+    }
+
+    // Starts (or resumes) rotation to the current master key version; a no-op while it's running
+    public Map<String, Object> start() {
+        lock.lock();
+        try {
+            pauseRequested = false;
+            if (!running) {
+                running = true;
+                executor.execute(() -> Workload.JOBS.run(this::run));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return getStatus();
+    }
+
+    // Stops after the batch in flight; progress up to it is kept
+    public Map<String, Object> pause() {
+        pauseRequested = true;
+        return getStatus();
+    }
+
+    public Map<String, Object> getStatus() {
+        // HashMap rather than Map.of: checkpoint fields are null before the first batch
+        Map<String, Object> status = new HashMap<>();
+        status.put("currentVersion", masterKeys.currentVersion());
+        status.put("running", running);
+        status.put("pauseRequested", pauseRequested);
+        status.put("maxRowsPerSecond", maxRowsPerSecond);
+        for (String phase : List.of(PHASE_KEYS, PHASE_MESSAGES)) {
+            checkpointRepository.findById(phase)
+                    .filter(c -> c.getTargetVersion() == masterKeys.currentVersion())
+                    .ifPresent(checkpoint -> {
+                        Map<String, Object> progress = new HashMap<>();
+                        progress.put("processed", checkpoint.getProcessed());
+                        progress.put("failed", checkpoint.getFailed());
+                        progress.put("startedAt", checkpoint.getStartedAt());
+                        progress.put("updatedAt", checkpoint.getUpdatedAt());
+                        progress.put("completedAt", checkpoint.getCompletedAt());
+                        status.put(phase, progress);
+                    });
+        }
+        return status;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pauseRequested = true;
+        executor.shutdownNow();
+    }
+
+    private void run() {
+        try {
+            // Keys first: once they're re-wrapped, the old master key is only needed for master-keyed messages
+            if (runPhase(PHASE_KEYS, UPDATE_KEY_SQL, this::nextKeys, KeyRow::keyId, this::rewrap)) {
+                runPhase(PHASE_MESSAGES, UPDATE_MESSAGE_SQL, this::nextMessages,
+                        row -> row.getId().toString(), this::reencrypt);
+            }
+        } catch (InterruptedException e) {
+            // Shutdown; the checkpoint has everything up to the last committed batch
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Master key rotation stopped: {}", e.getMessage(), e);
+        } finally {
+            running = false;
+        }
+    }
+
+    // Walks one table in cursor order until it's done (true) or a pause is requested (false).
+    // Each row becomes an UPDATE's arguments; a row that throws is logged, counted once and skipped.
+    // Reaching the end starts another pass from the beginning unless this pass started there and
+    // rotated nothing, which is what marks the phase complete.
+    private <R> boolean runPhase(String phase, String updateSql, BiFunction<String, Integer, List<R>> next,
+                                 Function<R, String> idOf, Function<R, Object[]> update) throws InterruptedException {
+        int version = masterKeys.currentVersion();
+        KeyRotationCheckpoint checkpoint = checkpointRepository.findById(phase)
+                .filter(c -> c.getTargetVersion() == version)
+                .orElseGet(() -> new KeyRotationCheckpoint(phase, version));
+        if (checkpoint.getCompletedAt() != null) {
+            return true;
+        }
+        String after = checkpoint.getLastId();
+        boolean passFromStart = after == null;
+        boolean passRotated = false;
+        Set<String> failedIds = new HashSet<>();
+
+        while (!pauseRequested) {
+            long batchStart = System.nanoTime();
+            List<R> rows = next.apply(after, batchSize);
+            if (rows.isEmpty() && (!passFromStart || passRotated)) {
+                after = null;
+                passFromStart = true;
+                passRotated = false;
+                continue;
+            }
+            if (rows.isEmpty()) {
+                checkpoint.setCompletedAt(LocalDateTime.now());
+                checkpointRepository.save(checkpoint);
+                logger.info("Master key rotation to version {} finished {}: {} rows done, {} skipped",
+                        version, phase, checkpoint.getProcessed(), checkpoint.getFailed());
+                return true;
+            }
+            after = idOf.apply(rows.get(rows.size() - 1));
+
+            // Crypto and overflow writes happen before the transaction opens, keeping it short
+            List<Object[]> updates = new ArrayList<>(rows.size());
+            int failed = 0;
+            for (R row : rows) {
+                try {
+                    updates.add(update.apply(row));
+                } catch (RuntimeException e) {
+                    // Every later pass meets the row again; count and log it the first time only
+                    if (failedIds.add(idOf.apply(row))) {
+                        failed++;
+                        logger.warn("Master key rotation skipped {} row {}: {}", phase, idOf.apply(row), e.getMessage());
+                    }
+                }
+            }
+            passRotated |= !updates.isEmpty();
+
+            checkpoint.setLastId(after);
+            checkpoint.setProcessed(checkpoint.getProcessed() + updates.size());
+            checkpoint.setFailed(checkpoint.getFailed() + failed);
+            checkpoint.setUpdatedAt(LocalDateTime.now());
+            KeyRotationCheckpoint progress = checkpoint;
+            checkpoint = transactionTemplate.execute(status -> {
+                if (!updates.isEmpty()) {
+                    jdbcTemplate.batchUpdate(updateSql, updates);
+                }
+                return checkpointRepository.save(progress);
+            });
+            meterRegistry.counter("safechat.key-rotation.rows", "phase", phase, "outcome", "rotated")
+                    .increment(updates.size());
+            meterRegistry.counter("safechat.key-rotation.rows", "phase", phase, "outcome", "failed")
+                    .increment(failed);
+
+            throttle(rows.size(), batchStart);
+        }
+        logger.info("Master key rotation to version {} paused in {} after {} rows",
+                version, phase, checkpoint.getProcessed());
+        return false;
+    }
+
+    private List<KeyRow> nextKeys(String after, int limit) {
+        return jdbcTemplate.query(SELECT_KEYS_SQL, (rs, i) -> {
+            KeyEntity entity = new KeyEntity();
+            entity.setKeyId(rs.getString("key_id"));
+            entity.setKeyMaterial(rs.getString("key_material"));
+            entity.setKeyBin(rs.getBytes("key_bin"));
+            entity.setStorageFormat(rs.getInt("storage_format"));
+            entity.setMasterKeyVersion(rs.getObject("master_key_version", Integer.class));
+            return new KeyRow(entity.getKeyId(), entity);
+        }, masterKeys.currentVersion(), after == null ? "" : after, limit);
+    }
+
+    private Object[] rewrap(KeyRow row) {
+        byte[] wrapped = masterKeys.wrap(masterKeys.dataKeyOf(row.entity()));
+        Integer readVersion = row.entity().getMasterKeyVersion();
+        return new Object[]{wrapped, masterKeys.currentVersion(), row.keyId(), readVersion == null ? 0 : readVersion};
+    }
+
+    private List<MessageView> nextMessages(String after, int limit) {
+        return messageRepository.findMasterKeyedViewsAfter(masterKeys.currentKeyId(),
+                after == null ? FIRST_ID : UUID.fromString(after), Limit.of(limit));
+    }
+
+    private Object[] reencrypt(MessageView row) {
+        String plaintext = encryptionService.decrypt(ciphertextStore.ciphertextOf(row), row.getCiphertextIv(),
+                row.getKeyId(), row.isCompressed());
+        // A null key id encrypts under the current master key
+        CiphertextStore.Placement placement = ciphertextStore.place(encryptionService.encryptToBytes(plaintext, null));
+        EncryptionService.EncryptedBytes encrypted = placement.encrypted();
+        SegmentStore.Pointer pointer = placement.pointer();
+        if (pointer == null) {
+            return new Object[]{encrypted.content(), encrypted.iv(), encrypted.compressed(), encrypted.keyId(),
+                    StorageFormat.BINARY, null, null, null, row.getId(), row.getKeyId()};
+        }
+        // The old overflow record is left for OverflowCompactionService
+        return new Object[]{null, encrypted.iv(), encrypted.compressed(), encrypted.keyId(),
+                StorageFormat.OVERFLOW, pointer.segment(), pointer.offset(), pointer.length(), row.getId(), row.getKeyId()};
+    }
+
+    private record KeyRow(String keyId, KeyEntity entity) {
+    }
+
+    // Sleeps off whatever is left of the time budget maxRowsPerSecond gives this batch
+    private void throttle(int rows, long batchStart) throws InterruptedException {
+        if (maxRowsPerSecond <= 0) {
+            return;
+        }
+        long budgetNanos = TimeUnit.SECONDS.toNanos(rows) / maxRowsPerSecond;
+        long remainingNanos = budgetNanos - (System.nanoTime() - batchStart);
+        if (remainingNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(remainingNanos);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.safechat.secure_messaging.service;
+
+import com.safechat.secure_messaging.model.KeyEntity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+// Versioned master keys. ENCRYPTION_KEY is the current key at app.crypto.master-key-version; keys it
+// replaced stay readable through app.crypto.retired-master-keys ("1:<base64>,2:<base64>") until
+// KeyRotationService has moved everything off them. Rows written with a master key carry the key id
+// "master:<version>"; the bare "master" of rows written before versioning means version 1.
+// Data keys are stored wrapped (AES-KW, RFC 3394) under a master key version, recorded on the key row.
+@Component
+public class MasterKeyRing {
+    public static final String KEY_ID_PREFIX = "master";
+    private static final int LEGACY_VERSION = 1;
+    private static final String WRAP_ALGORITHM = "AESWrap";
+
+    private final int currentVersion;
+    private final Map<Integer, SecretKey> keys = new HashMap<>();
+
+    public MasterKeyRing(@Value("${ENCRYPTION_KEY}") String masterKeyStr,
+                         @Value("${app.crypto.master-key-version:1}") int currentVersion,
+                         @Value("${app.crypto.retired-master-keys:}") String retiredKeys) {
+        // Validate master key
+        if (masterKeyStr == null || masterKeyStr.trim().isEmpty()) {
+            throw new RuntimeException("ENCRYPTION_KEY must be provided in environment variables");
+        }
+        if (currentVersion < 1) {
+            throw new IllegalArgumentException("app.crypto.master-key-version must be at least 1");
+        }
+        this.currentVersion = currentVersion;
+        keys.put(currentVersion, decode(masterKeyStr, "ENCRYPTION_KEY"));
+
+        for (String entry : retiredKeys.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            int colon = entry.indexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("app.crypto.retired-master-keys entries must be <version>:<base64 key>");
+            }
+            int version = Integer.parseInt(entry.substring(0, colon).trim());
+            if (version == currentVersion) {
+                throw new IllegalArgumentException("Master key version " + version + " is both current and retired");
+            }
+            keys.put(version, decode(entry.substring(colon + 1).trim(), "retired master key " + version));
+        }
+    }
+
+    public static boolean isMasterKeyId(String keyId) {
+        return keyId != null && (keyId.equals(KEY_ID_PREFIX) || keyId.startsWith(KEY_ID_PREFIX + ":"));
+    }
+
+    public int currentVersion() {
+        return currentVersion;
+    }
+
+    public String currentKeyId() {
+        return KEY_ID_PREFIX + ":" + currentVersion;
+    }
+
+    public SecretKey current() {
+        return keys.get(currentVersion);
+    }
+
+    // The master key a "master" or "master:<version>" key id refers to
+    public SecretKey resolve(String keyId) {
+        return get(keyId.equals(KEY_ID_PREFIX)
+                ? LEGACY_VERSION
+                : Integer.parseInt(keyId.substring(KEY_ID_PREFIX.length() + 1)));
+    }
+
+    public SecretKey get(int version) {
+        SecretKey key = keys.get(version);
+        if (key == null) {
+            throw new RuntimeException("Master key version " + version + " is not configured");
+        }
+        return key;
+    }
+
+    // Wraps a data key under the current master key version
+    public byte[] wrap(SecretKey dataKey) {
+        try {
+            Cipher cipher = Cipher.getInstance(WRAP_ALGORITHM);
+            cipher.init(Cipher.WRAP_MODE, current());
+            return cipher.wrap(dataKey);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Error wrapping data key", e);
+        }
+    }
+
+    // Unwraps a data key; fails if it was wrapped under another version or tampered with
+    public SecretKey unwrap(byte[] wrappedKey, int version) {
+        try {
+            Cipher cipher = Cipher.getInstance(WRAP_ALGORITHM);
+            cipher.init(Cipher.UNWRAP_MODE, get(version));
+            return (SecretKey) cipher.unwrap(wrappedKey, "AES", Cipher.SECRET_KEY);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Error unwrapping data key", e);
+        }
+    }
+
+    // The usable data key of a stored row, wrapped or legacy raw
+    public SecretKey dataKeyOf(KeyEntity entity) {
+        return entity.isWrapped()
+                ? unwrap(entity.getKeyBytes(), entity.getMasterKeyVersion())
+                : new SecretKeySpec(entity.getKeyBytes(), "AES");
+    }
+
+    private static SecretKey decode(String base64, String name) {
+        try {
+            return new SecretKeySpec(Base64.getDecoder().decode(base64), "AES");
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid " + name + " format. Must be Base64 encoded", e);
+        }
+    }
+}
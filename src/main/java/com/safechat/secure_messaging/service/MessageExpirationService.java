@@ -1,13 +1,18 @@
 // MessageExpirationService.java - fixing keyId issue
 package com.safechat.secure_messaging.service;
 import com.safechat.secure_messaging.model.Message;
+import com.safechat.secure_messaging.profiling.ExpiryBatchEvent;
 import com.safechat.secure_messaging.repository.MessageRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDateTime;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 @Service
@@ -20,18 +25,33 @@ public class MessageExpirationService {
     
     @Autowired
     private AuditLogService auditLogService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ConversationService conversationService;
+
+    @Autowired
+    private AttachmentService attachmentService;
     
     // Run every hour to check for expired messages
     @Scheduled(fixedRate = 3600000)
     @Transactional
     public void processExpiredMessages() {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        ExpiryBatchEvent event = new ExpiryBatchEvent();
+        event.begin();
         LocalDateTime now = LocalDateTime.now();
         List<Message> expiredMessages = messageRepository.findByExpiresAtBefore(now);
+        Set<List<UUID>> affectedPairs = new HashSet<>();
         
         for (Message message : expiredMessages) {
+            affectedPairs.add(List.of(message.getSender().getId(), message.getReceiver().getId()));
+
             // Delete encryption key if available
-            if (message.getKeyId() != null) {
-                encryptionService.deleteKey(message.getKeyId()); // Fixed: keyId is already a String
+            if (releaseKey(message, now)) {
+                event.keysDeleted++;
             }
             
             // Log the expiration event
@@ -39,13 +59,27 @@ public class MessageExpirationService {
                     message.getReceiver().getUsername());
         }
         
+        // Attachments (files and their keys) go with their messages
+        attachmentService.deleteForMessages(expiredMessages.stream().map(Message::getId).toList());
+
         // Delete expired messages from the database
         messageRepository.deleteByExpiresAtBefore(now);
+
+        // Expired messages may have been the last message or still unread in their conversations
+        for (List<UUID> pair : affectedPairs) {
+            conversationService.refreshPair(pair.get(0), pair.get(1));
+        }
+
+        meterRegistry.counter("safechat.expiry.messages").increment(expiredMessages.size());
+        sample.stop(meterRegistry.timer("safechat.expiry.job"));
+        event.messages = expiredMessages.size();
+        event.commit();
     }
     
-    // Mark message as read and handle read-once functionality
+    // Mark message as read and handle read-once functionality. Returns false if another request
+    // read it first, which for a read-once message means it has already been consumed.
     @Transactional
-    public void markMessageAsRead(UUID messageId, String username) {
+    public boolean markMessageAsRead(UUID messageId, String username) {
         Message message = messageRepository.findById(messageId)
                 .orElseThrow(() -> new RuntimeException("Message not found"));
         
@@ -53,28 +87,37 @@ public class MessageExpirationService {
         if (!message.getReceiver().getUsername().equals(username)) {
             throw new RuntimeException("Unauthorized access to message");
         }
+
+        // Conditional update rather than a full-row save: concurrent readers can't both claim it,
+        // and the stored ciphertext columns are left alone
+        LocalDateTime now = LocalDateTime.now();
+        if (messageRepository.markReadIfUnread(messageId, now) == 0) {
+            return false;
+        }
+        conversationService.onMessageRead(message);
         
-        // Mark as read
-        message.setRead(true);
-        message.setReadAt(LocalDateTime.now());
-        messageRepository.save(message);
-        
-        // Handle read-once message
+        // Handle read-once message (already set to expire now by the update above)
         if (message.isReadOnce()) {
-            // Delete the encryption key
-            if (message.getKeyId() != null) {
-                encryptionService.deleteKey(message.getKeyId()); // Fixed: keyId is already a String
-            }
+            // Delete the encryption key, unless other broadcast copies still use it
+            releaseKey(message, now);
             
             // Log the read-once destruction
             auditLogService.logMessageDestruction(messageId, "Read-once message accessed");
-            
-            // Set expiration to now (will be cleaned up by scheduled task)
-            message.setExpiresAt(LocalDateTime.now());
-            messageRepository.save(message);
         }
+        return true;
     }
     
+    // Destroys the message's data key unless another live message (a broadcast copy) still uses it.
+    // Returns true if the key was destroyed.
+    public boolean releaseKey(Message message, LocalDateTime now) {
+        String keyId = message.getKeyId();
+        if (keyId == null || messageRepository.isKeyUsedByOtherLiveMessages(keyId, message.getId(), now)) {
+            return false;
+        }
+        encryptionService.deleteKey(keyId);
+        return true;
+    }
+
     // Revoke a message (admin function)
     @Transactional
     public void revokeMessage(UUID messageId, UUID adminId, String reason) {
@@ -88,11 +131,13 @@ public class MessageExpirationService {
         message.setRevocationReason(reason);
         
         // Delete encryption key
-        if (message.getKeyId() != null) {
-            encryptionService.deleteKey(message.getKeyId()); // Fixed: keyId is already a String
-        }
+        releaseKey(message, LocalDateTime.now());
+        attachmentService.deleteForMessages(List.of(messageId));
         
         messageRepository.save(message);
+
+        // A revoked message no longer counts towards the receiver's unread total
+        conversationService.refreshPair(message.getSender().getId(), message.getReceiver().getId());
         
         // Log the revocation event
         auditLogService.logMessageRevocation(messageId, adminId, reason);
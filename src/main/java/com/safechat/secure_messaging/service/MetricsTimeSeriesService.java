@@ -0,0 +1,146 @@
+package com.safechat.secure_messaging.service;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+@Service
+public class MetricsTimeSeriesService {
+
+    private static final long MINUTE_MS = 60_000L;
+
+    // 24 hours of per-minute buckets
+    public static final int RETENTION_MINUTES = 24 * 60;
+
+    public enum ThroughputMetric {
+        MESSAGES_SENT("messagesSent"),
+        MESSAGE_READS("messageReads"),
+        LOGINS("logins"),
+        TWO_FACTOR_FAILURES("twoFactorFailures"),
+        MESSAGE_EXPIRATIONS("messageExpirations");
+
+        private final String key;
+
+        ThroughputMetric(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    private final Map<ThroughputMetric, MinuteRingBuffer> series = new EnumMap<>(ThroughputMetric.class);
+
+    private final WebSocketSessionRegistry sessionRegistry;
+
+    public MetricsTimeSeriesService(WebSocketSessionRegistry sessionRegistry) {
+        this.sessionRegistry = sessionRegistry;
+        for (ThroughputMetric metric : ThroughputMetric.values()) {
+            series.put(metric, new MinuteRingBuffer(RETENTION_MINUTES));
+        }
+    }
+
+    public void record(ThroughputMetric metric) {
+        record(metric, 1);
+    }
+
+    public void record(ThroughputMetric metric, long count) {
+        record(metric, count, System.currentTimeMillis());
+    }
+
+    void record(ThroughputMetric metric, long count, long nowMs) {
+        series.get(metric).add(nowMs / MINUTE_MS, count);
+    }
+
+    // Last N minutes (oldest first) of every metric, aligned on the same timestamps
+    public Map<String, Object> getSeries(int minutes) {
+        return getSeries(minutes, System.currentTimeMillis());
+    }
+
+    Map<String, Object> getSeries(int minutes, long nowMs) {
+        int window = Math.max(1, Math.min(minutes, RETENTION_MINUTES));
+        long endMinute = nowMs / MINUTE_MS;
+        long startMinute = endMinute - window + 1;
+
+        List<Long> timestamps = new ArrayList<>(window);
+        for (long minute = startMinute; minute <= endMinute; minute++) {
+            timestamps.add(minute * MINUTE_MS);
+        }
+
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (ThroughputMetric metric : ThroughputMetric.values()) {
+            values.put(metric.getKey(), series.get(metric).range(startMinute, endMinute));
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("resolutionSeconds", 60);
+        result.put("timestamps", timestamps);
+        result.put("series", values);
+        return result;
+    }
+
+    // Live dashboard feed: the previous (complete) and current (partial) minute for each metric
+    @Scheduled(fixedRateString = "${app.metrics.push-ms:10000}")
+    public void pushToAdmins() {
+        if (!sessionRegistry.hasAdminSessions()) {
+            return;
+        }
+        Map<String, Object> payload = new HashMap<>(getSeries(2));
+        payload.put("type", "admin_metrics");
+        sessionRegistry.sendToAdmins(payload);
+    }
+
+    // Fixed ring of counters indexed by minute. A slot still holding an older minute gets a fresh
+    // counter swapped in rather than reset in place, so an add racing the rollover can't be wiped out.
+    private static final class MinuteRingBuffer {
+
+        private record MinuteCount(long minute, AtomicLong count) {
+        }
+
+        private final int size;
+        private final AtomicReferenceArray<MinuteCount> slots;
+
+        private MinuteRingBuffer(int size) {
+            this.size = size;
+            this.slots = new AtomicReferenceArray<>(size);
+            for (int i = 0; i < size; i++) {
+                slots.set(i, new MinuteCount(-1, new AtomicLong()));
+            }
+        }
+
+        private void add(long minute, long delta) {
+            int slot = (int) (minute % size);
+            MinuteCount current = slots.get(slot);
+            while (current.minute() < minute) {
+                MinuteCount fresh = new MinuteCount(minute, new AtomicLong());
+                if (slots.compareAndSet(slot, current, fresh)) {
+                    current = fresh;
+                } else {
+                    current = slots.get(slot);
+                }
+            }
+            // A late add for a minute the slot has already moved past is dropped
+            if (current.minute() == minute) {
+                current.count().addAndGet(delta);
+            }
+        }
+
+        private List<Long> range(long startMinute, long endMinute) {
+            List<Long> values = new ArrayList<>((int) (endMinute - startMinute + 1));
+            for (long minute = startMinute; minute <= endMinute; minute++) {
+                MinuteCount current = slots.get((int) (minute % size));
+                values.add(current.minute() == minute ? current.count().get() : 0L);
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.safechat.secure_messaging.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Reclaims overflow space left behind by expired, deleted and revoked messages. A sealed segment with
+// no rows pointing into it is deleted; one whose live records fall below app.overflow.compaction-live-ratio
+// of its size has them copied to the active segment, the rows repointed in one transaction, and the old
+// segment marked retired (see SegmentStore), so a request that read the old pointer just before can still
+// finish. A retired segment is deleted once the marker is older than the grace window.
+//
+// Records are appended before the rows that point at them commit (a broadcast commits its copies in
+// chunks, well after the one append), so a segment is only looked at once its last append is older
+// than app.overflow.compaction-grace-ms. The window must outlast the longest of those transactions.
+@Service
+public class OverflowCompactionService {
+    private static final Logger logger = LoggerFactory.getLogger(OverflowCompactionService.class);
+
+    // Broadcast copies share a record, hence DISTINCT
+    private static final String LIVE_RECORDS_SQL =
+            "SELECT DISTINCT overflow_offset, overflow_length FROM messages WHERE overflow_segment = ? " +
+            "ORDER BY overflow_offset";
+    private static final String REPOINT_SQL =
+            "UPDATE messages SET overflow_segment = ?, overflow_offset = ? " +
+            "WHERE overflow_segment = ? AND overflow_offset = ?";
+
+    private final SegmentStore segmentStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final double liveRatio;
+    private final Duration grace;
+    private final Counter reclaimedBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public OverflowCompactionService(SegmentStore segmentStore,
+                                     JdbcTemplate jdbcTemplate,
+                                     PlatformTransactionManager transactionManager,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${app.overflow.compaction-live-ratio:0.5}") double liveRatio,
+                                     @Value("${app.overflow.compaction-grace-ms:600000}") long graceMs) {
+        this.segmentStore = segmentStore;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.liveRatio = liveRatio;
+        this.grace = Duration.ofMillis(graceMs);
+        this.reclaimedBytes = Counter.builder("safechat.overflow.reclaimed")
+                .description("Overflow segment bytes reclaimed by compaction")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.overflow.compaction-interval-ms:3600000}",
+            initialDelayString = "${app.overflow.compaction-interval-ms:3600000}")
+    public void compact() {
+        lock.lock();
+        try {
+            Instant cutoff = Instant.now().minus(grace);
+            try {
+                for (int segment : segmentStore.sealedSegments()) {
+                    // Rows pointing into a recently written segment may not have committed yet
+                    if (segmentStore.lastWriteOf(segment).isBefore(cutoff)) {
+                        compactSegment(segment, cutoff);
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Overflow compaction stopped: {}", e.getMessage(), e);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void compactSegment(int segment, Instant cutoff) throws IOException {
+        List<SegmentStore.Pointer> live = jdbcTemplate.query(LIVE_RECORDS_SQL,
+                (rs, i) -> new SegmentStore.Pointer(segment, rs.getLong("overflow_offset"), rs.getInt("overflow_length")),
+                segment);
+        if (live.isEmpty()) {
+            // A segment retired within the window may still be read through a pointer loaded before the repoint
+            Instant retiredAt = segmentStore.retiredAt(segment);
+            if (retiredAt == null || retiredAt.isBefore(cutoff)) {
+                deleteSegment(segment);
+            }
+            return;
+        }
+
+        long size = segmentStore.sizeOf(segment);
+        long liveBytes = 0;
+        for (SegmentStore.Pointer pointer : live) {
+            liveBytes += SegmentStore.HEADER_BYTES + pointer.length();
+        }
+        if (liveBytes >= size * liveRatio) {
+            return;
+        }
+
+        List<Object[]> repoints = new ArrayList<>(live.size());
+        for (SegmentStore.Pointer pointer : live) {
+            SegmentStore.Pointer moved = segmentStore.append(segmentStore.read(pointer));
+            repoints.add(new Object[]{moved.segment(), moved.offset(), segment, pointer.offset()});
+        }
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(REPOINT_SQL, repoints));
+        // A crash before this leaves the segment unmarked and empty, so the next run deletes it outright
+        segmentStore.markRetired(segment);
+        logger.info("Compacted overflow segment {}: moved {} live records ({} of {} bytes)",
+                segment, live.size(), liveBytes, size);
+    }
+
+    private void deleteSegment(int segment) {
+        long size;
+        try {
+            size = segmentStore.sizeOf(segment);
+        } catch (IOException e) {
+            size = 0;
+        }
+        if (segmentStore.delete(segment)) {
+            reclaimedBytes.increment(size);
+            logger.info("Deleted overflow segment {} ({} bytes)", segment, size);
+        }
+    }
+}
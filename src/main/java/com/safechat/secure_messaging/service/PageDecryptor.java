@@ -0,0 +1,126 @@
+package com.safechat.secure_messaging.service;
+
+import com.safechat.secure_messaging.dto.MessageView;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Decrypts a page of messages for the message list. Pages of at least app.decrypt.parallel-threshold
+// messages are split into contiguous slices decrypted on a bounded pool, with the request thread
+// taking the first slice; results land by index, so order is kept. Smaller pages stay on the request
+// thread, where the fan-out would cost more than it saves.
+@Service
+public class PageDecryptor {
+    public static final String REVOKED = "[Message Revoked by Admin]";
+    public static final String UNAVAILABLE = "[Message no longer available]";
+
+    private final EncryptionService encryptionService;
+    private final CiphertextStore ciphertextStore;
+    private final int parallelThreshold;
+    private final int parallelism;
+    private final ExecutorService executor;
+    private final Counter serialPages;
+    private final Counter parallelPages;
+    private final Counter warmUpFailures;
+
+    public PageDecryptor(EncryptionService encryptionService,
+                         CiphertextStore ciphertextStore,
+                         MeterRegistry meterRegistry,
+                         @Value("${app.decrypt.parallel-threshold:64}") int parallelThreshold,
+                         @Value("${app.decrypt.parallelism:0}") int parallelism) {
+        this.encryptionService = encryptionService;
+        this.ciphertextStore = ciphertextStore;
+        this.parallelThreshold = parallelThreshold;
+        // 0 means one thread per core; AES-GCM is CPU-bound once keys are cached
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+
+        AtomicInteger threadCount = new AtomicInteger();
+        // A full queue makes the submitting request decrypt the slice itself rather than wait or fail
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(this.parallelism, this.parallelism,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(this.parallelism * 4), runnable -> {
+                    Thread thread = new Thread(runnable, "page-decrypt-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = ExecutorServiceMetrics.monitor(meterRegistry, pool, "safechat.decrypt.pool");
+
+        this.serialPages = meterRegistry.counter("safechat.decrypt.pages", "mode", "serial");
+        this.parallelPages = meterRegistry.counter("safechat.decrypt.pages", "mode", "parallel");
+        this.warmUpFailures = meterRegistry.counter("safechat.decrypt.warmup.failed");
+    }
+
+    // Plaintext (or placeholder) for each message, in the same order
+    public List<String> decrypt(List<MessageView> messages) {
+        int size = messages.size();
+        int slices = Math.min(parallelism, size);
+        if (parallelThreshold <= 0 || size < parallelThreshold || slices < 2) {
+            serialPages.increment();
+            List<String> contents = new ArrayList<>(size);
+            for (MessageView message : messages) {
+                contents.add(decryptOne(message));
+            }
+            return contents;
+        }
+        parallelPages.increment();
+
+        // One batched key read up front, so the workers hit the cache instead of each querying.
+        // Only an optimisation: if it fails, each worker loads its keys as the serial path does.
+        try {
+            encryptionService.warmUp(messages.stream().map(MessageView::getKeyId).toList());
+        } catch (RuntimeException e) {
+            warmUpFailures.increment();
+        }
+
+        String[] contents = new String[size];
+        List<CompletableFuture<Void>> pending = new ArrayList<>(slices - 1);
+        for (int slice = 1; slice < slices; slice++) {
+            int from = slice * size / slices;
+            int to = (slice + 1) * size / slices;
+            pending.add(CompletableFuture.runAsync(() -> decryptRange(messages, contents, from, to), executor));
+        }
+        decryptRange(messages, contents, 0, size / slices);
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).join();
+        return Arrays.asList(contents);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void decryptRange(List<MessageView> messages, String[] contents, int from, int to) {
+        for (int i = from; i < to; i++) {
+            contents[i] = decryptOne(messages.get(i));
+        }
+    }
+
+    private String decryptOne(MessageView message) {
+        try {
+            if (message.isRevoked()) {
+                // Broadcast copies share a key, so revocation can't rely on the key being gone
+                return REVOKED;
+            } else if (message.getKeyId() != null && message.getCiphertextIv() != null) {
+                return encryptionService.decrypt(ciphertextStore.ciphertextOf(message),
+                        message.getCiphertextIv(), message.getKeyId(), message.isCompressed());
+            } else {
+                return UNAVAILABLE;
+            }
+        } catch (Exception e) {
+            return REVOKED;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.safechat.secure_messaging.service;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Deflate stage applied to plaintext before encryption. Payloads under the threshold, or that don't
+// shrink, are left alone so short chat messages pay nothing.
+public class PayloadCompressor {
+
+    private final int thresholdBytes;
+    private final int level;
+    private final int maxInflatedBytes;
+
+    public PayloadCompressor(int thresholdBytes, int level, int maxInflatedBytes) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between 1 and 9");
+        }
+        this.thresholdBytes = thresholdBytes;
+        this.level = level;
+        this.maxInflatedBytes = maxInflatedBytes;
+    }
+
+    // Compressed bytes, or null when compression doesn't apply or doesn't pay off
+    public byte[] compress(byte[] plaintext) {
+        if (thresholdBytes < 0 || plaintext.length < thresholdBytes) {
+            return null;
+        }
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(plaintext);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(plaintext.length / 2);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+                if (out.size() >= plaintext.length) {
+                    return null;
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public byte[] decompress(byte[] compressed) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 3);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated compressed payload");
+                }
+                out.write(buffer, 0, inflated);
+                if (out.size() > maxInflatedBytes) {
+                    throw new IllegalStateException("Compressed payload inflates past " + maxInflatedBytes + " bytes");
+                }
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed payload", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
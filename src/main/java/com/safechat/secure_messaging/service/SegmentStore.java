@@ -0,0 +1,202 @@
+package com.safechat.secure_messaging.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Append-only segment files for oversized message ciphertext, so the messages table only holds a
+// pointer (segment, offset, length). Records are a 4-byte length header followed by the payload.
+// Appends go to a single active segment, which rolls over at app.overflow.segment-bytes; sealed
+// segments are never written again and are only removed whole, by OverflowCompactionService, which
+// marks a segment it has emptied with a .retired file so the retirement survives a restart.
+// Reads come from read-only memory maps, cached per segment.
+@Component
+public class SegmentStore {
+    public static final int HEADER_BYTES = 4;
+
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".seg";
+    private static final String RETIRED_SUFFIX = ".retired";
+
+    private final Path root;
+    private final long segmentBytes;
+    private final Map<Integer, MappedByteBuffer> maps = new ConcurrentHashMap<>();
+
+    // A lock rather than synchronized: append holds it across an fsync, which would pin a virtual thread
+    private final ReentrantLock lock = new ReentrantLock();
+    private int activeSegment;
+    private FileChannel activeChannel;
+
+    public record Pointer(int segment, long offset, int length) {
+    }
+
+    public SegmentStore(@Value("${app.overflow.dir:./data/overflow}") String dir,
+                        @Value("${app.overflow.segment-bytes:268435456}") long segmentBytes) {
+        if (segmentBytes > Integer.MAX_VALUE) {
+            // A segment has to fit in a single MappedByteBuffer
+            throw new IllegalArgumentException("app.overflow.segment-bytes must be at most " + Integer.MAX_VALUE);
+        }
+        this.root = Path.of(dir).toAbsolutePath().normalize();
+        this.segmentBytes = segmentBytes;
+        try {
+            Files.createDirectories(root);
+            List<Integer> existing = listSegments();
+            openActive(existing.isEmpty() ? 1 : existing.get(existing.size() - 1));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open overflow store at " + root, e);
+        }
+    }
+
+    // Appends and syncs a record; the returned pointer is safe to commit once this returns
+    public Pointer append(byte[] payload) throws IOException {
+        lock.lock();
+        try {
+            long recordBytes = HEADER_BYTES + (long) payload.length;
+            if (activeChannel.size() > 0 && activeChannel.size() + recordBytes > segmentBytes) {
+                activeChannel.close();
+                openActive(activeSegment + 1);
+            }
+            long offset = activeChannel.size();
+            ByteBuffer record = ByteBuffer.allocate((int) recordBytes).putInt(payload.length).put(payload).flip();
+            while (record.hasRemaining()) {
+                activeChannel.write(record, offset + record.position());
+            }
+            activeChannel.force(false);
+            return new Pointer(activeSegment, offset, payload.length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public byte[] read(Pointer pointer) throws IOException {
+        long end = pointer.offset() + HEADER_BYTES + pointer.length();
+        MappedByteBuffer map = maps.get(pointer.segment());
+        if (map == null || map.capacity() < end) {
+            // First read of this segment, or the active segment has grown past the last mapping
+            map = map(pointer.segment());
+            if (map.capacity() < end) {
+                throw new IOException("Overflow record " + pointer + " lies beyond the end of its segment");
+            }
+        }
+        ByteBuffer view = map.duplicate();
+        view.position((int) pointer.offset());
+        if (view.getInt() != pointer.length()) {
+            throw new IOException("Overflow record header does not match " + pointer);
+        }
+        byte[] payload = new byte[pointer.length()];
+        view.get(payload);
+        return payload;
+    }
+
+    // Sealed segments in ascending order; the active segment is never returned
+    public List<Integer> sealedSegments() throws IOException {
+        lock.lock();
+        try {
+            List<Integer> sealed = new ArrayList<>();
+            for (int segment : listSegments()) {
+                if (segment != activeSegment) {
+                    sealed.add(segment);
+                }
+            }
+            return sealed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long sizeOf(int segment) throws IOException {
+        return Files.size(pathOf(segment));
+    }
+
+    // Time of the last append, which for a sealed segment is about when it was sealed
+    public Instant lastWriteOf(int segment) throws IOException {
+        return Files.getLastModifiedTime(pathOf(segment)).toInstant();
+    }
+
+    // Records that nothing should point into the segment any more (its records were moved)
+    public void markRetired(int segment) throws IOException {
+        Path marker = retiredMarkerOf(segment);
+        Files.deleteIfExists(marker);
+        Files.createFile(marker);
+    }
+
+    // When the segment was marked retired, or null if it wasn't
+    public Instant retiredAt(int segment) throws IOException {
+        Path marker = retiredMarkerOf(segment);
+        return Files.exists(marker) ? Files.getLastModifiedTime(marker).toInstant() : null;
+    }
+
+    // Drops the cached mapping, the file and its retirement marker. Readers already holding the mapping
+    // keep working until it's collected; on Windows the delete fails while it's mapped and is retried
+    // next run.
+    public boolean delete(int segment) {
+        maps.remove(segment);
+        try {
+            boolean deleted = Files.deleteIfExists(pathOf(segment));
+            Files.deleteIfExists(retiredMarkerOf(segment));
+            return deleted;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            activeChannel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private MappedByteBuffer map(int segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(pathOf(segment), StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            maps.put(segment, map);
+            return map;
+        }
+    }
+
+    private void openActive(int segment) throws IOException {
+        activeSegment = segment;
+        activeChannel = FileChannel.open(pathOf(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private List<Integer> listSegments() throws IOException {
+        List<Integer> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                segments.add(Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+            }
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    private Path pathOf(int segment) {
+        return root.resolve(String.format("%s%06d%s", PREFIX, segment, SUFFIX));
+    }
+
+    private Path retiredMarkerOf(int segment) {
+        return root.resolve(String.format("%s%06d%s", PREFIX, segment, RETIRED_SUFFIX));
+    }
+}
@@ -0,0 +1,186 @@
+package com.safechat.secure_messaging.service;
+
+import com.safechat.secure_messaging.model.StorageFormat;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+// Moves legacy Base64 rows (StorageFormat.BASE64) of messages and encryption_keys to the binary format
+// in small batches, each in its own transaction. Reads handle both formats, so the job can stop and
+// resume at any point. Rows that fail to decode are left as they are and recorded in
+// storage_migration_failures, which later runs skip.
+@Service
+public class StorageMigrationService {
+    private static final Logger logger = LoggerFactory.getLogger(StorageMigrationService.class);
+
+    private static final String MESSAGES = "messages";
+    private static final String KEYS = "encryption_keys";
+
+    private static final String NOT_FAILED = " AND NOT EXISTS (SELECT 1 FROM storage_migration_failures f " +
+            "WHERE f.table_name = '%s' AND f.row_id = CAST(%s AS VARCHAR))";
+    private static final String SELECT_MESSAGES_SQL =
+            "SELECT id, content, iv FROM messages m WHERE storage_format = " + StorageFormat.BASE64 +
+            NOT_FAILED.formatted(MESSAGES, "m.id") + " ORDER BY id LIMIT ?";
+    private static final String SELECT_MESSAGES_AFTER_SQL =
+            "SELECT id, content, iv FROM messages m WHERE storage_format = " + StorageFormat.BASE64 +
+            NOT_FAILED.formatted(MESSAGES, "m.id") + " AND id > ? ORDER BY id LIMIT ?";
+    // The storage_format guard keeps a row that changed since it was read from being migrated twice
+    private static final String UPDATE_MESSAGE_SQL =
+            "UPDATE messages SET content_bin = ?, iv_bin = ?, content = '', iv = NULL, storage_format = " +
+            StorageFormat.BINARY + " WHERE id = ? AND storage_format = " + StorageFormat.BASE64;
+    private static final String SELECT_KEYS_SQL =
+            "SELECT key_id, key_material FROM encryption_keys k WHERE storage_format = " + StorageFormat.BASE64 +
+            NOT_FAILED.formatted(KEYS, "k.key_id") + " AND key_id > ? ORDER BY key_id LIMIT ?";
+    private static final String UPDATE_KEY_SQL =
+            "UPDATE encryption_keys SET key_bin = ?, key_material = '', storage_format = " + StorageFormat.BINARY +
+            " WHERE key_id = ? AND storage_format = " + StorageFormat.BASE64;
+    // Guarded so two instances recording the same row don't fail each other's batch
+    private static final String INSERT_FAILURE_SQL =
+            "INSERT INTO storage_migration_failures (table_name, row_id, reason, failed_at) " +
+            "SELECT ?, ?, ?, ? WHERE NOT EXISTS " +
+            "(SELECT 1 FROM storage_migration_failures WHERE table_name = ? AND row_id = ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+
+    public StorageMigrationService(JdbcTemplate jdbcTemplate,
+                                   PlatformTransactionManager transactionManager,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${app.storage-migration.enabled:true}") boolean enabled,
+                                   @Value("${app.storage-migration.batch-size:500}") int batchSize,
+                                   @Value("${app.storage-migration.max-batches-per-run:20}") int maxBatchesPerRun) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+    }
+
+    @Scheduled(fixedDelayString = "${app.storage-migration.interval-ms:60000}",
+            initialDelayString = "${app.storage-migration.interval-ms:60000}")
+    public void migrateBatches() {
+        if (!enabled) {
+            return;
+        }
+        int keys = migrateKeys();
+        int messages = migrateMessages();
+        if (keys > 0 || messages > 0) {
+            logger.info("Migrated {} messages and {} encryption keys to the binary storage format", messages, keys);
+        }
+    }
+
+    // Returns the number of rows converted in this run
+    public int migrateMessages() {
+        int migrated = 0;
+        UUID after = null;
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            List<LegacyRow<UUID>> rows = after == null
+                    ? jdbcTemplate.query(SELECT_MESSAGES_SQL, (rs, i) -> new LegacyRow<>(
+                            rs.getObject("id", UUID.class), rs.getString("content"), rs.getString("iv")), batchSize)
+                    : jdbcTemplate.query(SELECT_MESSAGES_AFTER_SQL, (rs, i) -> new LegacyRow<>(
+                            rs.getObject("id", UUID.class), rs.getString("content"), rs.getString("iv")), after, batchSize);
+            if (rows.isEmpty()) {
+                break;
+            }
+            after = rows.get(rows.size() - 1).id();
+
+            List<Object[]> updates = new ArrayList<>(rows.size());
+            List<Object[]> failures = new ArrayList<>();
+            for (LegacyRow<UUID> row : rows) {
+                try {
+                    updates.add(new Object[]{decode(row.value()), decode(row.iv()), row.id()});
+                } catch (IllegalArgumentException e) {
+                    logger.warn("Message {} has undecodable Base64 ciphertext; leaving it in the legacy format", row.id());
+                    failures.add(failure(MESSAGES, row.id().toString(), e));
+                }
+            }
+            migrated += update(UPDATE_MESSAGE_SQL, updates, MESSAGES, failures);
+            if (rows.size() < batchSize) {
+                break;
+            }
+        }
+        meterRegistry.counter("safechat.storage.migrated", "table", MESSAGES).increment(migrated);
+        return migrated;
+    }
+
+    public int migrateKeys() {
+        int migrated = 0;
+        String after = "";
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            List<LegacyRow<String>> rows = jdbcTemplate.query(SELECT_KEYS_SQL, (rs, i) -> new LegacyRow<>(
+                    rs.getString("key_id"), rs.getString("key_material"), null), after, batchSize);
+            if (rows.isEmpty()) {
+                break;
+            }
+            after = rows.get(rows.size() - 1).id();
+
+            List<Object[]> updates = new ArrayList<>(rows.size());
+            List<Object[]> failures = new ArrayList<>();
+            for (LegacyRow<String> row : rows) {
+                try {
+                    updates.add(new Object[]{decode(row.value()), row.id()});
+                } catch (IllegalArgumentException e) {
+                    logger.warn("Encryption key {} has undecodable key material; leaving it in the legacy format", row.id());
+                    failures.add(failure(KEYS, row.id(), e));
+                }
+            }
+            migrated += update(UPDATE_KEY_SQL, updates, KEYS, failures);
+            if (rows.size() < batchSize) {
+                break;
+            }
+        }
+        meterRegistry.counter("safechat.storage.migrated", "table", KEYS).increment(migrated);
+        return migrated;
+    }
+
+    // Converts a batch and records its failures in one transaction
+    private int update(String sql, List<Object[]> updates, String table, List<Object[]> failures) {
+        if (updates.isEmpty() && failures.isEmpty()) {
+            return 0;
+        }
+        int[] counts = transactionTemplate.execute(status -> {
+            if (!failures.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_FAILURE_SQL, failures);
+            }
+            return updates.isEmpty() ? new int[0] : jdbcTemplate.batchUpdate(sql, updates);
+        });
+        meterRegistry.counter("safechat.storage.migration_failed", "table", table).increment(failures.size());
+        int updated = 0;
+        for (int count : counts) {
+            // Drivers may report SUCCESS_NO_INFO (-2) for batched statements
+            updated += count == 0 ? 0 : 1;
+        }
+        return updated;
+    }
+
+    private static Object[] failure(String table, String rowId, Exception e) {
+        String reason = String.valueOf(e.getMessage());
+        // Fits the default varchar(255) reason column
+        reason = reason.length() > 255 ? reason.substring(0, 255) : reason;
+        return new Object[]{table, rowId, reason, LocalDateTime.now(), table, rowId};
+    }
+
+    private static byte[] decode(String base64) {
+        return base64 == null ? null : Base64.getDecoder().decode(base64);
+    }
+
+    private record LegacyRow<K>(K id, String value, String iv) {
+    }
+}
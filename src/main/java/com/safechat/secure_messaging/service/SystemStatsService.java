@@ -0,0 +1,140 @@
+package com.safechat.secure_messaging.service;
+
+import com.safechat.secure_messaging.repository.AuditLogRepository;
+import com.safechat.secure_messaging.repository.MessageRepository;
+import com.safechat.secure_messaging.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+@Service
+public class SystemStatsService {
+    private static final Logger logger = LoggerFactory.getLogger(SystemStatsService.class);
+
+    private static final long HOUR_MS = 3_600_000L;
+    private static final int ACTIVE_WINDOW_HOURS = 24;
+    private static final int SKETCH_PRECISION = 12;
+
+    private final UserRepository userRepository;
+    private final MessageRepository messageRepository;
+    private final AuditLogRepository auditLogRepository;
+
+    // Maintained incrementally by StatsEntityListener, corrected by the periodic resync
+    private final AtomicLong totalUsers = new AtomicLong();
+    private final AtomicLong totalMessages = new AtomicLong();
+    private final AtomicLong totalAuditLogs = new AtomicLong();
+    private volatile LocalDateTime lastSyncedAt;
+
+    // One sketch per hour of the day. A slot whose hour is over a day old gets a fresh sketch swapped in
+    // rather than cleared in place, so an add racing the rollover can't be wiped out.
+    private record HourSketch(long hour, HyperLogLog sketch) {
+    }
+
+    private final AtomicReferenceArray<HourSketch> hourlyActiveUsers = new AtomicReferenceArray<>(ACTIVE_WINDOW_HOURS);
+
+    public SystemStatsService(UserRepository userRepository,
+                              MessageRepository messageRepository,
+                              AuditLogRepository auditLogRepository) {
+        this.userRepository = userRepository;
+        this.messageRepository = messageRepository;
+        this.auditLogRepository = auditLogRepository;
+        for (int i = 0; i < ACTIVE_WINDOW_HOURS; i++) {
+            hourlyActiveUsers.set(i, new HourSketch(-1, new HyperLogLog(SKETCH_PRECISION)));
+        }
+    }
+
+    public void userCreated() {
+        totalUsers.incrementAndGet();
+    }
+
+    public void userDeleted() {
+        totalUsers.decrementAndGet();
+    }
+
+    public void messageCreated() {
+        totalMessages.incrementAndGet();
+    }
+
+    public void messageDeleted() {
+        totalMessages.decrementAndGet();
+    }
+
+    public void auditLogCreated() {
+        totalAuditLogs.incrementAndGet();
+    }
+
+    // Called on every authenticated request, so it stays lock-free and only allocates when it rolls
+    // a slot over to a new hour
+    public void recordActivity(String username) {
+        recordActivity(username, System.currentTimeMillis());
+    }
+
+    void recordActivity(String username, long nowMs) {
+        if (username == null) {
+            return;
+        }
+        long hour = nowMs / HOUR_MS;
+        int slot = (int) (hour % ACTIVE_WINDOW_HOURS);
+
+        HourSketch current = hourlyActiveUsers.get(slot);
+        while (current.hour() != hour) {
+            HourSketch fresh = new HourSketch(hour, new HyperLogLog(SKETCH_PRECISION));
+            if (hourlyActiveUsers.compareAndSet(slot, current, fresh)) {
+                current = fresh;
+            } else {
+                current = hourlyActiveUsers.get(slot);
+            }
+        }
+        current.sketch().add(username);
+    }
+
+    public long getActiveUsers24h() {
+        return getActiveUsers24h(System.currentTimeMillis());
+    }
+
+    long getActiveUsers24h(long nowMs) {
+        long currentHour = nowMs / HOUR_MS;
+        HyperLogLog merged = new HyperLogLog(SKETCH_PRECISION);
+        for (int slot = 0; slot < ACTIVE_WINDOW_HOURS; slot++) {
+            HourSketch hourSketch = hourlyActiveUsers.get(slot);
+            if (currentHour - hourSketch.hour() < ACTIVE_WINDOW_HOURS) {
+                merged.merge(hourSketch.sketch());
+            }
+        }
+        return merged.estimate();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalUsers", totalUsers.get());
+        stats.put("totalMessages", totalMessages.get());
+        stats.put("totalAuditLogs", totalAuditLogs.get());
+        stats.put("activeUsers24h", getActiveUsers24h());
+        stats.put("lastSyncedAt", lastSyncedAt);
+        stats.put("serverTime", LocalDateTime.now());
+        return stats;
+    }
+
+    // Re-read the authoritative counts; fixes drift from rolled-back inserts and bulk deletes
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedRateString = "${app.stats.resync-ms:300000}", initialDelayString = "${app.stats.resync-ms:300000}")
+    public void resync() {
+        try {
+            totalUsers.set(userRepository.count());
+            totalMessages.set(messageRepository.count());
+            totalAuditLogs.set(auditLogRepository.count());
+            lastSyncedAt = LocalDateTime.now();
+        } catch (Exception e) {
+            logger.error("Failed to resync system stats", e);
+        }
+    }
+}
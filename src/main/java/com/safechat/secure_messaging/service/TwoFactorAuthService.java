@@ -15,10 +15,13 @@ import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.time.Instant;
 import java.util.Base64;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.IntStream;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.client.j2se.MatrixToImageWriter;
 import com.google.zxing.common.BitMatrix;
@@ -36,8 +39,11 @@ public class TwoFactorAuthService {
     @Autowired
     private EmailService emailService;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     // Store recently sent codes with expiration time for rate limiting
-    private final Map<String, Long> recentlySentCodes = new HashMap<>();
+    private final Map<String, Long> recentlySentCodes = new ConcurrentHashMap<>();
     private static final long RESEND_COOLDOWN_SECONDS = 5; // seconds
 
     // Time step in seconds (standard is 30)
@@ -107,13 +113,19 @@ public class TwoFactorAuthService {
                     code, secret.length() > 5 ? secret.substring(0, 5) : secret, currentTimeCounter);
         
         // Check within the time window (current, past, and future periods)
-        return IntStream.rangeClosed(-WINDOW_SIZE, WINDOW_SIZE)
+        Timer.Sample sample = Timer.start(meterRegistry);
+        boolean valid = IntStream.rangeClosed(-WINDOW_SIZE, WINDOW_SIZE)
                 .anyMatch(i -> {
                     String generatedCode = generateCode(secret, currentTimeCounter + i);
                     logger.debug("Generated code for offset {}: '{}', matches: {}", 
                                i, generatedCode, generatedCode.equals(code));
                     return generatedCode.equals(code);
                 });
+        sample.stop(Timer.builder("safechat.totp.verify")
+                .description("TOTP window verification")
+                .tag("result", valid ? "valid" : "invalid")
+                .register(meterRegistry));
+        return valid;
     }
     
 
@@ -169,7 +181,7 @@ public class TwoFactorAuthService {
         return Base32.encode(decodedSecret);
     }
 
-    // Send verification code via email with rate limiting
+    // Send verification code via email with rate limiting; true once the code is queued for delivery
     public boolean sendEmailCode(User user) {
         logger.debug("Attempting to send email code to user: {}", user.getUsername());
         
@@ -204,17 +216,19 @@ public class TwoFactorAuthService {
                     "\n\nDo not share this code with anyone, including SafeChat support.";
             
             logger.debug("Generated code for user: {}, attempting to send email", user.getUsername());
-            boolean sent = emailService.sendEmail(user.getEmail(), subject, body);
-            
-            if (sent) {
-                // Update the last sent time
-                recentlySentCodes.put(user.getEmail(), currentTime);
-                logger.info("Successfully sent verification code to user: {}", user.getUsername());
-                return true;
-            } else {
-                logger.error("Email service failed to send verification code to user: {}", user.getUsername());
-                return false;
-            }
+
+            // Sent asynchronously: the cooldown starts when the code is queued and is lifted again
+            // if delivery fails, so the user can ask for another one straight away
+            recentlySentCodes.put(user.getEmail(), currentTime);
+            emailService.sendEmailAsync(user.getEmail(), subject, body).thenAccept(sent -> {
+                if (sent) {
+                    logger.info("Successfully sent verification code to user: {}", user.getUsername());
+                } else {
+                    recentlySentCodes.remove(user.getEmail(), currentTime);
+                    logger.error("Email service failed to send verification code to user: {}", user.getUsername());
+                }
+            });
+            return true;
         } catch (Exception e) {
             logger.error("Exception occurred while sending verification code to user: {}", user.getUsername(), e);
             return false;
@@ -1,26 +1,122 @@
 package com.safechat.secure_messaging.service;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class TypingStatusService {
-    private final Map<String, String> typingUsers = new ConcurrentHashMap<>();
+    // (sender, receiver) -> typing state; keystrokes for the same pair are coalesced here
+    private final Map<TypingPair, TypingState> typingPairs = new ConcurrentHashMap<>();
+
+    private final WebSocketSessionRegistry sessionRegistry;
+
+    // A pair stops typing if no keystroke arrives within this window
+    @Value("${app.typing.ttl-ms:5000}")
+    private long typingTtlMs;
+
+    // Minimum gap between two forwarded "typing" events for the same pair
+    @Value("${app.typing.throttle-ms:3000}")
+    private long throttleMs;
+
+    public TypingStatusService(WebSocketSessionRegistry sessionRegistry) {
+        this.sessionRegistry = sessionRegistry;
+    }
 
+    // Record a keystroke; only the first one and one per throttle window are forwarded
     public void setTyping(String senderId, String receiverId) {
-        typingUsers.put(senderId, receiverId);
+        if (senderId == null || receiverId == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        boolean[] forward = {false};
+
+        typingPairs.compute(new TypingPair(senderId, receiverId), (pair, state) -> {
+            if (state == null) {
+                forward[0] = true;
+                return new TypingState(now);
+            }
+            state.lastKeystroke = now;
+            if (now - state.lastForwarded >= throttleMs) {
+                state.lastForwarded = now;
+                forward[0] = true;
+            }
+            return state;
+        });
+
+        if (forward[0]) {
+            publish(senderId, receiverId, true);
+        }
+    }
+
+    public void removeTyping(String senderId, String receiverId) {
+        if (senderId == null || receiverId == null) {
+            return;
+        }
+        if (typingPairs.remove(new TypingPair(senderId, receiverId)) != null) {
+            publish(senderId, receiverId, false);
+        }
     }
 
+    // Stop every typing indicator of a sender (e.g. when their last socket closes)
     public void removeTyping(String senderId) {
-        typingUsers.remove(senderId);
+        if (senderId == null) {
+            return;
+        }
+        Iterator<TypingPair> pairs = typingPairs.keySet().iterator();
+        while (pairs.hasNext()) {
+            TypingPair pair = pairs.next();
+            if (pair.senderId().equals(senderId)) {
+                pairs.remove();
+                publish(pair.senderId(), pair.receiverId(), false);
+            }
+        }
     }
 
     public String getTypingUser(String receiverId) {
-        return typingUsers.entrySet().stream()
-            .filter(entry -> entry.getValue().equals(receiverId))
-            .map(Map.Entry::getKey)
+        long cutoff = System.currentTimeMillis() - typingTtlMs;
+        return typingPairs.entrySet().stream()
+            .filter(entry -> entry.getKey().receiverId().equals(receiverId))
+            .filter(entry -> entry.getValue().lastKeystroke >= cutoff)
+            .map(entry -> entry.getKey().senderId())
             .findFirst()
             .orElse(null);
     }
+
+    // Clients that vanish without a "stopped" event still get their indicator cleared
+    @Scheduled(fixedDelayString = "${app.typing.sweep-ms:1000}")
+    public void expireStaleTyping() {
+        long cutoff = System.currentTimeMillis() - typingTtlMs;
+        for (Map.Entry<TypingPair, TypingState> entry : typingPairs.entrySet()) {
+            if (entry.getValue().lastKeystroke < cutoff
+                    && typingPairs.remove(entry.getKey(), entry.getValue())) {
+                publish(entry.getKey().senderId(), entry.getKey().receiverId(), false);
+            }
+        }
+    }
+
+    private void publish(String senderId, String receiverId, boolean typing) {
+        sessionRegistry.sendToUser(receiverId, Map.of(
+            "type", "typing_indicator",
+            "senderId", senderId,
+            "isTyping", typing
+        ));
+    }
+
+    private record TypingPair(String senderId, String receiverId) {
+    }
+
+    private static final class TypingState {
+        private volatile long lastKeystroke;
+        private volatile long lastForwarded;
+
+        private TypingState(long now) {
+            this.lastKeystroke = now;
+            this.lastForwarded = now;
+        }
+    }
 }
@@ -0,0 +1,184 @@
+package com.safechat.secure_messaging.service;
+
+import com.safechat.secure_messaging.repository.ConversationRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Per-user unread total kept in memory, so badge reads and pushes don't touch the database.
+// Loaded lazily from the conversation counters; deltas are applied only after the
+// transaction that caused them commits, so a rollback can't leave the cache ahead of the table.
+//
+// A load races with changes committing while it reads: the sum it reads may already include a
+// message whose delta is still to be applied. Each change bumps a version for the user's stripe
+// from the moment it is registered until its transaction completes, and a load only caches its
+// value if the stripe was quiet and its version unchanged across the read. Otherwise the value is
+// returned but not kept. The cache holds at most app.unread.cache-size users, least recently read
+// evicted first.
+@Service
+public class UnreadCountService {
+
+    private static final int STRIPES = 1024;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // All three guarded by lock
+    private final Map<UUID, Long> counts;
+    private final long[] versions = new long[STRIPES];
+    private final int[] inFlight = new int[STRIPES];
+
+    private final ConversationRepository conversationRepository;
+    private final WebSocketSessionRegistry sessionRegistry;
+
+    public UnreadCountService(ConversationRepository conversationRepository,
+                              WebSocketSessionRegistry sessionRegistry,
+                              @Value("${app.unread.cache-size:100000}") int cacheSize) {
+        this.conversationRepository = conversationRepository;
+        this.sessionRegistry = sessionRegistry;
+        this.counts = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Long> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    public long getUnreadCount(UUID userId) {
+        int stripe = stripe(userId);
+        long version;
+        lock.lock();
+        try {
+            Long cached = counts.get(userId);
+            if (cached != null) {
+                return cached;
+            }
+            version = inFlight[stripe] == 0 ? versions[stripe] : -1;
+        } finally {
+            lock.unlock();
+        }
+
+        long loaded = conversationRepository.sumUnreadByOwnerId(userId);
+
+        lock.lock();
+        try {
+            if (version >= 0 && inFlight[stripe] == 0 && versions[stripe] == version) {
+                counts.put(userId, loaded);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return loaded;
+    }
+
+    public void adjust(UUID userId, long delta) {
+        if (delta == 0) {
+            return;
+        }
+        afterCommit(userId, () -> {
+            Long updated;
+            lock.lock();
+            try {
+                Long count = counts.get(userId);
+                // Not cached: nothing to correct, the next read loads the committed value
+                updated = count == null ? null : Math.max(0, count + delta);
+                if (updated != null) {
+                    counts.put(userId, updated);
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (updated != null) {
+                push(userId, updated);
+            } else {
+                push(userId);
+            }
+        });
+    }
+
+    // For changes that were recomputed rather than applied as a delta (purges, deletes, revokes)
+    public void invalidate(UUID userId) {
+        afterCommit(userId, () -> {
+            lock.lock();
+            try {
+                counts.remove(userId);
+            } finally {
+                lock.unlock();
+            }
+            push(userId);
+        });
+    }
+
+    // Send the current value to a user who just connected
+    public void pushCurrent(UUID userId) {
+        push(userId);
+    }
+
+    private void push(UUID userId) {
+        // Offline users get nothing, so don't reload their count just to drop it
+        if (sessionRegistry.isOnline(userId.toString())) {
+            push(userId, getUnreadCount(userId));
+        }
+    }
+
+    private void push(UUID userId, long count) {
+        sessionRegistry.sendToUser(userId.toString(), Map.of(
+                "type", "unread_count",
+                "unreadCount", count));
+    }
+
+    // Runs action once the current transaction commits (at once without one), keeping the user's
+    // stripe marked as changing until then so concurrent loads don't cache what they read
+    private void afterCommit(UUID userId, Runnable action) {
+        int stripe = stripe(userId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            begin(stripe);
+            try {
+                action.run();
+            } finally {
+                end(stripe);
+            }
+            return;
+        }
+        begin(stripe);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                end(stripe);
+            }
+        });
+    }
+
+    private void begin(int stripe) {
+        lock.lock();
+        try {
+            inFlight[stripe]++;
+            versions[stripe]++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void end(int stripe) {
+        lock.lock();
+        try {
+            inFlight[stripe]--;
+            versions[stripe]++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static int stripe(UUID userId) {
+        return (userId.hashCode() & Integer.MAX_VALUE) % STRIPES;
+    }
+}
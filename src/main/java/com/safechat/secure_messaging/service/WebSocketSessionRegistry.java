@@ -0,0 +1,101 @@
+package com.safechat.secure_messaging.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+public class WebSocketSessionRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketSessionRegistry.class);
+
+    // A slow client gets dropped instead of blocking the sender thread
+    private static final int SEND_TIME_LIMIT_MS = 5000;
+    private static final int BUFFER_SIZE_LIMIT = 64 * 1024;
+
+    // userId -> (sessionId -> thread-safe session); one user can have several tabs/devices open
+    private final Map<String, Map<String, WebSocketSession>> sessionsByUser = new ConcurrentHashMap<>();
+
+    // Connected admins receive the live dashboard feed
+    private final Set<String> adminUserIds = ConcurrentHashMap.newKeySet();
+
+    private final ObjectMapper objectMapper;
+
+    public WebSocketSessionRegistry(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public void register(String userId, boolean admin, WebSocketSession session) {
+        WebSocketSession concurrentSession =
+                new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS, BUFFER_SIZE_LIMIT);
+        sessionsByUser.computeIfAbsent(userId, id -> new ConcurrentHashMap<>())
+                .put(session.getId(), concurrentSession);
+        if (admin) {
+            adminUserIds.add(userId);
+        }
+    }
+
+    public void unregister(String userId, WebSocketSession session) {
+        sessionsByUser.computeIfPresent(userId, (id, sessions) -> {
+            sessions.remove(session.getId());
+            return sessions.isEmpty() ? null : sessions;
+        });
+        if (!sessionsByUser.containsKey(userId)) {
+            adminUserIds.remove(userId);
+        }
+    }
+
+    public boolean hasAdminSessions() {
+        return !adminUserIds.isEmpty();
+    }
+
+    public void sendToAdmins(Map<String, Object> payload) {
+        for (String adminUserId : adminUserIds) {
+            sendToUser(adminUserId, payload);
+        }
+    }
+
+    public boolean isOnline(String userId) {
+        return sessionsByUser.containsKey(userId);
+    }
+
+    // Push a JSON event to every open session of a user; no-op if the user is offline
+    public void sendToUser(String userId, Map<String, Object> payload) {
+        Map<String, WebSocketSession> sessions = sessionsByUser.get(userId);
+        if (sessions == null || sessions.isEmpty()) {
+            return;
+        }
+
+        TextMessage message;
+        try {
+            message = new TextMessage(objectMapper.writeValueAsString(payload));
+        } catch (Exception e) {
+            logger.error("Failed to serialize WebSocket payload for user {}", userId, e);
+            return;
+        }
+
+        for (WebSocketSession session : sessions.values()) {
+            send(userId, session, message);
+        }
+    }
+
+    private void send(String userId, WebSocketSession session, TextMessage message) {
+        if (!session.isOpen()) {
+            unregister(userId, session);
+            return;
+        }
+        try {
+            session.sendMessage(message);
+        } catch (Exception e) {
+            logger.warn("Dropping WebSocket session {} for user {}: {}", session.getId(), userId, e.getMessage());
+            unregister(userId, session);
+        }
+    }
+}
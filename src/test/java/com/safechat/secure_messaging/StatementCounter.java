@@ -0,0 +1,29 @@
+package com.safechat.secure_messaging;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+// Hibernate hook that counts the SQL statements prepared on the current thread.
+// Thread-local so scheduled jobs running in the background don't skew the count.
+public class StatementCounter implements StatementInspector {
+
+    private static final ThreadLocal<Integer> COUNT = new ThreadLocal<>();
+
+    public static void start() {
+        COUNT.set(0);
+    }
+
+    public static int stop() {
+        Integer count = COUNT.get();
+        COUNT.remove();
+        return count == null ? 0 : count;
+    }
+
+    @Override
+    public String inspect(String sql) {
+        Integer count = COUNT.get();
+        if (count != null) {
+            COUNT.set(count + 1);
+        }
+        return sql;
+    }
+}
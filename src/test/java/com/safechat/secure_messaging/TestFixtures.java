@@ -0,0 +1,94 @@
+package com.safechat.secure_messaging;
+
+import com.safechat.secure_messaging.model.Message;
+import com.safechat.secure_messaging.model.User;
+import com.safechat.secure_messaging.model.UserRoles;
+import com.safechat.secure_messaging.repository.AttachmentRepository;
+import com.safechat.secure_messaging.repository.ConversationRepository;
+import com.safechat.secure_messaging.repository.MessageRepository;
+import com.safechat.secure_messaging.repository.UserRepository;
+import com.safechat.secure_messaging.service.EncryptionService;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Set;
+
+// Users and messages for the integration tests, and the cleanup that resets them between tests.
+// Picked up by component scanning, so any @SpringBootTest can autowire it.
+@Component
+public class TestFixtures {
+
+    private final UserRepository userRepository;
+    private final MessageRepository messageRepository;
+    private final ConversationRepository conversationRepository;
+    private final AttachmentRepository attachmentRepository;
+    private final EncryptionService encryptionService;
+
+    public TestFixtures(UserRepository userRepository,
+                        MessageRepository messageRepository,
+                        ConversationRepository conversationRepository,
+                        AttachmentRepository attachmentRepository,
+                        EncryptionService encryptionService) {
+        this.userRepository = userRepository;
+        this.messageRepository = messageRepository;
+        this.conversationRepository = conversationRepository;
+        this.attachmentRepository = attachmentRepository;
+        this.encryptionService = encryptionService;
+    }
+
+    // Deletes attachments, conversations, messages and users, children first
+    public void clear() {
+        attachmentRepository.deleteAll();
+        conversationRepository.deleteAll();
+        messageRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    public User createUser(String username) {
+        return createUser(username, UserRoles.ROLE_USER);
+    }
+
+    public User createUser(String username, String role) {
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(username + "@example.com");
+        user.setPassword("not-a-real-hash");
+        user.setRoles(Set.of(role));
+        return userRepository.save(user);
+    }
+
+    // The create*Message methods return unsaved messages, so callers can adjust them or save in bulk
+
+    public Message createMessage(User sender, User receiver) {
+        return createMessage(sender, receiver, LocalDateTime.now());
+    }
+
+    public Message createMessage(User sender, User receiver, LocalDateTime timestamp) {
+        return message(sender, receiver, "hello " + receiver.getUsername(), null, timestamp);
+    }
+
+    public Message createMessage(User sender, User receiver, String text) {
+        return message(sender, receiver, text, null, LocalDateTime.now());
+    }
+
+    // Encrypted under a data key of its own rather than the master key
+    public Message createMessageWithOwnKey(User sender, User receiver) {
+        return message(sender, receiver, "hello " + receiver.getUsername(), encryptionService.generateKey(),
+                LocalDateTime.now());
+    }
+
+    private Message message(User sender, User receiver, String text, String keyId, LocalDateTime timestamp) {
+        Map<String, String> encrypted = encryptionService.encrypt(text, keyId);
+
+        Message message = new Message();
+        message.setSender(sender);
+        message.setReceiver(receiver);
+        message.setContent(encrypted.get("encryptedContent"));
+        message.setIv(encrypted.get("iv"));
+        message.setKeyId(encrypted.get("keyId"));
+        message.setCompressed(Boolean.parseBoolean(encrypted.get("compressed")));
+        message.setTimestamp(timestamp);
+        return message;
+    }
+}
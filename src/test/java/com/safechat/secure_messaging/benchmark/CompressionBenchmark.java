@@ -0,0 +1,143 @@
+package com.safechat.secure_messaging.benchmark;
+
+import com.safechat.secure_messaging.service.EncryptionService;
+import com.safechat.secure_messaging.service.MasterKeyRing;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost versus stored bytes of compressing before encryption.
+ *
+ * Each payload/level combination prints its ciphertext size with and without compression at setup,
+ * and the benchmarks time encrypt and decrypt for both. Run with:
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=com.safechat.secure_messaging.benchmark.CompressionBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+    private static final String MASTER_KEY = "MDEyMzQ1Njc4OWFiY2RlZjAxMjM0NTY3ODlhYmNkZWY=";
+
+    @Param({"chat", "log", "json", "random"})
+    public String payload;
+
+    @Param({"1", "6", "9"})
+    public int level;
+
+    private EncryptionService compressing;
+    private EncryptionService plain;
+    private String plaintext;
+    private EncryptionService.EncryptedBytes compressedCiphertext;
+    private EncryptionService.EncryptedBytes plainCiphertext;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        plaintext = switch (payload) {
+            case "chat" -> chat();
+            case "log" -> log();
+            case "json" -> json();
+            default -> random();
+        };
+        // Null key ids encrypt under the master key, so no key repository is needed
+        MasterKeyRing masterKeys = new MasterKeyRing(MASTER_KEY, 1, "");
+        compressing = new EncryptionService(null, masterKeys, new SimpleMeterRegistry(), 0, level, 16 * 1024 * 1024, 0);
+        plain = new EncryptionService(null, masterKeys, new SimpleMeterRegistry(), -1, level, 16 * 1024 * 1024, 0);
+        compressedCiphertext = compressing.encryptToBytes(plaintext, null);
+        plainCiphertext = plain.encryptToBytes(plaintext, null);
+        System.out.printf("%n%s @ level %d: plaintext %d B, ciphertext %d B uncompressed, %d B compressed (%.1f%%)%n",
+                payload, level, plaintext.length(), plainCiphertext.content().length,
+                compressedCiphertext.content().length,
+                100.0 * compressedCiphertext.content().length / plainCiphertext.content().length);
+    }
+
+    @Benchmark
+    public EncryptionService.EncryptedBytes encryptCompressed() {
+        return compressing.encryptToBytes(plaintext, null);
+    }
+
+    @Benchmark
+    public EncryptionService.EncryptedBytes encryptUncompressed() {
+        return plain.encryptToBytes(plaintext, null);
+    }
+
+    @Benchmark
+    public String decryptCompressed() {
+        return compressing.decrypt(compressedCiphertext.content(), compressedCiphertext.iv(), "master",
+                compressedCiphertext.compressed());
+    }
+
+    @Benchmark
+    public String decryptUncompressed() {
+        return plain.decrypt(plainCiphertext.content(), plainCiphertext.iv(), "master", false);
+    }
+
+    // A typical short message, below the default threshold
+    private static String chat() {
+        return "Running 10 minutes late, grab us a table by the window if you can?";
+    }
+
+    // A pasted stack trace and log tail, about 16 KB
+    private static String log() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 16 * 1024; i++) {
+            sb.append("2026-03-14T09:12:").append(String.format("%02d", i % 60)).append(".").append(100 + i % 900)
+              .append("Z  INFO 4242 --- [nio-8080-exec-").append(i % 10).append("] c.s.s.controller.MessageController")
+              .append("       : Sent message to user ").append(i * 7919 % 10007).append('\n');
+            if (i % 25 == 0) {
+                sb.append("java.lang.IllegalStateException: Recipient not found\n")
+                  .append("\tat com.safechat.secure_messaging.controller.MessageController.sendMessage(MessageController.java:297)\n")
+                  .append("\tat java.base/jdk.internal.reflect.DirectMethodHandleAccessor.invoke(DirectMethodHandleAccessor.java:103)\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    // A pasted API response, about 8 KB
+    private static String json() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; sb.length() < 8 * 1024; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":").append(i).append(",\"username\":\"user").append(i * 31 % 997)
+              .append("\",\"online\":").append(i % 3 == 0).append(",\"lastSeen\":\"2026-03-14T09:")
+              .append(String.format("%02d", i % 60)).append(":00Z\"}");
+        }
+        return sb.append(']').toString();
+    }
+
+    // Base64 of random bytes, which compresses poorly (about 8 KB)
+    private static String random() {
+        byte[] bytes = new byte[6 * 1024];
+        new SecureRandom().nextBytes(bytes);
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CompressionBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,133 @@
+package com.safechat.secure_messaging.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LimitedDataSourceTest {
+
+    private final DataSource target = mock(DataSource.class);
+    private final Connection pooled = mock(Connection.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    LimitedDataSourceTest() throws SQLException {
+        when(target.getConnection()).thenReturn(pooled);
+    }
+
+    @Test
+    void closeReturnsThePermitOnce() throws SQLException {
+        LimitedDataSource dataSource = limited(2, 10, 100);
+        Connection connection = dataSource.getConnection();
+        assertThat(available()).isEqualTo(1.0);
+
+        connection.close();
+        connection.close();
+
+        assertThat(available()).isEqualTo(2.0);
+        verify(pooled, times(2)).close();
+    }
+
+    @Test
+    void failsAtOnceWhenTheQueueIsFull() throws SQLException {
+        LimitedDataSource dataSource = limited(1, 0, 10_000);
+        dataSource.getConnection();
+
+        long start = System.nanoTime();
+        assertThatThrownBy(dataSource::getConnection)
+                .isInstanceOf(SQLTransientConnectionException.class)
+                .hasMessageContaining("Too many threads waiting");
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1_000);
+    }
+
+    @Test
+    void waitsAtMostTheAcquireTimeout() throws SQLException {
+        LimitedDataSource dataSource = limited(1, 10, 50);
+        dataSource.getConnection();
+
+        assertThatThrownBy(dataSource::getConnection)
+                .isInstanceOf(SQLTransientConnectionException.class)
+                .hasMessageContaining("Timed out after 50 ms");
+        assertThat(available()).isEqualTo(0.0);
+    }
+
+    @Test
+    void waiterGetsThePermitWhenAConnectionCloses() throws Exception {
+        LimitedDataSource dataSource = limited(1, 10, 5_000);
+        Connection first = dataSource.getConnection();
+
+        CompletableFuture<Connection> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return dataSource.getConnection();
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        first.close();
+
+        assertThat(waiter.get(5, TimeUnit.SECONDS)).isNotNull();
+        assertThat(available()).isEqualTo(0.0);
+    }
+
+    @Test
+    void failedPoolCheckoutReturnsThePermit() throws SQLException {
+        when(target.getConnection()).thenThrow(new SQLException("pool exhausted"));
+        LimitedDataSource dataSource = limited(1, 10, 100);
+
+        assertThatThrownBy(dataSource::getConnection).hasMessage("pool exhausted");
+        assertThat(available()).isEqualTo(1.0);
+    }
+
+    @Test
+    void proxiesHaveTheirOwnIdentity() throws SQLException {
+        LimitedDataSource dataSource = limited(2, 10, 100);
+        // Both handles wrap the same pooled connection
+        Connection first = dataSource.getConnection();
+        Connection second = dataSource.getConnection();
+
+        assertThat(first).isEqualTo(first);
+        assertThat(first).isNotEqualTo(second);
+        assertThat(first).isNotEqualTo(pooled);
+        assertThat(first.hashCode()).isEqualTo(System.identityHashCode(first));
+
+        Set<Connection> open = new HashSet<>(Set.of(first, second));
+        first.close();
+        assertThat(open.remove(first)).isTrue();
+        assertThat(open).containsExactly(second);
+    }
+
+    @Test
+    void otherCallsReachThePooledConnection() throws SQLException {
+        when(pooled.getAutoCommit()).thenReturn(false);
+        when(pooled.prepareStatement("SELECT 1")).thenThrow(new SQLException("closed"));
+        Connection connection = limited(1, 10, 100).getConnection();
+
+        assertThat(connection.getAutoCommit()).isFalse();
+        // The driver's own exception, not the reflective wrapper
+        assertThatThrownBy(() -> connection.prepareStatement("SELECT 1"))
+                .isInstanceOf(SQLException.class)
+                .hasMessage("closed");
+    }
+
+    private LimitedDataSource limited(int permits, int maxWaiting, long acquireTimeoutMs) {
+        return new LimitedDataSource(target, "test", permits, maxWaiting, acquireTimeoutMs, meterRegistry);
+    }
+
+    private double available() {
+        return meterRegistry.get("safechat.datasource.limiter.available").gauge().value();
+    }
+}
@@ -0,0 +1,51 @@
+package com.safechat.secure_messaging.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class WorkloadRoutingDataSourceTest {
+
+    private final HikariDataSource interactive = mock(HikariDataSource.class);
+    private final HikariDataSource jobs = mock(HikariDataSource.class);
+    private final HikariDataSource audit = mock(HikariDataSource.class);
+
+    @Test
+    void destroyClosesEveryPoolBehindItsLimiter() throws Exception {
+        WorkloadRoutingDataSource dataSource = routing();
+
+        dataSource.destroy();
+
+        verify(interactive).close();
+        verify(jobs).close();
+        verify(audit).close();
+    }
+
+    @Test
+    void onePoolFailingToCloseDoesNotKeepTheOthersOpen() {
+        doThrow(new IllegalStateException("close failed")).when(interactive).close();
+        WorkloadRoutingDataSource dataSource = routing();
+
+        assertThatThrownBy(dataSource::destroy).hasMessage("close failed");
+        verify(jobs).close();
+        verify(audit).close();
+    }
+
+    private WorkloadRoutingDataSource routing() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        WorkloadRoutingDataSource dataSource = new WorkloadRoutingDataSource();
+        dataSource.setTargetDataSources(Map.of(
+                Workload.INTERACTIVE, new LimitedDataSource(interactive, "interactive", 8, 10, 100, meterRegistry),
+                Workload.JOBS, new LimitedDataSource(jobs, "jobs", 2, 10, 100, meterRegistry),
+                Workload.AUDIT, audit));
+        dataSource.afterPropertiesSet();
+        return dataSource;
+    }
+}
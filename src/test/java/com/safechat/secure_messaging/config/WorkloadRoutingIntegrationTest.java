@@ -0,0 +1,190 @@
+package com.safechat.secure_messaging.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Which pool a caller's connection comes from: @Scheduled methods use JOBS, @DatabaseWorkload
+ * on a method or bean uses the workload it names (also for a @Transactional method, whose
+ * connection is taken inside the routing), and @Async methods use INTERACTIVE unless marked,
+ * whatever the caller's workload.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@TestPropertySource(properties = {
+        // Own database: the probe beans below make this a context of its own
+        "spring.datasource.url=jdbc:h2:mem:safechat-routing;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;"
+                + "DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1"
+})
+class WorkloadRoutingIntegrationTest {
+
+    @Autowired
+    private Probe probe;
+
+    @Autowired
+    private JobsProbe jobsProbe;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @TestConfiguration
+    static class ProbeConfig {
+        @Bean
+        Probe probe(DataSource dataSource, JdbcTemplate jdbcTemplate) {
+            return new Probe(dataSource, jdbcTemplate);
+        }
+
+        @Bean
+        JobsProbe jobsProbe(DataSource dataSource) {
+            return new JobsProbe(dataSource);
+        }
+    }
+
+    // Each method takes one connection from the routing DataSource and reports the workload it ran as
+    static class Probe {
+        private final DataSource dataSource;
+        private final JdbcTemplate jdbcTemplate;
+
+        Probe(DataSource dataSource, JdbcTemplate jdbcTemplate) {
+            this.dataSource = dataSource;
+            this.jdbcTemplate = jdbcTemplate;
+        }
+
+        public Workload plain() {
+            return connect(dataSource);
+        }
+
+        // Far enough out that the scheduler never runs it during the test
+        @Scheduled(initialDelay = 1, fixedDelay = 1, timeUnit = TimeUnit.DAYS)
+        public Workload scheduled() {
+            return connect(dataSource);
+        }
+
+        @DatabaseWorkload(Workload.AUDIT)
+        public Workload audit() {
+            return connect(dataSource);
+        }
+
+        @DatabaseWorkload(Workload.JOBS)
+        @Transactional
+        public Workload transactionalJob() {
+            jdbcTemplate.queryForObject("SELECT 1", Integer.class);
+            return Workload.current();
+        }
+
+        @Async
+        public CompletableFuture<Workload> async() {
+            return CompletableFuture.completedFuture(connect(dataSource));
+        }
+
+        @Async
+        @DatabaseWorkload(Workload.JOBS)
+        public CompletableFuture<Workload> asyncJob() {
+            return CompletableFuture.completedFuture(connect(dataSource));
+        }
+    }
+
+    @DatabaseWorkload(Workload.JOBS)
+    static class JobsProbe {
+        private final DataSource dataSource;
+
+        JobsProbe(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        public Workload run() {
+            return connect(dataSource);
+        }
+    }
+
+    @Test
+    void unmarkedCallsUseTheInteractivePool() {
+        long before = acquired(Workload.INTERACTIVE);
+
+        assertThat(probe.plain()).isEqualTo(Workload.INTERACTIVE);
+        assertThat(acquired(Workload.INTERACTIVE)).isEqualTo(before + 1);
+    }
+
+    @Test
+    void scheduledMethodsUseTheJobsPool() {
+        long before = acquired(Workload.JOBS);
+
+        assertThat(probe.scheduled()).isEqualTo(Workload.JOBS);
+        assertThat(acquired(Workload.JOBS)).isEqualTo(before + 1);
+        // Back to the caller's workload afterwards
+        assertThat(Workload.current()).isEqualTo(Workload.INTERACTIVE);
+    }
+
+    @Test
+    void annotatedMethodsAndBeansUseTheirWorkloadsPool() {
+        long auditBefore = acquired(Workload.AUDIT);
+        long jobsBefore = acquired(Workload.JOBS);
+
+        assertThat(probe.audit()).isEqualTo(Workload.AUDIT);
+        assertThat(jobsProbe.run()).isEqualTo(Workload.JOBS);
+
+        assertThat(acquired(Workload.AUDIT)).isEqualTo(auditBefore + 1);
+        assertThat(acquired(Workload.JOBS)).isEqualTo(jobsBefore + 1);
+    }
+
+    @Test
+    void transactionTakesItsConnectionFromTheAnnotatedPool() {
+        long jobsBefore = acquired(Workload.JOBS);
+        long interactiveBefore = acquired(Workload.INTERACTIVE);
+
+        assertThat(probe.transactionalJob()).isEqualTo(Workload.JOBS);
+
+        assertThat(acquired(Workload.JOBS)).isGreaterThan(jobsBefore);
+        assertThat(acquired(Workload.INTERACTIVE)).isEqualTo(interactiveBefore);
+    }
+
+    @Test
+    void asyncMethodsUseTheInteractivePoolUnlessMarked() throws Exception {
+        long interactiveBefore = acquired(Workload.INTERACTIVE);
+        long jobsBefore = acquired(Workload.JOBS);
+
+        // The caller's workload stays on the caller's thread
+        CompletableFuture<Workload> unmarked = Workload.JOBS.call(probe::async);
+        assertThat(unmarked.get(5, TimeUnit.SECONDS)).isEqualTo(Workload.INTERACTIVE);
+        assertThat(acquired(Workload.INTERACTIVE)).isEqualTo(interactiveBefore + 1);
+
+        assertThat(probe.asyncJob().get(5, TimeUnit.SECONDS)).isEqualTo(Workload.JOBS);
+        assertThat(acquired(Workload.JOBS)).isEqualTo(jobsBefore + 1);
+    }
+
+    private static Workload connect(DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.isValid(1);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+        return Workload.current();
+    }
+
+    // Connections handed out by the workload's Hikari pool so far
+    private long acquired(Workload workload) {
+        Timer timer = meterRegistry.find("hikaricp.connections.acquire")
+                .tag("pool", "safechat-" + workload.poolName())
+                .timer();
+        return timer != null ? timer.count() : 0;
+    }
+}
@@ -0,0 +1,300 @@
+package com.safechat.secure_messaging.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safechat.secure_messaging.TestFixtures;
+import com.safechat.secure_messaging.model.Message;
+import com.safechat.secure_messaging.model.User;
+import com.safechat.secure_messaging.repository.AttachmentRepository;
+import com.safechat.secure_messaging.repository.MessageRepository;
+import com.safechat.secure_messaging.model.Attachment;
+import com.safechat.secure_messaging.service.AttachmentService;
+import com.safechat.secure_messaging.service.EncryptionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Round trips a multi-chunk attachment through upload, full download and a range that
+ * spans a chunk boundary, and checks that tampered or cut files, outsiders and a second
+ * read-once download are all refused.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class AttachmentIntegrationTest {
+
+    // Default chunk size is 64 KiB, so this is three full chunks and a partial one
+    private static final int FILE_SIZE = 3 * 65536 + 1234;
+    // A chunk on disk: plaintext plus the 16-byte GCM tag
+    private static final int SEALED_CHUNK = 65536 + 16;
+    private static final Path STORE = Path.of("target/test-attachments");
+
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private AttachmentRepository attachmentRepository;
+
+    @Autowired
+    private EncryptionService encryptionService;
+
+    @Autowired
+    private AttachmentService attachmentService;
+
+    private Message message;
+    private byte[] file;
+
+    @BeforeEach
+    void setUp() {
+        fixtures.clear();
+
+        User alice = fixtures.createUser("alice");
+        User bob = fixtures.createUser("bob");
+
+        String keyId = encryptionService.generateKey();
+        EncryptionService.EncryptedBytes encrypted = encryptionService.encryptToBytes("see attached", keyId);
+        Message sent = new Message();
+        sent.setSender(alice);
+        sent.setReceiver(bob);
+        sent.setCiphertext(encrypted.content(), encrypted.iv());
+        sent.setKeyId(keyId);
+        sent.setTimestamp(LocalDateTime.now());
+        message = messageRepository.save(sent);
+
+        file = new byte[FILE_SIZE];
+        new Random(42).nextBytes(file);
+        fixtures.createUser("carol");
+    }
+
+
+    @Test
+    @WithMockUser(username = "bob")
+    void receiverDownloadsWhatTheSenderUploaded() throws Exception {
+        String attachmentId = uploadAsAlice();
+
+        MvcResult download = mockMvc.perform(get(attachmentUrl(attachmentId))).andReturn();
+        byte[] body = mockMvc.perform(asyncDispatch(download))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Accept-Ranges", "bytes"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertThat(body).isEqualTo(file);
+    }
+
+    @Test
+    @WithMockUser(username = "bob")
+    void rangeAcrossAChunkBoundaryDecryptsOnlyThatSlice() throws Exception {
+        String attachmentId = uploadAsAlice();
+        int start = 65536 - 100;
+        int end = 2 * 65536 + 100;
+
+        MvcResult download = mockMvc.perform(get(attachmentUrl(attachmentId))
+                .header("Range", "bytes=" + start + "-" + end)).andReturn();
+        byte[] body = mockMvc.perform(asyncDispatch(download))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Range", "bytes " + start + "-" + end + "/" + FILE_SIZE))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertThat(body).isEqualTo(Arrays.copyOfRange(file, start, end + 1));
+    }
+
+    @Test
+    @WithMockUser(username = "bob")
+    void tamperedChunkFailsTheDownload() throws Exception {
+        String attachmentId = uploadAsAlice();
+        try (RandomAccessFile stored = new RandomAccessFile(storedFile(attachmentId).toFile(), "rw")) {
+            long position = SEALED_CHUNK + 100;
+            stored.seek(position);
+            int original = stored.read();
+            stored.seek(position);
+            stored.write(original ^ 0x01);
+        }
+
+        assertDownloadFails(attachmentId);
+    }
+
+    @Test
+    @WithMockUser(username = "bob")
+    void truncatedFileFailsTheDownload() throws Exception {
+        String attachmentId = uploadAsAlice();
+        truncate(storedFile(attachmentId), Files.size(storedFile(attachmentId)) - 10);
+
+        assertDownloadFails(attachmentId);
+    }
+
+    @Test
+    @WithMockUser(username = "bob")
+    void droppedFinalChunkIsDetectedEvenWithAMatchingSize() throws Exception {
+        String attachmentId = uploadAsAlice();
+        // Cut the file and its recorded size back to three full chunks: the third was sealed
+        // as a middle chunk, so it must not open as the final one
+        truncate(storedFile(attachmentId), 3L * SEALED_CHUNK);
+        Attachment attachment = attachmentRepository.findById(UUID.fromString(attachmentId)).orElseThrow();
+        attachment.setSize(3L * 65536);
+        attachmentRepository.save(attachment);
+
+        assertDownloadFails(attachmentId);
+    }
+
+    @Test
+    @WithMockUser(username = "carol")
+    void nonParticipantCannotListOrDownload() throws Exception {
+        String attachmentId = uploadAsAlice();
+
+        mockMvc.perform(get("/api/messages/" + message.getId() + "/attachments"))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get(attachmentUrl(attachmentId)))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    @WithMockUser(username = "bob")
+    void readOnceAttachmentDownloadsOnlyOnce() throws Exception {
+        message.setReadOnce(true);
+        message = messageRepository.save(message);
+        String attachmentId = uploadAsAlice();
+
+        MvcResult first = mockMvc.perform(get(attachmentUrl(attachmentId))).andReturn();
+        byte[] body = mockMvc.perform(asyncDispatch(first))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Accept-Ranges", "none"))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertThat(body).isEqualTo(file);
+
+        // Deleted once streamed
+        mockMvc.perform(get(attachmentUrl(attachmentId))).andExpect(status().isNotFound());
+        assertThat(attachmentRepository.findById(UUID.fromString(attachmentId))).isEmpty();
+        assertThat(findStoredFile(attachmentId)).isNull();
+    }
+
+    @Test
+    @WithMockUser(username = "bob")
+    void readOnceDownloadStillStreamingShutsOutASecondOne() throws Exception {
+        message.setReadOnce(true);
+        message = messageRepository.save(message);
+        String attachmentId = uploadAsAlice();
+        Attachment attachment = attachmentRepository.findById(UUID.fromString(attachmentId)).orElseThrow();
+
+        // The first download's claim, taken before it streams a byte
+        assertThat(attachmentService.claim(attachment)).isTrue();
+        assertThat(attachmentService.claim(attachment)).isFalse();
+
+        mockMvc.perform(get(attachmentUrl(attachmentId))).andExpect(status().isGone());
+    }
+
+    @Test
+    void senderCannotAttachToAnOpenedReadOnceMessage() throws Exception {
+        message.setReadOnce(true);
+        message.setRead(true);
+        message.setExpiresAt(LocalDateTime.now());
+        message = messageRepository.save(message);
+
+        mockMvc.perform(post("/api/messages/" + message.getId() + "/attachments")
+                        .param("fileName", "late.bin")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(file)
+                        .with(user("alice")))
+                .andExpect(status().isGone());
+        assertThat(attachmentRepository.count()).isZero();
+    }
+
+    @Test
+    void uploadForADeletedMessageLeavesNoFileBehind() throws Exception {
+        long filesBefore = countStoredFiles();
+
+        // What an upload racing a message delete sees at commit: the message row is gone
+        assertThatThrownBy(() -> attachmentService.upload(UUID.randomUUID(), message.getSender().getId(),
+                "orphan.bin", MediaType.APPLICATION_OCTET_STREAM_VALUE, new ByteArrayInputStream(file)))
+                .isInstanceOf(RuntimeException.class);
+
+        assertThat(attachmentRepository.count()).isZero();
+        assertThat(countStoredFiles()).isEqualTo(filesBefore);
+    }
+
+    // Headers are already sent when a chunk fails to open, so the stream itself errors out
+    private void assertDownloadFails(String attachmentId) throws Exception {
+        MvcResult download = mockMvc.perform(get(attachmentUrl(attachmentId))).andReturn();
+        assertThat(download.getAsyncResult()).isInstanceOf(Exception.class);
+    }
+
+    private Path storedFile(String attachmentId) throws IOException {
+        Path stored = findStoredFile(attachmentId);
+        assertThat(stored).isNotNull();
+        return stored;
+    }
+
+    private Path findStoredFile(String attachmentId) throws IOException {
+        try (Stream<Path> files = Files.walk(STORE)) {
+            return files.filter(path -> path.getFileName().toString().equals(attachmentId + ".bin"))
+                    .findFirst().orElse(null);
+        }
+    }
+
+    private long countStoredFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(STORE)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    private static void truncate(Path path, long length) throws IOException {
+        try (RandomAccessFile stored = new RandomAccessFile(path.toFile(), "rw")) {
+            stored.setLength(length);
+        }
+    }
+
+    private String uploadAsAlice() throws Exception {
+        MockHttpServletRequestBuilder upload = post("/api/messages/" + message.getId() + "/attachments")
+                .param("fileName", "photo.bin")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .content(file)
+                .with(user("alice"));
+        String response = mockMvc.perform(upload)
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        JsonNode created = objectMapper.readTree(response);
+        assertThat(created.path("size").asLong()).isEqualTo(FILE_SIZE);
+        return created.path("id").asText();
+    }
+
+    private String attachmentUrl(String attachmentId) {
+        return "/api/messages/" + message.getId() + "/attachments/" + attachmentId;
+    }
+}
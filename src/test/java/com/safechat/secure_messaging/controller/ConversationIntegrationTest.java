@@ -0,0 +1,119 @@
+package com.safechat.secure_messaging.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safechat.secure_messaging.TestFixtures;
+import com.safechat.secure_messaging.model.Conversation;
+import com.safechat.secure_messaging.model.User;
+import com.safechat.secure_messaging.repository.ConversationRepository;
+import com.safechat.secure_messaging.repository.MessageRepository;
+import com.safechat.secure_messaging.service.ConversationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Conversation summaries against the messages they're derived from: backfill and send.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class ConversationIntegrationTest {
+
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private ConversationRepository conversationRepository;
+
+    @Autowired
+    private ConversationService conversationService;
+
+    private User alice;
+    private User bob;
+
+    @BeforeEach
+    void setUp() {
+        fixtures.clear();
+        alice = fixtures.createUser("alice");
+        bob = fixtures.createUser("bob");
+    }
+
+    @Test
+    void backfillHandlesSelfMessages() {
+        messageRepository.saveAll(List.of(
+                fixtures.createMessage(alice, alice),
+                fixtures.createMessage(alice, bob),
+                fixtures.createMessage(bob, alice)));
+
+        conversationService.backfillIfEmpty();
+
+        assertThat(conversation(alice.getId(), alice.getId())).isPresent();
+        assertThat(conversation(alice.getId(), bob.getId()))
+                .get().extracting(Conversation::getUnreadCount).isEqualTo(1L);
+        assertThat(conversation(bob.getId(), alice.getId()))
+                .get().extracting(Conversation::getUnreadCount).isEqualTo(1L);
+    }
+
+    @Test
+    @WithMockUser(username = "alice")
+    void sendRecordsTheConversationWithTheMessage() throws Exception {
+        String body = mockMvc.perform(post("/api/messages")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"receiverId\":\"" + bob.getId() + "\",\"content\":\"hi\"}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        String messageId = objectMapper.readTree(body).get("messageId").asText();
+
+        Conversation incoming = conversation(bob.getId(), alice.getId()).orElseThrow();
+        assertThat(incoming.getLastMessageId()).hasToString(messageId);
+        assertThat(incoming.getUnreadCount()).isEqualTo(1);
+        Conversation outgoing = conversation(alice.getId(), bob.getId()).orElseThrow();
+        assertThat(outgoing.getLastMessageId()).hasToString(messageId);
+        assertThat(outgoing.getUnreadCount()).isZero();
+    }
+
+    @Test
+    @WithMockUser(username = "alice")
+    void duplicateIdempotencyKeyLeavesOneConversationEntry() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(post("/api/messages")
+                            .header("Idempotency-Key", "same")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"receiverId\":\"" + bob.getId() + "\",\"content\":\"hi\"}"))
+                    .andExpect(status().isCreated());
+        }
+        assertThat(messageRepository.count()).isEqualTo(1);
+        assertThat(conversation(bob.getId(), alice.getId()))
+                .get().extracting(Conversation::getUnreadCount).isEqualTo(1L);
+    }
+
+    // findByOwnerIdAndPeerId takes a row lock and needs a transaction
+    private Optional<Conversation> conversation(UUID ownerId, UUID peerId) {
+        return conversationRepository.findAll().stream()
+                .filter(c -> c.getOwnerId().equals(ownerId) && c.getPeerId().equals(peerId))
+                .findFirst();
+    }
+}
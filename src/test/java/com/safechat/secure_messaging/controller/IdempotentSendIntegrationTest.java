@@ -0,0 +1,161 @@
+package com.safechat.secure_messaging.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safechat.secure_messaging.TestFixtures;
+import com.safechat.secure_messaging.model.KeyEntity;
+import com.safechat.secure_messaging.model.Message;
+import com.safechat.secure_messaging.model.User;
+import com.safechat.secure_messaging.repository.KeyRepository;
+import com.safechat.secure_messaging.repository.MessageRepository;
+import com.safechat.secure_messaging.service.ConversationService;
+import com.safechat.secure_messaging.service.IdempotencyService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Idempotent sends: a retry of the same request is replayed, a key reused for a different
+ * message is refused whether the earlier send is cached or only stored, and a send that fails
+ * to commit leaves no active data key behind.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@TestPropertySource(properties = {
+        // Own database: the spied ConversationService makes this a context of its own
+        "spring.datasource.url=jdbc:h2:mem:safechat-idempotency;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;"
+                + "DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1"
+})
+class IdempotentSendIntegrationTest {
+
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private KeyRepository keyRepository;
+
+    @MockitoSpyBean
+    private ConversationService conversationService;
+
+    private User bob;
+    private User carol;
+
+    @BeforeEach
+    void setUp() {
+        fixtures.clear();
+        keyRepository.deleteAll();
+        fixtures.createUser("alice");
+        bob = fixtures.createUser("bob");
+        carol = fixtures.createUser("carol");
+    }
+
+    @Test
+    void sameRequestIsReplayed() throws Exception {
+        JsonNode first = body(send("retry", bob, "hi").andExpect(status().isCreated()));
+        JsonNode retry = body(send("retry", bob, "hi")
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Idempotent-Replayed", "true")));
+
+        assertThat(retry.get("messageId")).isEqualTo(first.get("messageId"));
+        assertThat(messageRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void keyReusedForAnotherReceiverOrContentIsRefused() throws Exception {
+        send("reused", bob, "hi").andExpect(status().isCreated());
+        long keys = activeKeys();
+
+        send("reused", carol, "hi").andExpect(status().isUnprocessableEntity());
+        send("reused", bob, "something else").andExpect(status().isUnprocessableEntity());
+
+        assertThat(messageRepository.count()).isEqualTo(1);
+        assertThat(activeKeys()).isEqualTo(keys);
+    }
+
+    @Test
+    void storedSendIsCheckedWhenNotCached() throws Exception {
+        // Stored directly rather than sent, so the idempotency cache has never seen it
+        User dave = fixtures.createUser("dave");
+        Message stored = fixtures.createMessage(dave, bob, "hi");
+        stored.setIdempotencyKey("stored");
+        stored.setRequestHash(IdempotencyService.requestHash(bob.getId(), "hi", false, null));
+        messageRepository.save(stored);
+
+        mockMvc.perform(post("/api/messages")
+                        .with(user("dave"))
+                        .header(IdempotencyService.HEADER, "stored")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(request(carol, "hi")))
+                .andExpect(status().isUnprocessableEntity());
+        JsonNode retry = body(mockMvc.perform(post("/api/messages")
+                        .with(user("dave"))
+                        .header(IdempotencyService.HEADER, "stored")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(request(bob, "hi")))
+                .andExpect(status().isCreated()));
+        assertThat(retry.get("messageId").asText()).isEqualTo(stored.getId().toString());
+    }
+
+    @Test
+    void failedSendRetiresItsKey() throws Exception {
+        doThrow(new IllegalStateException("summary update failed"))
+                .when(conversationService).onMessageSent(any(Message.class));
+
+        send("fails", bob, "hi").andExpect(status().isInternalServerError());
+        mockMvc.perform(post("/api/messages")
+                        .with(user("alice"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(request(bob, "no key either")))
+                .andExpect(status().isInternalServerError());
+
+        assertThat(messageRepository.count()).isZero();
+        assertThat(keyRepository.count()).isEqualTo(2);
+        assertThat(activeKeys()).isZero();
+    }
+
+    private ResultActions send(String idempotencyKey, User receiver, String content) throws Exception {
+        return mockMvc.perform(post("/api/messages")
+                .with(user("alice"))
+                .header(IdempotencyService.HEADER, idempotencyKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(request(receiver, content)));
+    }
+
+    private static String request(User receiver, String content) {
+        return "{\"receiverId\":\"" + receiver.getId() + "\",\"content\":\"" + content + "\"}";
+    }
+
+    private JsonNode body(ResultActions result) throws Exception {
+        return objectMapper.readTree(result.andReturn().getResponse().getContentAsByteArray());
+    }
+
+    private long activeKeys() {
+        return keyRepository.findAll().stream().filter(KeyEntity::isActive).count();
+    }
+}
@@ -0,0 +1,188 @@
+package com.safechat.secure_messaging.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safechat.secure_messaging.TestFixtures;
+import com.safechat.secure_messaging.model.Message;
+import com.safechat.secure_messaging.model.User;
+import com.safechat.secure_messaging.repository.MessageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The inbox without a limit comes back whole; with one, following X-Next-Cursor visits every
+ * message exactly once, newest first. The same holds for a conversation, and for messages that
+ * share a timestamp or carry legacy random ids.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class InboxPagingIntegrationTest {
+
+    // More than the old default page of 100
+    private static final int MESSAGES = 130;
+
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User peer;
+
+    @BeforeEach
+    void setUp() {
+        fixtures.clear();
+
+        User alice = fixtures.createUser("alice");
+        peer = fixtures.createUser("bob");
+        LocalDateTime start = LocalDateTime.now().minusDays(1);
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            messages.add(i % 2 == 0
+                    ? fixtures.createMessage(alice, peer, start.plusMinutes(i))
+                    : fixtures.createMessage(peer, alice, start.plusMinutes(i)));
+        }
+        messageRepository.saveAll(messages);
+    }
+
+    @Test
+    @WithMockUser(username = "alice")
+    void inboxWithoutLimitIsNotTruncated() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/messages")).andExpect(status().isOk()).andReturn();
+        assertThat(readMessages(result)).hasSize(MESSAGES);
+        assertThat(result.getResponse().getHeader("X-Next-Cursor")).isNull();
+    }
+
+    @Test
+    @WithMockUser(username = "alice")
+    void inboxPagesVisitEveryMessageOnceNewestFirst() throws Exception {
+        List<JsonNode> seen = followPages(Map.of(), 25);
+        assertThat(seen).hasSize(MESSAGES);
+        assertThat(ids(seen)).hasSize(MESSAGES);
+        assertNewestFirst(seen);
+    }
+
+    @Test
+    @WithMockUser(username = "alice")
+    void legacyIdsAndSharedTimestampsStillPageInTimeOrder() throws Exception {
+        // Rows from before time-ordered ids: random v4 ids, so id order says nothing about age
+        for (UUID id : jdbcTemplate.queryForList("SELECT id FROM messages", UUID.class)) {
+            jdbcTemplate.update("UPDATE messages SET id = ? WHERE id = ?", UUID.randomUUID(), id);
+        }
+        // Batches of five sent in the same instant, so pages split inside a timestamp
+        jdbcTemplate.update("UPDATE messages SET timestamp = DATEADD('MINUTE', " +
+                "-MOD(DATEDIFF('MINUTE', ?, timestamp), 5), timestamp)", LocalDateTime.now().minusDays(1));
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(DISTINCT timestamp) FROM messages", Long.class))
+                .isLessThan(MESSAGES);
+
+        List<JsonNode> seen = followPages(Map.of(), 7);
+        assertThat(seen).hasSize(MESSAGES);
+        assertThat(ids(seen)).hasSize(MESSAGES);
+        assertNewestFirst(seen);
+    }
+
+    @Test
+    @WithMockUser(username = "alice")
+    void conversationPagesSkipRevokedAndExpiredMessages() throws Exception {
+        List<Message> stored = messageRepository.findAll();
+        stored.get(0).setRevoked(true);
+        stored.get(1).setExpiresAt(LocalDateTime.now().minusMinutes(1));
+        messageRepository.saveAll(stored);
+
+        List<JsonNode> seen = new ArrayList<>();
+        List<List<JsonNode>> pages = followPageList(Map.of("conversationWith", peer.getId().toString()), 25);
+        // Pages come back newest page first, each page oldest-first
+        pages.forEach(page -> {
+            List<JsonNode> newestFirst = new ArrayList<>(page);
+            Collections.reverse(newestFirst);
+            seen.addAll(newestFirst);
+        });
+        assertThat(seen).hasSize(MESSAGES - 2);
+        assertThat(ids(seen)).hasSize(MESSAGES - 2)
+                .doesNotContain(stored.get(0).getId().toString(), stored.get(1).getId().toString());
+        assertNewestFirst(seen);
+    }
+
+    @Test
+    @WithMockUser(username = "alice")
+    void malformedCursorIsRejected() throws Exception {
+        mockMvc.perform(get("/api/messages").param("limit", "10").param("before", UUID.randomUUID().toString()))
+                .andExpect(status().isBadRequest());
+    }
+
+    private List<JsonNode> followPages(Map<String, String> params, int limit) throws Exception {
+        List<JsonNode> seen = new ArrayList<>();
+        followPageList(params, limit).forEach(seen::addAll);
+        return seen;
+    }
+
+    private List<List<JsonNode>> followPageList(Map<String, String> params, int limit) throws Exception {
+        List<List<JsonNode>> pages = new ArrayList<>();
+        String cursor = null;
+        do {
+            MockHttpServletRequestBuilder request = get("/api/messages").param("limit", String.valueOf(limit));
+            params.forEach(request::param);
+            if (cursor != null) {
+                request.param("before", cursor);
+            }
+            MvcResult result = mockMvc.perform(request).andExpect(status().isOk()).andReturn();
+            List<JsonNode> page = readMessages(result);
+            assertThat(page.size()).isLessThanOrEqualTo(limit);
+            pages.add(page);
+            cursor = result.getResponse().getHeader("X-Next-Cursor");
+        } while (cursor != null);
+        return pages;
+    }
+
+    private List<JsonNode> readMessages(MvcResult result) throws Exception {
+        List<JsonNode> messages = new ArrayList<>();
+        objectMapper.readTree(result.getResponse().getContentAsByteArray()).forEach(messages::add);
+        return messages;
+    }
+
+    private static Set<String> ids(List<JsonNode> messages) {
+        Set<String> ids = new HashSet<>();
+        messages.forEach(message -> ids.add(message.get("id").asText()));
+        return ids;
+    }
+
+    private static void assertNewestFirst(List<JsonNode> messages) {
+        for (int i = 1; i < messages.size(); i++) {
+            LocalDateTime newer = LocalDateTime.parse(messages.get(i - 1).get("timestamp").asText());
+            LocalDateTime older = LocalDateTime.parse(messages.get(i).get("timestamp").asText());
+            assertThat(older).isBeforeOrEqualTo(newer);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.safechat.secure_messaging.controller;
+
+import com.safechat.secure_messaging.StatementCounter;
+import com.safechat.secure_messaging.TestFixtures;
+import com.safechat.secure_messaging.model.Message;
+import com.safechat.secure_messaging.model.User;
+import com.safechat.secure_messaging.model.UserRoles;
+import com.safechat.secure_messaging.repository.MessageRepository;
+import com.safechat.secure_messaging.repository.UserRepository;
+import com.safechat.secure_messaging.service.ConversationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultMatcher;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Guards the number of SQL statements issued by the list endpoints.
+ *
+ * The fixture is large enough (8 peers, 48 messages) that an N+1 on users, roles or
+ * messages blows the budget. When a change reduces the query count, lower the budget
+ * to lock the improvement in.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class QueryCountIntegrationTest {
+
+    private static final int PEERS = 8;
+    private static final int MESSAGES_PER_DIRECTION = 3;
+
+    private static final int GET_MESSAGES_BUDGET = 2;
+    private static final int GET_CONVERSATION_BUDGET = 2;
+    private static final int GET_MESSAGES_PAGE_BUDGET = 2;
+    private static final int ADMIN_MESSAGES_BUDGET = 2;
+    private static final int GET_ALL_USERS_BUDGET = 11;
+    private static final int GET_CONVERSATIONS_BUDGET = 2;
+    private static final int MARK_CONVERSATION_READ_BUDGET = 4;
+    private static final int CACHED_UNREAD_COUNT_BUDGET = 1;
+    // Hibernate statements only; the conversation upkeep runs as three JdbcTemplate batches
+    private static final int BROADCAST_BUDGET = 5;
+    // Caller lookup (user + roles) only: no key, no encryption, no insert
+    private static final int IDEMPOTENT_RETRY_BUDGET = 2;
+
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private ConversationService conversationService;
+
+    private User peer;
+
+    @BeforeEach
+    void setUp() {
+        fixtures.clear();
+
+        User alice = fixtures.createUser("alice", UserRoles.ROLE_USER);
+        fixtures.createUser("admin", UserRoles.ROLE_SUPER_ADMIN);
+
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < PEERS; i++) {
+            User other = fixtures.createUser("peer" + i, UserRoles.ROLE_USER);
+            if (i == 0) {
+                peer = other;
+            }
+            for (int j = 0; j < MESSAGES_PER_DIRECTION; j++) {
+                messages.add(fixtures.createMessageWithOwnKey(alice, other));
+                messages.add(fixtures.createMessageWithOwnKey(other, alice));
+            }
+        }
+        messageRepository.saveAll(messages);
+        conversationService.backfillIfEmpty();
+    }
+
+    @Test
+    @WithMockUser(username = "alice")
+    void getMessagesStaysWithinBudget() throws Exception {
+        assertWithinBudget("GET /api/messages", get("/api/messages"), GET_MESSAGES_BUDGET);
+    }
+
+    @Test
+    @WithMockUser(username = "alice")
+    void getConversationStaysWithinBudget() throws Exception {
+        assertWithinBudget("GET /api/messages?conversationWith",
+                get("/api/messages").param("conversationWith", peer.getId().toString()),
+                GET_CONVERSATION_BUDGET);
+    }
+
+    @Test
+    @WithMockUser(username = "alice")
+    void olderInboxPageFollowsCursorWithinBudget() throws Exception {
+        String cursor = mockMvc.perform(get("/api/messages").param("limit", "10"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("X-Next-Cursor");
+        assertThat(cursor).isNotNull();
+
+        assertWithinBudget("GET /api/messages?before",
+                get("/api/messages").param("limit", "10").param("before", cursor),
+                GET_MESSAGES_PAGE_BUDGET);
+    }
+
+    @Test
+    @WithMockUser(username = "alice")
+    void getConversationsStaysWithinBudget() throws Exception {
+        assertWithinBudget("GET /api/messages/conversations", get("/api/messages/conversations"),
+                GET_CONVERSATIONS_BUDGET);
+    }
+
+    @Test
+    @WithMockUser(username = "alice")
+    void markConversationReadIsOneWrite() throws Exception {
+        assertWithinBudget("POST /api/messages/conversations/{peerId}/read",
+                post("/api/messages/conversations/" + peer.getId() + "/read"),
+                MARK_CONVERSATION_READ_BUDGET);
+    }
+
+    @Test
+    @WithMockUser(username = "alice")
+    void unreadCountIsServedFromMemoryOnceLoaded() throws Exception {
+        mockMvc.perform(get("/api/messages/unread/count")).andExpect(status().isOk());
+        // Only the caller's id lookup remains
+        assertWithinBudget("GET /api/messages/unread/count", get("/api/messages/unread/count"),
+                CACHED_UNREAD_COUNT_BUDGET);
+    }
+
+    @Test
+    @WithMockUser(username = "alice", roles = "SUPPORT_ADMIN")
+    void broadcastDoesNotScaleWithRecipients() throws Exception {
+        String receiverIds = userRepository.findAll().stream()
+                .filter(user -> user.getUsername().startsWith("peer"))
+                .map(user -> "\"" + user.getId() + "\"")
+                .collect(Collectors.joining(","));
+        assertWithinBudget("POST /api/messages/broadcast",
+                post("/api/messages/broadcast")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"content\":\"announcement\",\"receiverIds\":[" + receiverIds + "]}"),
+                status().isCreated(),
+                BROADCAST_BUDGET);
+    }
+
+    @Test
+    @WithMockUser(username = "alice")
+    void idempotentRetryIsAnsweredFromCache() throws Exception {
+        MockHttpServletRequestBuilder send = post("/api/messages")
+                .header("Idempotency-Key", "retry-1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"receiverId\":\"" + peer.getId() + "\",\"content\":\"hello\"}");
+        String first = mockMvc.perform(send).andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+
+        assertWithinBudget("POST /api/messages (retry)", send, status().isCreated(), IDEMPOTENT_RETRY_BUDGET);
+        String retry = mockMvc.perform(send).andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(retry).isEqualTo(first);
+    }
+
+    @Test
+    @WithMockUser(username = "admin", roles = "SUPER_ADMIN")
+    void adminGetAllMessagesStaysWithinBudget() throws Exception {
+        assertWithinBudget("GET /api/admin/messages", get("/api/admin/messages"), ADMIN_MESSAGES_BUDGET);
+    }
+
+    @Test
+    @WithMockUser(username = "alice")
+    void getAllUsersStaysWithinBudget() throws Exception {
+        assertWithinBudget("GET /user/all", get("/user/all"), GET_ALL_USERS_BUDGET);
+    }
+
+    private void assertWithinBudget(String endpoint, MockHttpServletRequestBuilder request, int budget)
+            throws Exception {
+        assertWithinBudget(endpoint, request, status().isOk(), budget);
+    }
+
+    private void assertWithinBudget(String endpoint, MockHttpServletRequestBuilder request,
+                                    ResultMatcher expectedStatus, int budget) throws Exception {
+        int statements;
+        StatementCounter.start();
+        try {
+            mockMvc.perform(request).andExpect(expectedStatus);
+        } finally {
+            statements = StatementCounter.stop();
+        }
+        assertThat(statements)
+                .as("SQL statements issued by %s", endpoint)
+                .isLessThanOrEqualTo(budget);
+    }
+}
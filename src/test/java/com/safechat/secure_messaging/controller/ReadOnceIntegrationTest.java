@@ -0,0 +1,123 @@
+package com.safechat.secure_messaging.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safechat.secure_messaging.TestFixtures;
+import com.safechat.secure_messaging.model.Message;
+import com.safechat.secure_messaging.model.User;
+import com.safechat.secure_messaging.model.UserRoles;
+import com.safechat.secure_messaging.repository.KeyRepository;
+import com.safechat.secure_messaging.repository.MessageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * A read-once message shows its content to the first read only, including broadcast copies,
+ * which share one data key until the last copy is consumed.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class ReadOnceIntegrationTest {
+
+    private static final String UNAVAILABLE = "[Message no longer available]";
+
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private KeyRepository keyRepository;
+
+    private User admin;
+    private User bob;
+    private User carol;
+
+    @BeforeEach
+    void setUp() {
+        fixtures.clear();
+        admin = fixtures.createUser("admin", UserRoles.ROLE_SUPPORT_ADMIN);
+        bob = fixtures.createUser("bob", UserRoles.ROLE_USER);
+        carol = fixtures.createUser("carol", UserRoles.ROLE_USER);
+    }
+
+    @Test
+    void readOnceMessageIsShownOnce() throws Exception {
+        mockMvc.perform(post("/api/messages")
+                        .with(user("admin"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"receiverId\":\"" + bob.getId() + "\",\"content\":\"secret\",\"readOnce\":true}"))
+                .andExpect(status().isCreated());
+        UUID messageId = copyFor(bob).getId();
+
+        assertThat(open(messageId, "bob")).isEqualTo("secret");
+        assertThat(open(messageId, "bob")).isEqualTo(UNAVAILABLE);
+    }
+
+    @Test
+    void readOnceBroadcastCopyIsShownOnceEvenWhileOtherCopiesKeepTheKey() throws Exception {
+        mockMvc.perform(post("/api/messages/broadcast")
+                        .with(user("admin").roles("SUPPORT_ADMIN"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"content\":\"announcement\",\"readOnce\":true,\"receiverIds\":[\""
+                                + bob.getId() + "\",\"" + carol.getId() + "\"]}"))
+                .andExpect(status().isCreated());
+        Message bobCopy = copyFor(bob);
+        Message carolCopy = copyFor(carol);
+        assertThat(bobCopy.getKeyId()).isEqualTo(carolCopy.getKeyId());
+
+        assertThat(open(bobCopy.getId(), "bob")).isEqualTo("announcement");
+        // carol's copy still needs the shared key, so only the consumed state can stop this read
+        assertThat(keyRepository.findByKeyIdAndActiveTrue(bobCopy.getKeyId())).isPresent();
+        assertThat(open(bobCopy.getId(), "bob")).isEqualTo(UNAVAILABLE);
+
+        assertThat(open(carolCopy.getId(), "carol")).isEqualTo("announcement");
+        assertThat(open(carolCopy.getId(), "carol")).isEqualTo(UNAVAILABLE);
+        // Last copy consumed: the key goes too
+        assertThat(keyRepository.findByKeyIdAndActiveTrue(bobCopy.getKeyId())).isEmpty();
+    }
+
+    @Test
+    void broadcastIsForAdminsOnly() throws Exception {
+        mockMvc.perform(post("/api/messages/broadcast")
+                        .with(user("bob"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"content\":\"spam\",\"receiverIds\":[\"" + carol.getId() + "\"]}"))
+                .andExpect(status().isForbidden());
+        assertThat(messageRepository.count()).isZero();
+    }
+
+    private String open(UUID messageId, String username) throws Exception {
+        return objectMapper.readTree(mockMvc.perform(get("/api/messages/" + messageId).with(user(username)))
+                        .andExpect(status().isOk())
+                        .andReturn().getResponse().getContentAsByteArray())
+                .get("content").asText();
+    }
+
+    private Message copyFor(User receiver) {
+        return messageRepository.findAll().stream()
+                .filter(message -> message.getReceiver().getId().equals(receiver.getId()))
+                .findFirst().orElseThrow();
+    }
+}
@@ -0,0 +1,178 @@
+package com.safechat.secure_messaging.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safechat.secure_messaging.TestFixtures;
+import com.safechat.secure_messaging.model.Message;
+import com.safechat.secure_messaging.model.User;
+import com.safechat.secure_messaging.repository.MessageRepository;
+import com.safechat.secure_messaging.service.ConversationService;
+import com.safechat.secure_messaging.service.MetricsTimeSeriesService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Unread totals as the client sees them (the mark-read response, GET /unread/count and the
+ * conversation list) stay equal to the number of unread messages as watermarks move and
+ * new messages arrive.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class UnreadCountIntegrationTest {
+
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private ConversationService conversationService;
+
+    @Autowired
+    private MetricsTimeSeriesService metricsTimeSeriesService;
+
+    private User alice;
+    private User bob;
+    private LocalDateTime start;
+
+    @BeforeEach
+    void setUp() {
+        fixtures.clear();
+        alice = fixtures.createUser("alice");
+        bob = fixtures.createUser("bob");
+
+        // Three messages from bob, a minute apart and all in the past
+        start = LocalDateTime.now().minusMinutes(10);
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            messages.add(fixtures.createMessage(bob, alice, start.plusMinutes(i)));
+        }
+        messageRepository.saveAll(messages);
+        conversationService.refreshPair(alice.getId(), bob.getId());
+    }
+
+    @Test
+    void partialWatermarkLeavesNewerMessagesUnread() throws Exception {
+        JsonNode result = markRead(start.plusMinutes(1).plusSeconds(30));
+        assertThat(result.get("unreadCount").asLong()).isEqualTo(1);
+        assertThat(unreadCount("alice")).isEqualTo(1);
+        assertThat(conversationUnread("alice")).isEqualTo(1);
+    }
+
+    @Test
+    void futureWatermarkDoesNotSwallowLaterMessages() throws Exception {
+        JsonNode result = markRead(LocalDateTime.now().plusDays(1));
+        assertThat(result.get("unreadCount").asLong()).isZero();
+        assertThat(LocalDateTime.parse(result.get("readUpTo").asText())).isBeforeOrEqualTo(LocalDateTime.now());
+        assertThat(unreadCount("alice")).isZero();
+
+        send(bob, alice, "sent after the mark-read");
+
+        assertThat(unreadCount("alice")).isEqualTo(1);
+        assertThat(conversationUnread("alice")).isEqualTo(1);
+    }
+
+    @Test
+    void watermarkNeverMovesBackwards() throws Exception {
+        markRead(LocalDateTime.now());
+        JsonNode result = markRead(start);
+        assertThat(result.get("unreadCount").asLong()).isZero();
+        assertThat(unreadCount("alice")).isZero();
+    }
+
+    @Test
+    void countsFollowSendsAndReads() throws Exception {
+        assertThat(unreadCount("alice")).isEqualTo(3);
+        send(bob, alice, "one more");
+        assertThat(unreadCount("alice")).isEqualTo(4);
+
+        String newest = objectMapper.readTree(mockMvc.perform(get("/api/messages").with(user("alice")))
+                        .andExpect(status().isOk()).andReturn().getResponse().getContentAsByteArray())
+                .get(0).get("id").asText();
+        mockMvc.perform(get("/api/messages/" + newest).with(user("alice"))).andExpect(status().isOk());
+
+        assertThat(unreadCount("alice")).isEqualTo(3);
+        assertThat(conversationUnread("alice")).isEqualTo(3);
+    }
+
+    @Test
+    void bulkReadCountsTheMessagesItCovers() throws Exception {
+        long before = recordedReads();
+        markRead(start.plusMinutes(1).plusSeconds(30));
+        assertThat(recordedReads()).isEqualTo(before + 2);
+
+        // Already covered: nothing new read
+        markRead(start.plusMinutes(1).plusSeconds(30));
+        markRead(start);
+        assertThat(recordedReads()).isEqualTo(before + 2);
+    }
+
+    private JsonNode markRead(LocalDateTime upTo) throws Exception {
+        return objectMapper.readTree(mockMvc.perform(post("/api/messages/conversations/" + bob.getId() + "/read")
+                        .param("upTo", upTo.toString())
+                        .with(user("alice")))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray());
+    }
+
+    // Message reads in the throughput series over its whole retention, so a minute boundary changes nothing
+    @SuppressWarnings("unchecked")
+    private long recordedReads() {
+        Map<String, List<Long>> series = (Map<String, List<Long>>) metricsTimeSeriesService
+                .getSeries(MetricsTimeSeriesService.RETENTION_MINUTES).get("series");
+        return series.get(MetricsTimeSeriesService.ThroughputMetric.MESSAGE_READS.getKey()).stream()
+                .mapToLong(Long::longValue).sum();
+    }
+
+    private void send(User sender, User receiver, String content) throws Exception {
+        mockMvc.perform(post("/api/messages")
+                        .with(user(sender.getUsername()))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"receiverId\":\"" + receiver.getId() + "\",\"content\":\"" + content + "\"}"))
+                .andExpect(status().isCreated());
+    }
+
+    private long unreadCount(String username) throws Exception {
+        return objectMapper.readTree(mockMvc.perform(get("/api/messages/unread/count").with(user(username)))
+                        .andExpect(status().isOk())
+                        .andReturn().getResponse().getContentAsByteArray())
+                .get("unreadCount").asLong();
+    }
+
+    private long conversationUnread(String username) throws Exception {
+        JsonNode conversations = objectMapper.readTree(mockMvc.perform(get("/api/messages/conversations")
+                        .with(user(username)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray());
+        long total = 0;
+        for (JsonNode conversation : conversations) {
+            total += conversation.get("unreadCount").asLong();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,71 @@
+package com.safechat.secure_messaging.service;
+
+import com.safechat.secure_messaging.config.Workload;
+import com.safechat.secure_messaging.model.AuditLog;
+import com.safechat.secure_messaging.repository.AuditLogRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Audit entries are written in the transaction of the action they record: visible inside it,
+ * committed with it, and gone if it rolls back.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class AuditLogIntegrationTest {
+
+    @Autowired
+    private AuditLogService auditLogService;
+
+    @Autowired
+    private AuditLogRepository auditLogRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final UUID messageId = UUID.randomUUID();
+
+    @AfterEach
+    void cleanUp() {
+        auditLogRepository.deleteAll(entriesFor(messageId));
+    }
+
+    @Test
+    void entryCommitsWithItsTransaction() {
+        // As an expiry run would, on the jobs pool
+        Workload.JOBS.run(() -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            auditLogService.logMessageDestruction(messageId, "Read-once message accessed");
+            assertThat(entriesFor(messageId)).hasSize(1);
+        }));
+
+        List<AuditLog> entries = entriesFor(messageId);
+        assertThat(entries).hasSize(1);
+        assertThat(entries.get(0).getAction()).isEqualTo("MESSAGE_DESTROYED");
+    }
+
+    @Test
+    void rolledBackActionLeavesNoEntry() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            auditLogService.logMessageDestruction(messageId, "Read-once message accessed");
+            status.setRollbackOnly();
+        });
+
+        assertThat(entriesFor(messageId)).isEmpty();
+    }
+
+    private List<AuditLog> entriesFor(UUID messageId) {
+        return auditLogRepository.findAll().stream()
+                .filter(entry -> entry.getDetails().contains(messageId.toString()))
+                .toList();
+    }
+}
@@ -0,0 +1,84 @@
+package com.safechat.secure_messaging.service;
+
+import com.safechat.secure_messaging.model.KeyEntity;
+import com.safechat.secure_messaging.repository.KeyRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EncryptionServiceTest {
+
+    private static final String MASTER_KEY = "MDEyMzQ1Njc4OWFiY2RlZjAxMjM0NTY3ODlhYmNkZWY=";
+
+    // Stored key rows, standing in for encryption_keys
+    private final Map<String, KeyEntity> stored = new ConcurrentHashMap<>();
+    private final KeyRepository keyRepository = mock(KeyRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    EncryptionServiceTest() {
+        when(keyRepository.save(any(KeyEntity.class))).thenAnswer(invocation -> {
+            KeyEntity key = invocation.getArgument(0);
+            stored.put(key.getKeyId(), key);
+            return key;
+        });
+        when(keyRepository.findByKeyIdAndActiveTrue(anyString()))
+                .thenAnswer(invocation -> Optional.ofNullable(stored.get((String) invocation.getArgument(0))));
+    }
+
+    @Test
+    void keyCacheEvictsTheLeastRecentlyUsedKey() {
+        EncryptionService service = service(2);
+        String a = service.generateKey();
+        String b = service.generateKey();
+        // Touch a, so b is now the least recently used
+        roundTrip(service, a);
+        String c = service.generateKey();
+
+        assertThat(meterRegistry.get("safechat.crypto.key.cache.size").gauge().value()).isEqualTo(2.0);
+
+        roundTrip(service, a);
+        roundTrip(service, c);
+        verify(keyRepository, never()).findByKeyIdAndActiveTrue(a);
+        verify(keyRepository, never()).findByKeyIdAndActiveTrue(c);
+
+        // b was evicted: reloaded and unwrapped once, then cached again
+        roundTrip(service, b);
+        roundTrip(service, b);
+        verify(keyRepository, times(1)).findByKeyIdAndActiveTrue(b);
+    }
+
+    @Test
+    void storedKeysAreWrappedNotRaw() {
+        EncryptionService service = service(10);
+        String keyId = service.generateKey();
+
+        KeyEntity key = stored.get(keyId);
+        assertThat(key.getMasterKeyVersion()).isEqualTo(1);
+        assertThat(key.isWrapped()).isTrue();
+        // A fresh service (empty cache) unwraps the stored row
+        assertThat(roundTrip(service(10), keyId)).isEqualTo("hello");
+    }
+
+    private String roundTrip(EncryptionService service, String keyId) {
+        EncryptionService.EncryptedBytes encrypted = service.encryptToBytes("hello", keyId);
+        assertThat(encrypted.keyId()).isEqualTo(keyId);
+        return service.decrypt(encrypted.content(), encrypted.iv(), keyId, encrypted.compressed());
+    }
+
+    private EncryptionService service(int keyCacheSize) {
+        return new EncryptionService(keyRepository, new MasterKeyRing(MASTER_KEY, 1, ""), meterRegistry,
+                1024, 6, 1024 * 1024, keyCacheSize);
+    }
+}
@@ -0,0 +1,86 @@
+package com.safechat.secure_messaging.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class HyperLogLogTest {
+
+    // Standard error at precision 12 is about 1.6%; allow three of them
+    private static final double TOLERANCE = 0.05;
+
+    @Test
+    void emptySketchEstimatesZero() {
+        assertThat(new HyperLogLog(12).estimate()).isZero();
+    }
+
+    @Test
+    void smallCardinalitiesAreNearlyExact() {
+        HyperLogLog sketch = new HyperLogLog(12);
+        for (int i = 0; i < 100; i++) {
+            sketch.add("user-" + i);
+        }
+        assertThat(sketch.estimate()).isBetween(98L, 102L);
+    }
+
+    @Test
+    void largeCardinalitiesStayWithinErrorBound() {
+        for (int n : new int[]{10_000, 100_000, 1_000_000}) {
+            HyperLogLog sketch = new HyperLogLog(12);
+            for (int i = 0; i < n; i++) {
+                sketch.add("user-" + i);
+            }
+            assertThat((double) sketch.estimate()).isCloseTo(n, within(n * TOLERANCE));
+        }
+    }
+
+    @Test
+    void duplicatesDoNotCount() {
+        HyperLogLog sketch = new HyperLogLog(12);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 5_000; i++) {
+                sketch.add("user-" + i);
+            }
+        }
+        assertThat((double) sketch.estimate()).isCloseTo(5_000, within(5_000 * TOLERANCE));
+    }
+
+    @Test
+    void mergeEstimatesTheUnion() {
+        HyperLogLog left = new HyperLogLog(12);
+        HyperLogLog right = new HyperLogLog(12);
+        for (int i = 0; i < 30_000; i++) {
+            left.add("user-" + i);
+        }
+        for (int i = 20_000; i < 50_000; i++) {
+            right.add("user-" + i);
+        }
+        left.merge(right);
+        assertThat((double) left.estimate()).isCloseTo(50_000, within(50_000 * TOLERANCE));
+    }
+
+    @Test
+    void mergeIntoEmptySketchCopiesTheOther() {
+        HyperLogLog source = new HyperLogLog(12);
+        for (int i = 0; i < 20_000; i++) {
+            source.add("user-" + i);
+        }
+        HyperLogLog target = new HyperLogLog(12);
+        target.merge(source);
+        assertThat(target.estimate()).isEqualTo(source.estimate());
+    }
+
+    @Test
+    void mergeRejectsDifferentPrecision() {
+        assertThatThrownBy(() -> new HyperLogLog(12).merge(new HyperLogLog(10)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void hashCoversNonAsciiCharacters() {
+        assertThat(HyperLogLog.hash64("ä")).isNotEqualTo(HyperLogLog.hash64("ã"));
+        assertThat(HyperLogLog.hash64("Ā")).isNotEqualTo(HyperLogLog.hash64("\u0001"));
+    }
+}
@@ -0,0 +1,138 @@
+package com.safechat.secure_messaging.service;
+
+import com.safechat.secure_messaging.TestFixtures;
+import com.safechat.secure_messaging.model.Attachment;
+import com.safechat.secure_messaging.model.KeyEntity;
+import com.safechat.secure_messaging.model.Message;
+import com.safechat.secure_messaging.model.User;
+import com.safechat.secure_messaging.model.UuidV7Generator;
+import com.safechat.secure_messaging.repository.AttachmentRepository;
+import com.safechat.secure_messaging.repository.KeyRepository;
+import com.safechat.secure_messaging.repository.MessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Key GC deletes inactive keys nothing live refers to, keeps the ones a shown message or an
+ * attachment still needs, and works through a large backlog over several bounded runs.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class KeyGarbageCollectionIntegrationTest {
+
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private KeyRepository keyRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private AttachmentRepository attachmentRepository;
+
+    private User alice;
+    private User bob;
+
+    @BeforeEach
+    void setUp() {
+        fixtures.clear();
+        keyRepository.deleteAll();
+        alice = fixtures.createUser("alice");
+        bob = fixtures.createUser("bob");
+    }
+
+
+    @Test
+    void deletesOnlyInactiveKeysNothingLiveUses() {
+        createKey("active", true);
+        createKey("unreferenced", false);
+        createKey("used-by-message", false);
+        createMessage("used-by-message", false);
+        createKey("used-by-revoked-message", false);
+        createMessage("used-by-revoked-message", true);
+        createKey("used-by-attachment", false);
+        createAttachment(createMessage("active", false), "used-by-attachment");
+
+        Map<String, Object> report = collector(500, 20).collect();
+
+        assertThat(report).containsEntry("deletedKeys", 2L);
+        assertThat(keyIds()).containsExactlyInAnyOrder("active", "used-by-message", "used-by-attachment");
+    }
+
+    @Test
+    void boundedRunsResumeWhereTheLastOneStopped() {
+        for (int i = 0; i < 7; i++) {
+            createKey("garbage-" + i, false);
+        }
+        createKey("kept", false);
+        createMessage("kept", false);
+        KeyGarbageCollectionService collector = collector(2, 2);
+
+        // Two batches of two per run
+        assertThat(collector.collect()).containsEntry("deletedKeys", 4L).containsEntry("batches", 2);
+        assertThat(collector.collect()).containsEntry("deletedKeys", 3L).containsEntry("batches", 2);
+        assertThat(collector.collect()).containsEntry("deletedKeys", 0L).containsEntry("batches", 0);
+
+        assertThat(keyIds()).containsExactly("kept");
+    }
+
+    private KeyGarbageCollectionService collector(int batchSize, int maxBatchesPerRun) {
+        return new KeyGarbageCollectionService(jdbcTemplate, transactionManager, new SimpleMeterRegistry(),
+                batchSize, maxBatchesPerRun);
+    }
+
+    private Set<String> keyIds() {
+        return Set.copyOf(jdbcTemplate.queryForList("SELECT key_id FROM encryption_keys", String.class));
+    }
+
+    private void createKey(String keyId, boolean active) {
+        KeyEntity key = new KeyEntity(keyId, new byte[40], 1);
+        key.setActive(active);
+        keyRepository.save(key);
+    }
+
+    private Message createMessage(String keyId, boolean revoked) {
+        Message message = new Message();
+        message.setSender(alice);
+        message.setReceiver(bob);
+        message.setCiphertext(new byte[32], new byte[12]);
+        message.setKeyId(keyId);
+        message.setRevoked(revoked);
+        message.setTimestamp(LocalDateTime.now());
+        return messageRepository.save(message);
+    }
+
+    private void createAttachment(Message message, String keyId) {
+        Attachment attachment = new Attachment();
+        attachment.setId(UuidV7Generator.generate());
+        attachment.setMessageId(message.getId());
+        attachment.setUploaderId(alice.getId());
+        attachment.setFileName("file.bin");
+        attachment.setContentType("application/octet-stream");
+        attachment.setChunkSize(65536);
+        attachment.setKeyId(keyId);
+        attachment.setNoncePrefix(new byte[7]);
+        attachment.setCreatedAt(LocalDateTime.now());
+        attachmentRepository.save(attachment);
+    }
+}
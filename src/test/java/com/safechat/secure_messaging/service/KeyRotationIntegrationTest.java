@@ -0,0 +1,275 @@
+package com.safechat.secure_messaging.service;
+
+import com.safechat.secure_messaging.TestFixtures;
+import com.safechat.secure_messaging.model.KeyEntity;
+import com.safechat.secure_messaging.model.KeyRotationCheckpoint;
+import com.safechat.secure_messaging.model.Message;
+import com.safechat.secure_messaging.model.User;
+import com.safechat.secure_messaging.repository.KeyRepository;
+import com.safechat.secure_messaging.repository.KeyRotationCheckpointRepository;
+import com.safechat.secure_messaging.repository.MessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Rotation from master key version 1 to 2: data keys are re-wrapped and master-keyed messages
+ * re-encrypted, a run resumes from its checkpoint and stops on pause, rows behind the cursor
+ * are picked up before the phase completes, and a stale entity save doesn't undo a rotated row.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@TestPropertySource(properties = {
+        // Own database: this context has a different master key ring from the shared one
+        "spring.datasource.url=jdbc:h2:mem:safechat-rotation;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;"
+                + "DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1",
+        "ENCRYPTION_KEY=" + KeyRotationIntegrationTest.NEW_MASTER_KEY,
+        "app.crypto.master-key-version=2",
+        "app.crypto.retired-master-keys=1:" + KeyRotationIntegrationTest.OLD_MASTER_KEY
+})
+class KeyRotationIntegrationTest {
+
+    static final String OLD_MASTER_KEY = "MDEyMzQ1Njc4OWFiY2RlZjAxMjM0NTY3ODlhYmNkZWY=";
+    static final String NEW_MASTER_KEY = "ZmVkY2JhOTg3NjU0MzIxMGZlZGNiYTk4NzY1NDMyMTA=";
+
+    private static final int MESSAGES = 7;
+    private static final int KEYS = 5;
+
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private KeyRepository keyRepository;
+
+    @Autowired
+    private KeyRotationCheckpointRepository checkpointRepository;
+
+    @Autowired
+    private EncryptionService encryptionService;
+
+    @Autowired
+    private CiphertextStore ciphertextStore;
+
+    @Autowired
+    private MasterKeyRing masterKeys;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final MasterKeyRing oldMasterKeys = new MasterKeyRing(OLD_MASTER_KEY, 1, "");
+    private User alice;
+    private User bob;
+    // Ascending id order, which is the rotation's cursor order
+    private List<UUID> messageIds;
+
+    @BeforeEach
+    void setUp() throws GeneralSecurityException {
+        checkpointRepository.deleteAll();
+        fixtures.clear();
+        keyRepository.deleteAll();
+        alice = fixtures.createUser("alice");
+        bob = fixtures.createUser("bob");
+
+        messageIds = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            messageIds.add(createOldMessage("message " + i).getId());
+        }
+        messageIds.sort(Comparator.naturalOrder());
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(256);
+        for (int i = 0; i < KEYS; i++) {
+            keyRepository.save(new KeyEntity("data-key-" + i, oldMasterKeys.wrap(generator.generateKey()), 1));
+        }
+    }
+
+    @Test
+    void rotatesKeysAndMessagesToTheCurrentVersion() throws Exception {
+        runToCompletion(rotation(2, 0));
+
+        for (KeyEntity key : keyRepository.findAll()) {
+            assertThat(key.getMasterKeyVersion()).isEqualTo(2);
+            // Unwraps under the current key only
+            assertThat(masterKeys.unwrap(key.getKeyBytes(), 2)).isNotNull();
+        }
+        assertAllMessagesRotated();
+        KeyRotationCheckpoint messages = checkpointRepository.findById(KeyRotationService.PHASE_MESSAGES).orElseThrow();
+        assertThat(messages.getProcessed()).isEqualTo(MESSAGES);
+        assertThat(messages.getFailed()).isZero();
+        assertThat(messages.getCompletedAt()).isNotNull();
+    }
+
+    @Test
+    void resumesFromItsCheckpoint() throws Exception {
+        // An earlier run got through the keys and the first three messages
+        runToCompletion(rotation(100, 0));
+        for (int i = 3; i < MESSAGES; i++) {
+            reset(messageIds.get(i), "message again " + i);
+        }
+        KeyRotationCheckpoint checkpoint = checkpointRepository.findById(KeyRotationService.PHASE_MESSAGES).orElseThrow();
+        checkpoint.setLastId(messageIds.get(2).toString());
+        checkpoint.setProcessed(3);
+        checkpoint.setCompletedAt(null);
+        checkpointRepository.save(checkpoint);
+        byte[] rotatedBefore = messageRepository.findById(messageIds.get(0)).orElseThrow().getContentBin();
+
+        runToCompletion(rotation(2, 0));
+
+        assertAllMessagesRotated();
+        // The first three weren't redone
+        assertThat(messageRepository.findById(messageIds.get(0)).orElseThrow().getContentBin()).isEqualTo(rotatedBefore);
+        assertThat(checkpointRepository.findById(KeyRotationService.PHASE_MESSAGES).orElseThrow().getProcessed())
+                .isEqualTo(MESSAGES);
+    }
+
+    @Test
+    void pauseStopsAfterTheBatchInFlightAndStartResumes() throws Exception {
+        // One row per batch at five rows a second: well under way, far from done, when paused
+        KeyRotationService rotation = rotation(1, 5);
+        rotation.start();
+        Thread.sleep(300);
+        rotation.pause();
+        awaitStopped(rotation);
+
+        KeyRotationCheckpoint keys = checkpointRepository.findById(KeyRotationService.PHASE_KEYS).orElseThrow();
+        assertThat(keys.getCompletedAt()).isNull();
+        assertThat(keys.getProcessed()).isBetween(1L, (long) KEYS - 1);
+        assertThat(rotation.getStatus()).containsEntry("running", false);
+
+        runToCompletion(rotation(100, 0));
+        assertThat(checkpointRepository.findById(KeyRotationService.PHASE_KEYS).orElseThrow().getProcessed())
+                .isEqualTo(KEYS);
+        assertAllMessagesRotated();
+    }
+
+    @Test
+    void rowsBehindTheCursorAreRotatedBeforeCompleting() throws Exception {
+        // The cursor is already past every row, as if they had all been written after it went by
+        checkpointRepository.save(checkpointAt(KeyRotationService.PHASE_MESSAGES, messageIds.get(MESSAGES - 1)));
+
+        runToCompletion(rotation(3, 0));
+
+        assertAllMessagesRotated();
+    }
+
+    @Test
+    void staleEntitySaveDoesNotUndoRotation() throws Exception {
+        UUID id = messageIds.get(0);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            // Loaded before the rotation commits, saved after it
+            Message stale = messageRepository.findById(id).orElseThrow();
+            assertThat(stale.getKeyId()).isEqualTo("master:1");
+            try {
+                KeyRotationService rotation = rotation(100, 0);
+                rotation.start();
+                awaitStopped(rotation);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            stale.setRevoked(true);
+            messageRepository.save(stale);
+        });
+
+        Message saved = messageRepository.findById(id).orElseThrow();
+        assertThat(saved.isRevoked()).isTrue();
+        assertThat(saved.getKeyId()).isEqualTo("master:2");
+        assertThat(decrypt(saved)).isEqualTo("message 0");
+    }
+
+    private KeyRotationService rotation(int batchSize, int maxRowsPerSecond) {
+        return new KeyRotationService(messageRepository, checkpointRepository, encryptionService, ciphertextStore,
+                masterKeys, jdbcTemplate, transactionManager, new SimpleMeterRegistry(), false,
+                batchSize, maxRowsPerSecond);
+    }
+
+    private void runToCompletion(KeyRotationService rotation) throws InterruptedException {
+        rotation.start();
+        awaitStopped(rotation);
+        assertThat(checkpointRepository.findById(KeyRotationService.PHASE_MESSAGES))
+                .hasValueSatisfying(checkpoint -> assertThat(checkpoint.getCompletedAt()).isNotNull());
+    }
+
+    private static void awaitStopped(KeyRotationService rotation) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (Boolean.TRUE.equals(rotation.getStatus().get("running"))) {
+            assertThat(System.currentTimeMillis()).as("rotation still running").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private void assertAllMessagesRotated() {
+        for (UUID id : messageIds) {
+            Message message = messageRepository.findById(id).orElseThrow();
+            assertThat(message.getKeyId()).isEqualTo("master:2");
+            assertThat(decrypt(message)).startsWith("message");
+        }
+    }
+
+    private String decrypt(Message message) {
+        return encryptionService.decrypt(ciphertextStore.ciphertextOf(message), message.getCiphertextIv(),
+                message.getKeyId(), message.isCompressed());
+    }
+
+    private KeyRotationCheckpoint checkpointAt(String phase, UUID lastId) {
+        KeyRotationCheckpoint checkpoint = new KeyRotationCheckpoint(phase, 2);
+        checkpoint.setLastId(lastId.toString());
+        return checkpoint;
+    }
+
+    // Puts a message back under master key version 1
+    private void reset(UUID id, String text) throws GeneralSecurityException {
+        Message message = messageRepository.findById(id).orElseThrow();
+        byte[][] encrypted = encryptUnderOldMasterKey(text);
+        message.setCiphertext(encrypted[0], encrypted[1]);
+        message.setCompressed(false);
+        message.setKeyId("master:1");
+        messageRepository.save(message);
+    }
+
+    private Message createOldMessage(String text) throws GeneralSecurityException {
+        byte[][] encrypted = encryptUnderOldMasterKey(text);
+        Message message = new Message();
+        message.setSender(alice);
+        message.setReceiver(bob);
+        message.setCiphertext(encrypted[0], encrypted[1]);
+        message.setKeyId("master:1");
+        message.setTimestamp(LocalDateTime.now());
+        return messageRepository.save(message);
+    }
+
+    private byte[][] encryptUnderOldMasterKey(String text) throws GeneralSecurityException {
+        SecretKey key = oldMasterKeys.get(1);
+        byte[] iv = new byte[12];
+        new SecureRandom().nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
+        return new byte[][]{cipher.doFinal(text.getBytes(StandardCharsets.UTF_8)), iv};
+    }
+}
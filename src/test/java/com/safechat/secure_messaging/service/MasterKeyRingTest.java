@@ -0,0 +1,96 @@
+package com.safechat.secure_messaging.service;
+
+import com.safechat.secure_messaging.model.KeyEntity;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.security.GeneralSecurityException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MasterKeyRingTest {
+
+    private static final String KEY_1 = "MDEyMzQ1Njc4OWFiY2RlZjAxMjM0NTY3ODlhYmNkZWY=";
+    private static final String KEY_2 = "ZmVkY2JhOTg3NjU0MzIxMGZlZGNiYTk4NzY1NDMyMTA=";
+
+    private final MasterKeyRing version1 = new MasterKeyRing(KEY_1, 1, "");
+    private final MasterKeyRing version2 = new MasterKeyRing(KEY_2, 2, "1:" + KEY_1);
+
+    @Test
+    void wrapAndUnwrapRoundTrip() throws GeneralSecurityException {
+        SecretKey dataKey = newDataKey();
+
+        byte[] wrapped = version2.wrap(dataKey);
+
+        // AES-KW adds one 8-byte block
+        assertThat(wrapped).hasSize(dataKey.getEncoded().length + 8);
+        assertThat(version2.unwrap(wrapped, 2).getEncoded()).isEqualTo(dataKey.getEncoded());
+    }
+
+    @Test
+    void unwrapsUnderARetiredVersion() throws GeneralSecurityException {
+        SecretKey dataKey = newDataKey();
+        byte[] wrappedUnderOld = version1.wrap(dataKey);
+
+        assertThat(version2.unwrap(wrappedUnderOld, 1).getEncoded()).isEqualTo(dataKey.getEncoded());
+        assertThat(version2.dataKeyOf(new KeyEntity("k", wrappedUnderOld, 1)).getEncoded())
+                .isEqualTo(dataKey.getEncoded());
+    }
+
+    @Test
+    void unwrapUnderTheWrongVersionFails() throws GeneralSecurityException {
+        byte[] wrappedUnderOld = version1.wrap(newDataKey());
+
+        assertThatThrownBy(() -> version2.unwrap(wrappedUnderOld, 2))
+                .hasMessageContaining("unwrapping");
+    }
+
+    @Test
+    void tamperedWrappedKeyIsRejected() throws GeneralSecurityException {
+        byte[] wrapped = version2.wrap(newDataKey());
+        wrapped[5] ^= 0x01;
+
+        assertThatThrownBy(() -> version2.unwrap(wrapped, 2))
+                .hasMessageContaining("unwrapping");
+    }
+
+    @Test
+    void versionThatIsNotConfiguredFails() throws GeneralSecurityException {
+        byte[] wrapped = version2.wrap(newDataKey());
+
+        assertThatThrownBy(() -> version2.unwrap(wrapped, 3))
+                .hasMessageContaining("not configured");
+    }
+
+    @Test
+    void legacyRawKeysAreReadAsIs() throws GeneralSecurityException {
+        SecretKey dataKey = newDataKey();
+
+        assertThat(version2.dataKeyOf(new KeyEntity("k", dataKey.getEncoded())).getEncoded())
+                .isEqualTo(dataKey.getEncoded());
+    }
+
+    @Test
+    void resolvesMasterKeyIds() {
+        assertThat(version2.currentKeyId()).isEqualTo("master:2");
+        assertThat(version2.resolve("master:2")).isEqualTo(version2.current());
+        // Bare "master" predates versioning and means version 1
+        assertThat(version2.resolve("master")).isEqualTo(version1.current());
+        assertThat(MasterKeyRing.isMasterKeyId("master:7")).isTrue();
+        assertThat(MasterKeyRing.isMasterKeyId("masterful")).isFalse();
+    }
+
+    @Test
+    void currentVersionCannotAlsoBeRetired() {
+        assertThatThrownBy(() -> new MasterKeyRing(KEY_2, 2, "2:" + KEY_1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static SecretKey newDataKey() throws GeneralSecurityException {
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(256);
+        return generator.generateKey();
+    }
+}
@@ -0,0 +1,82 @@
+package com.safechat.secure_messaging.service;
+
+import com.safechat.secure_messaging.service.MetricsTimeSeriesService.ThroughputMetric;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MetricsTimeSeriesServiceTest {
+
+    private static final long MINUTE_MS = 60_000L;
+    private static final long DAY_MS = MetricsTimeSeriesService.RETENTION_MINUTES * MINUTE_MS;
+
+    // The session registry is only used by pushToAdmins()
+    private final MetricsTimeSeriesService metrics = new MetricsTimeSeriesService(null);
+
+    @Test
+    void seriesCoversTheRequestedMinutes() {
+        long start = 30_000 * MINUTE_MS;
+        metrics.record(ThroughputMetric.LOGINS, 2, start);
+        metrics.record(ThroughputMetric.LOGINS, 3, start + 2 * MINUTE_MS);
+        metrics.record(ThroughputMetric.MESSAGES_SENT, 1, start + 2 * MINUTE_MS + 59_000);
+
+        Map<String, Object> series = metrics.getSeries(3, start + 2 * MINUTE_MS);
+
+        assertThat(series.get("timestamps"))
+                .isEqualTo(List.of(start, start + MINUTE_MS, start + 2 * MINUTE_MS));
+        assertThat(values(series, ThroughputMetric.LOGINS)).containsExactly(2L, 0L, 3L);
+        assertThat(values(series, ThroughputMetric.MESSAGES_SENT)).containsExactly(0L, 0L, 1L);
+    }
+
+    @Test
+    void recycledSlotStartsEmpty() {
+        long start = 30_000 * MINUTE_MS;
+        metrics.record(ThroughputMetric.LOGINS, 5, start);
+        metrics.record(ThroughputMetric.LOGINS, 1, start + DAY_MS);
+
+        assertThat(values(metrics.getSeries(1, start + DAY_MS), ThroughputMetric.LOGINS)).containsExactly(1L);
+    }
+
+    @Test
+    void concurrentRecordersAcrossARolloverLoseNothing() throws InterruptedException {
+        long previousDay = 40_000 * MINUTE_MS;
+        long now = previousDay + DAY_MS;
+        metrics.record(ThroughputMetric.MESSAGE_READS, 1_000, previousDay);
+
+        int threads = 8;
+        int perThread = 20_000;
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    ready.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    metrics.record(ThroughputMetric.MESSAGE_READS, 1, now);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        ready.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertThat(values(metrics.getSeries(1, now), ThroughputMetric.MESSAGE_READS))
+                .containsExactly((long) threads * perThread);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Long> values(Map<String, Object> series, ThroughputMetric metric) {
+        return ((Map<String, List<Long>>) series.get("series")).get(metric.getKey());
+    }
+}
@@ -0,0 +1,174 @@
+package com.safechat.secure_messaging.service;
+
+import com.safechat.secure_messaging.TestFixtures;
+import com.safechat.secure_messaging.model.Message;
+import com.safechat.secure_messaging.model.User;
+import com.safechat.secure_messaging.repository.MessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Overflow compaction against real message rows: live records survive a move and a restart,
+ * dead segments go, and nothing is touched inside the grace window.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class OverflowCompactionIntegrationTest {
+
+    // One 100-byte record per segment, so each append past the first seals a segment
+    private static final long SEGMENT_BYTES = 128;
+    private static final long NO_GRACE = 0;
+    private static final long LONG_GRACE = 3_600_000;
+
+    @TempDir
+    Path dir;
+
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    private SegmentStore store;
+    private User alice;
+    private User bob;
+
+    @BeforeEach
+    void setUp() {
+        fixtures.clear();
+        alice = fixtures.createUser("alice");
+        bob = fixtures.createUser("bob");
+        store = new SegmentStore(dir.toString(), SEGMENT_BYTES);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    void movesLiveRecordsOutOfAMostlyDeadSegment() throws IOException {
+        // Segment 1: a live 20-byte record followed by 80 dead bytes
+        SegmentStore.Pointer live = store.append(payload(20, 1));
+        store.append(payload(80, 2));
+        store.append(payload(100, 3));
+        Message message = createMessage(live);
+
+        compaction(NO_GRACE).compact();
+
+        Message moved = messageRepository.findById(message.getId()).orElseThrow();
+        assertThat(moved.getOverflowSegment()).isNotEqualTo(live.segment());
+        assertThat(store.read(pointerOf(moved))).isEqualTo(payload(20, 1));
+        // Kept for readers holding the old pointer, then deleted on the next run
+        assertThat(store.retiredAt(live.segment())).isNotNull();
+        assertThat(store.sealedSegments()).contains(live.segment());
+
+        compaction(NO_GRACE).compact();
+        assertThat(store.sealedSegments()).doesNotContain(live.segment());
+        assertThat(store.read(pointerOf(moved))).isEqualTo(payload(20, 1));
+    }
+
+    @Test
+    void leavesAMostlyLiveSegmentAlone() throws IOException {
+        SegmentStore.Pointer live = store.append(payload(100, 1));
+        store.append(payload(100, 2));
+        Message message = createMessage(live);
+
+        compaction(NO_GRACE).compact();
+
+        assertThat(messageRepository.findById(message.getId()).orElseThrow().getOverflowSegment())
+                .isEqualTo(live.segment());
+        assertThat(store.retiredAt(live.segment())).isNull();
+    }
+
+    @Test
+    void deletesASegmentNothingPointsInto() throws IOException {
+        SegmentStore.Pointer dead = store.append(payload(100, 1));
+        store.append(payload(100, 2));
+
+        compaction(NO_GRACE).compact();
+
+        assertThat(store.sealedSegments()).doesNotContain(dead.segment());
+    }
+
+    @Test
+    void keepsARecentlySealedSegmentWhoseRowsMayNotHaveCommitted() throws IOException {
+        // Appended, rolled over, but the row pointing at it isn't committed yet
+        SegmentStore.Pointer pending = store.append(payload(100, 1));
+        store.append(payload(100, 2));
+
+        compaction(LONG_GRACE).compact();
+        Message message = createMessage(pending);
+
+        assertThat(store.sealedSegments()).contains(pending.segment());
+        assertThat(store.read(pointerOf(message))).isEqualTo(payload(100, 1));
+    }
+
+    @Test
+    void retirementSurvivesARestart() throws IOException {
+        SegmentStore.Pointer live = store.append(payload(20, 1));
+        store.append(payload(80, 2));
+        store.append(payload(100, 3));
+        Message message = createMessage(live);
+        compaction(NO_GRACE).compact();
+
+        // Restart: a fresh store and service see the retirement from disk
+        store.close();
+        store = new SegmentStore(dir.toString(), SEGMENT_BYTES);
+        compaction(LONG_GRACE).compact();
+        assertThat(store.sealedSegments()).contains(live.segment());
+        assertThat(store.retiredAt(live.segment())).isNotNull();
+
+        compaction(NO_GRACE).compact();
+        assertThat(store.sealedSegments()).doesNotContain(live.segment());
+        Message moved = messageRepository.findById(message.getId()).orElseThrow();
+        assertThat(store.read(pointerOf(moved))).isEqualTo(payload(20, 1));
+    }
+
+    private OverflowCompactionService compaction(long graceMs) {
+        return new OverflowCompactionService(store, jdbcTemplate, transactionManager, new SimpleMeterRegistry(),
+                0.5, graceMs);
+    }
+
+    private Message createMessage(SegmentStore.Pointer pointer) {
+        Message message = new Message();
+        message.setSender(alice);
+        message.setReceiver(bob);
+        message.setOverflowCiphertext(pointer.segment(), pointer.offset(), pointer.length(), new byte[12]);
+        message.setKeyId("unused");
+        message.setTimestamp(LocalDateTime.now());
+        return messageRepository.save(message);
+    }
+
+    private static SegmentStore.Pointer pointerOf(Message message) {
+        return new SegmentStore.Pointer(message.getOverflowSegment(), message.getOverflowOffset(),
+                message.getOverflowLength());
+    }
+
+    private static byte[] payload(int length, int fill) {
+        byte[] payload = new byte[length];
+        Arrays.fill(payload, (byte) fill);
+        return payload;
+    }
+}
@@ -0,0 +1,120 @@
+package com.safechat.secure_messaging.service;
+
+import com.safechat.secure_messaging.dto.MessageView;
+import com.safechat.secure_messaging.model.KeyEntity;
+import com.safechat.secure_messaging.model.StorageFormat;
+import com.safechat.secure_messaging.repository.KeyRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PageDecryptorTest {
+
+    private static final String MASTER_KEY = "MDEyMzQ1Njc4OWFiY2RlZjAxMjM0NTY3ODlhYmNkZWY=";
+
+    // Stored key rows, standing in for encryption_keys
+    private final Map<String, KeyEntity> stored = new ConcurrentHashMap<>();
+    private final KeyRepository keyRepository = mock(KeyRepository.class);
+    private final CiphertextStore ciphertextStore = mock(CiphertextStore.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    PageDecryptorTest() {
+        when(keyRepository.save(any(KeyEntity.class))).thenAnswer(invocation -> {
+            KeyEntity key = invocation.getArgument(0);
+            stored.put(key.getKeyId(), key);
+            return key;
+        });
+        when(keyRepository.findByKeyIdAndActiveTrue(anyString()))
+                .thenAnswer(invocation -> Optional.ofNullable(stored.get((String) invocation.getArgument(0))));
+        when(keyRepository.findAllById(anyIterable())).thenAnswer(invocation -> {
+            List<KeyEntity> found = new ArrayList<>();
+            for (String keyId : invocation.<Iterable<String>>getArgument(0)) {
+                if (stored.containsKey(keyId)) {
+                    found.add(stored.get(keyId));
+                }
+            }
+            return found;
+        });
+        when(ciphertextStore.ciphertextOf(any(MessageView.class)))
+                .thenAnswer(invocation -> ((MessageView) invocation.getArgument(0)).getCiphertext());
+    }
+
+    @Test
+    void parallelPageMatchesSerialWithABadKey() {
+        List<MessageView> page = pageWithBadKey();
+
+        List<String> serial = decryptor(0).decrypt(page);
+        List<String> parallel = decryptor(2).decrypt(page);
+
+        assertThat(meterRegistry.get("safechat.decrypt.pages").tag("mode", "parallel").counter().count())
+                .isEqualTo(1.0);
+        assertThat(parallel).isEqualTo(serial);
+        assertThat(serial).hasSize(page.size());
+        // Only the row under the bad key is affected
+        assertThat(serial.get(3)).isEqualTo(PageDecryptor.REVOKED);
+        assertThat(serial.get(0)).isEqualTo("message 0");
+        assertThat(serial.get(18)).isEqualTo("message 18");
+    }
+
+    @Test
+    void parallelPageFallsBackWhenWarmUpFails() {
+        List<MessageView> page = pageWithBadKey();
+        List<String> serial = decryptor(0).decrypt(page);
+
+        when(keyRepository.findAllById(anyIterable())).thenThrow(new RuntimeException("connection reset"));
+        List<String> parallel = decryptor(2).decrypt(page);
+
+        assertThat(parallel).isEqualTo(serial);
+        assertThat(meterRegistry.get("safechat.decrypt.warmup.failed").counter().count()).isEqualTo(1.0);
+    }
+
+    // Twenty messages over four keys; the fourth key (messages 3, 7, ..., 19) can no longer be unwrapped.
+    // Also a revoked message and one without a key.
+    private List<MessageView> pageWithBadKey() {
+        EncryptionService writer = encryptionService();
+        List<String> keyIds = List.of(writer.generateKey(), writer.generateKey(),
+                writer.generateKey(), writer.generateKey());
+        List<MessageView> page = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String keyId = keyIds.get(i % keyIds.size());
+            EncryptionService.EncryptedBytes encrypted = writer.encryptToBytes("message " + i, keyId);
+            MessageView view = new MessageView();
+            view.setId(UUID.randomUUID());
+            view.setStorageFormat(StorageFormat.BINARY);
+            view.setContentBin(encrypted.content());
+            view.setIvBin(encrypted.iv());
+            view.setKeyId(encrypted.keyId());
+            view.setCompressed(encrypted.compressed());
+            page.add(view);
+        }
+        page.get(5).setRevoked(true);
+        page.get(10).setKeyId(null);
+
+        // Wrapped under a master key version this ring doesn't have
+        stored.get(keyIds.get(3)).setMasterKeyVersion(99);
+        return page;
+    }
+
+    // A fresh EncryptionService each time, so every decryptor starts with a cold key cache
+    private PageDecryptor decryptor(int parallelThreshold) {
+        return new PageDecryptor(encryptionService(), ciphertextStore, meterRegistry, parallelThreshold, 4);
+    }
+
+    private EncryptionService encryptionService() {
+        return new EncryptionService(keyRepository, new MasterKeyRing(MASTER_KEY, 1, ""), meterRegistry,
+                1024, 6, 1024 * 1024, 100);
+    }
+}
@@ -0,0 +1,83 @@
+package com.safechat.secure_messaging.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PayloadCompressorTest {
+
+    private final PayloadCompressor compressor = new PayloadCompressor(256, 6, 64 * 1024);
+
+    @Test
+    void roundTripsCompressiblePayload() {
+        byte[] plaintext = "the quick brown fox jumps over the lazy dog. ".repeat(50).getBytes(StandardCharsets.UTF_8);
+
+        byte[] compressed = compressor.compress(plaintext);
+
+        assertThat(compressed).isNotNull();
+        assertThat(compressed.length).isLessThan(plaintext.length);
+        assertThat(compressor.decompress(compressed)).isEqualTo(plaintext);
+    }
+
+    @Test
+    void leavesShortPayloadAlone() {
+        assertThat(compressor.compress("hi".getBytes(StandardCharsets.UTF_8))).isNull();
+    }
+
+    @Test
+    void leavesIncompressiblePayloadAlone() {
+        byte[] random = new byte[4096];
+        new Random(42).nextBytes(random);
+
+        assertThat(compressor.compress(random)).isNull();
+    }
+
+    @Test
+    void negativeThresholdDisablesCompression() {
+        PayloadCompressor disabled = new PayloadCompressor(-1, 6, 64 * 1024);
+
+        assertThat(disabled.compress(new byte[10_000])).isNull();
+    }
+
+    @Test
+    void refusesToInflatePastTheCap() {
+        // 1 MiB of zeros deflates to about a kilobyte
+        byte[] bomb = new PayloadCompressor(0, 9, Integer.MAX_VALUE).compress(new byte[1024 * 1024]);
+        assertThat(bomb.length).isLessThan(64 * 1024);
+
+        assertThatThrownBy(() -> compressor.decompress(bomb))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("inflates past");
+    }
+
+    @Test
+    void rejectsTruncatedPayload() {
+        byte[] compressed = compressor.compress("abcdefgh".repeat(200).getBytes(StandardCharsets.UTF_8));
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+
+        assertThatThrownBy(() -> compressor.decompress(truncated))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Truncated");
+    }
+
+    @Test
+    void rejectsCorruptPayload() {
+        // 0xff starts a deflate block with the reserved block type
+        byte[] corrupt = new byte[]{(byte) 0xff, 0x12, 0x34, 0x56};
+
+        assertThatThrownBy(() -> compressor.decompress(corrupt))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Corrupt");
+    }
+
+    @Test
+    void rejectsLevelOutOfRange() {
+        assertThatThrownBy(() -> new PayloadCompressor(256, 0, 1024))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
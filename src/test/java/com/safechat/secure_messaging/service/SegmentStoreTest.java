@@ -0,0 +1,94 @@
+package com.safechat.secure_messaging.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SegmentStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsBackWhatWasAppended() throws IOException {
+        SegmentStore store = new SegmentStore(dir.toString(), 1024);
+        try {
+            SegmentStore.Pointer first = store.append(bytes("first"));
+            SegmentStore.Pointer second = store.append(bytes("second record"));
+
+            assertThat(second.offset()).isEqualTo(SegmentStore.HEADER_BYTES + 5);
+            assertThat(store.read(first)).isEqualTo(bytes("first"));
+            assertThat(store.read(second)).isEqualTo(bytes("second record"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void rollsOverToANewSegmentWhenFull() throws IOException {
+        // Room for two 20-byte records per segment
+        SegmentStore store = new SegmentStore(dir.toString(), 48);
+        try {
+            SegmentStore.Pointer a = store.append(new byte[20]);
+            SegmentStore.Pointer b = store.append(new byte[20]);
+            SegmentStore.Pointer c = store.append(bytes("third"));
+
+            assertThat(a.segment()).isEqualTo(b.segment());
+            assertThat(c.segment()).isEqualTo(a.segment() + 1);
+            assertThat(c.offset()).isZero();
+            assertThat(store.sealedSegments()).containsExactly(a.segment());
+            assertThat(store.read(c)).isEqualTo(bytes("third"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void reopensTheLastSegmentAfterARestart() throws IOException {
+        SegmentStore before = new SegmentStore(dir.toString(), 48);
+        SegmentStore.Pointer old = before.append(new byte[20]);
+        before.append(new byte[20]);
+        SegmentStore.Pointer active = before.append(bytes("active"));
+        before.markRetired(old.segment());
+        before.close();
+
+        SegmentStore after = new SegmentStore(dir.toString(), 48);
+        try {
+            assertThat(after.read(old)).isEqualTo(new byte[20]);
+            assertThat(after.read(active)).isEqualTo(bytes("active"));
+            // Appends continue in the segment that was active, after its existing records
+            SegmentStore.Pointer next = after.append(bytes("next"));
+            assertThat(next.segment()).isEqualTo(active.segment());
+            assertThat(next.offset()).isEqualTo(SegmentStore.HEADER_BYTES + 6);
+            assertThat(after.retiredAt(old.segment())).isNotNull();
+            assertThat(after.retiredAt(active.segment())).isNull();
+        } finally {
+            after.close();
+        }
+    }
+
+    @Test
+    void deleteRemovesTheSegmentAndItsRetirementMarker() throws IOException {
+        SegmentStore store = new SegmentStore(dir.toString(), 48);
+        try {
+            SegmentStore.Pointer old = store.append(new byte[40]);
+            store.append(bytes("rolls over"));
+            store.markRetired(old.segment());
+
+            assertThat(store.delete(old.segment())).isTrue();
+            assertThat(store.sealedSegments()).isEmpty();
+            assertThat(store.retiredAt(old.segment())).isNull();
+        } finally {
+            store.close();
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
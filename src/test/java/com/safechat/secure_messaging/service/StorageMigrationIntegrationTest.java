@@ -0,0 +1,111 @@
+package com.safechat.secure_messaging.service;
+
+import com.safechat.secure_messaging.TestFixtures;
+import com.safechat.secure_messaging.model.Message;
+import com.safechat.secure_messaging.model.StorageFormat;
+import com.safechat.secure_messaging.model.User;
+import com.safechat.secure_messaging.repository.MessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The background storage migration converts legacy Base64 rows to the binary format without
+ * changing what they decrypt to, does nothing on a rerun, and skips an undecodable row after
+ * recording it once.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class StorageMigrationIntegrationTest {
+
+    private static final int MESSAGES = 7;
+
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private EncryptionService encryptionService;
+
+    private SimpleMeterRegistry meterRegistry;
+    private StorageMigrationService migration;
+    private List<UUID> messageIds;
+
+    @BeforeEach
+    void setUp() {
+        fixtures.clear();
+        jdbcTemplate.update("DELETE FROM storage_migration_failures");
+
+        User alice = fixtures.createUser("alice");
+        User bob = fixtures.createUser("bob");
+        messageIds = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            messageIds.add(messageRepository.save(fixtures.createMessage(alice, bob, "message " + i)).getId());
+        }
+
+        meterRegistry = new SimpleMeterRegistry();
+        // Batches of two so a run crosses several batches
+        migration = new StorageMigrationService(jdbcTemplate, transactionManager, meterRegistry, true, 2, 100);
+    }
+
+    @Test
+    void legacyRowsBecomeBinaryAndStillDecrypt() {
+        assertThat(migration.migrateMessages()).isEqualTo(MESSAGES);
+
+        for (int i = 0; i < MESSAGES; i++) {
+            Message message = messageRepository.findById(messageIds.get(i)).orElseThrow();
+            assertThat(message.getStorageFormat()).isEqualTo(StorageFormat.BINARY);
+            assertThat(message.getContent()).isEmpty();
+            assertThat(message.getIv()).isNull();
+            assertThat(encryptionService.decrypt(message.getCiphertext(), message.getCiphertextIv(), message.getKeyId()))
+                    .isEqualTo("message " + i);
+        }
+    }
+
+    @Test
+    void rerunIsANoOp() {
+        migration.migrateMessages();
+        List<Map<String, Object>> before = jdbcTemplate.queryForList("SELECT * FROM messages ORDER BY id");
+
+        assertThat(migration.migrateMessages()).isZero();
+        assertThat(jdbcTemplate.queryForList("SELECT * FROM messages ORDER BY id"))
+                .usingRecursiveComparison().isEqualTo(before);
+    }
+
+    @Test
+    void undecodableRowIsRecordedOnceAndSkippedAfterwards() {
+        UUID bad = messageIds.get(3);
+        jdbcTemplate.update("UPDATE messages SET content = ? WHERE id = ?", "not*base64!", bad);
+
+        assertThat(migration.migrateMessages()).isEqualTo(MESSAGES - 1);
+        assertThat(migration.migrateMessages()).isZero();
+
+        assertThat(jdbcTemplate.queryForList(
+                "SELECT row_id FROM storage_migration_failures WHERE table_name = 'messages'", String.class))
+                .containsExactly(bad.toString());
+        assertThat(meterRegistry.counter("safechat.storage.migration_failed", "table", "messages").count())
+                .isEqualTo(1.0);
+        // Left readable in the legacy format
+        assertThat(messageRepository.findById(bad).orElseThrow().getStorageFormat()).isEqualTo(StorageFormat.BASE64);
+    }
+}
@@ -0,0 +1,73 @@
+package com.safechat.secure_messaging.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class SystemStatsServiceTest {
+
+    private static final long HOUR_MS = 3_600_000L;
+
+    // The repositories are only used by resync()
+    private final SystemStatsService stats = new SystemStatsService(null, null, null);
+
+    @Test
+    void activeUsersCoverTheLastDayOnly() {
+        long start = 1_000 * HOUR_MS;
+        for (int hour = 0; hour < 30; hour++) {
+            stats.recordActivity("user-" + hour, start + hour * HOUR_MS);
+            stats.recordActivity("everyone", start + hour * HOUR_MS);
+        }
+        // Hours 6..29 are within a day of hour 29, plus the user active every hour
+        assertThat(stats.getActiveUsers24h(start + 29 * HOUR_MS)).isEqualTo(25);
+    }
+
+    @Test
+    void recycledSlotStartsEmpty() {
+        long start = 1_000 * HOUR_MS;
+        stats.recordActivity("yesterday", start);
+        stats.recordActivity("today", start + 24 * HOUR_MS);
+        assertThat(stats.getActiveUsers24h(start + 24 * HOUR_MS)).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentRecordersAcrossARolloverLoseNothing() throws InterruptedException {
+        long previousDay = 2_000 * HOUR_MS;
+        long now = previousDay + 24 * HOUR_MS;
+        for (int i = 0; i < 1_000; i++) {
+            stats.recordActivity("stale-" + i, previousDay);
+        }
+
+        int threads = 8;
+        int perThread = 2_000;
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    ready.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    stats.recordActivity("user-" + thread + "-" + i, now);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        ready.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        int expected = threads * perThread;
+        assertThat((double) stats.getActiveUsers24h(now)).isCloseTo(expected, within(expected * 0.05));
+    }
+}
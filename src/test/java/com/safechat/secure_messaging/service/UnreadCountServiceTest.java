@@ -0,0 +1,155 @@
+package com.safechat.secure_messaging.service;
+
+import com.safechat.secure_messaging.repository.ConversationRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UnreadCountServiceTest {
+
+    // Committed unread totals, standing in for the conversations table
+    private final ConcurrentHashMap<UUID, AtomicLong> committed = new ConcurrentHashMap<>();
+    private final ConversationRepository conversationRepository = mock(ConversationRepository.class);
+    private final WebSocketSessionRegistry sessionRegistry = mock(WebSocketSessionRegistry.class);
+
+    UnreadCountServiceTest() {
+        when(conversationRepository.sumUnreadByOwnerId(any())).thenAnswer(invocation -> {
+            long value = committed(invocation.getArgument(0)).get();
+            // Widen the window between reading the table and caching the result
+            Thread.yield();
+            return value;
+        });
+    }
+
+    @Test
+    void loadsOnceAndAppliesCommittedDeltas() {
+        UnreadCountService service = new UnreadCountService(conversationRepository, sessionRegistry, 100);
+        UUID user = UUID.randomUUID();
+        committed(user).set(5);
+
+        assertThat(service.getUnreadCount(user)).isEqualTo(5);
+        inTransaction(() -> {
+            committed(user).incrementAndGet();
+            service.adjust(user, 1);
+        }, true);
+        assertThat(service.getUnreadCount(user)).isEqualTo(6);
+    }
+
+    @Test
+    void rolledBackDeltaIsNotApplied() {
+        UnreadCountService service = new UnreadCountService(conversationRepository, sessionRegistry, 100);
+        UUID user = UUID.randomUUID();
+        service.getUnreadCount(user);
+        inTransaction(() -> service.adjust(user, 1), false);
+        assertThat(service.getUnreadCount(user)).isZero();
+    }
+
+    @Test
+    void loadDuringAnUnfinishedCommitIsNotCached() {
+        UnreadCountService service = new UnreadCountService(conversationRepository, sessionRegistry, 100);
+        UUID user = UUID.randomUUID();
+
+        TransactionSynchronizationManager.initSynchronization();
+        List<TransactionSynchronization> synchronizations;
+        try {
+            service.adjust(user, 1);
+            synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        // The row is committed, the afterCommit delta hasn't run yet, and a reader loads the sum
+        committed(user).incrementAndGet();
+        assertThat(service.getUnreadCount(user)).isEqualTo(1);
+        complete(synchronizations, true);
+
+        assertThat(service.getUnreadCount(user)).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentReadersAndWritersAgreeWithTheTable() throws InterruptedException {
+        UnreadCountService service = new UnreadCountService(conversationRepository, sessionRegistry, 4);
+        List<UUID> users = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            users.add(UUID.randomUUID());
+        }
+
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            boolean writer = t % 2 == 0;
+            Thread thread = new Thread(() -> {
+                try {
+                    ready.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 5_000; i++) {
+                    UUID user = users.get(random.nextInt(users.size()));
+                    if (writer) {
+                        long delta = random.nextBoolean() ? 1 : -1;
+                        boolean commit = random.nextInt(10) > 0;
+                        inTransaction(() -> {
+                            service.adjust(user, delta);
+                            if (commit) {
+                                committed(user).addAndGet(delta);
+                            }
+                        }, commit);
+                    } else if (random.nextInt(50) == 0) {
+                        inTransaction(() -> service.invalidate(user), true);
+                    } else {
+                        service.getUnreadCount(user);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        ready.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (UUID user : users) {
+            assertThat(service.getUnreadCount(user)).as("unread for %s", user).isEqualTo(committed(user).get());
+        }
+    }
+
+    private AtomicLong committed(UUID user) {
+        return committed.computeIfAbsent(user, id -> new AtomicLong());
+    }
+
+    // Runs work as a transaction: synchronizations registered inside run after it, as on commit or rollback
+    private static void inTransaction(Runnable work, boolean commit) {
+        TransactionSynchronizationManager.initSynchronization();
+        List<TransactionSynchronization> synchronizations;
+        try {
+            work.run();
+            synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        complete(synchronizations, commit);
+    }
+
+    private static void complete(List<TransactionSynchronization> synchronizations, boolean commit) {
+        if (commit) {
+            synchronizations.forEach(TransactionSynchronization::afterCommit);
+        }
+        int status = commit ? TransactionSynchronization.STATUS_COMMITTED : TransactionSynchronization.STATUS_ROLLED_BACK;
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+}